@@ -0,0 +1,102 @@
+package tpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * Times the import of a graph from an edge list csv file, as "Load Graph"
+ * does it (less the dialog at the end), for N nodes identified by a string
+ * attribute and E edges between random pairs of them. The time should grow
+ * linearly with E for a given N. The nodes and edges are the same from run to
+ * run, and the number of edges imported and a checksum of their endpoints are
+ * printed so that runs against different versions of GraphImporter can be
+ * checked to give the same graph.
+ *
+ * To compare two versions, compile this class against each of them and run
+ * it with the same arguments, eg
+ *
+ * <pre>
+ * javac -cp classes:weka.jar -d benchclasses bench/tpp/GraphImportBench.java
+ * java -Xmx2g -cp benchclasses:classes:weka.jar tpp.GraphImportBench [N [maxE [runs]]]
+ * </pre>
+ *
+ * Every timing is the best of a number of runs (3 by default), each made
+ * after a run that warms the JIT up. The edge files are written to the
+ * temporary directory and deleted afterwards.
+ */
+public class GraphImportBench {
+
+	private static final int[] E = { 50000, 100000, 250000, 500000, 1000000 };
+
+	public static void main(String[] args) throws Exception {
+		int n = (args.length > 0 ? Integer.parseInt(args[0]) : 50000);
+		int maxE = (args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE);
+		int runs = (args.length > 2 ? Integer.parseInt(args[2]) : 3);
+		Instances nodes = nodes(n);
+		System.out.println("N\tE\tload ms\tns/edge\tedges\tchecksum");
+		for (int e : E)
+			if (e <= maxE)
+				run(nodes, e, runs);
+	}
+
+	/** N nodes, each with a string id and a numeric value */
+	private static Instances nodes(int n) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("NodeId", (ArrayList<String>) null));
+		attributes.add(new Attribute("x"));
+		Instances nodes = new Instances("nodes", attributes, n);
+		Random random = new Random(1);
+		for (int i = 0; i < n; i++) {
+			double[] values = new double[2];
+			values[0] = nodes.attribute(0).addStringValue("node" + i);
+			values[1] = random.nextGaussian();
+			nodes.add(new DenseInstance(1, values));
+		}
+		return nodes;
+	}
+
+	/** Write E random edges between the nodes, with a header, to a csv file */
+	private static File edges(int n, int e) throws IOException {
+		File file = File.createTempFile("edges", ".csv");
+		file.deleteOnExit();
+		Random random = new Random(e);
+		PrintWriter out = new PrintWriter(file);
+		try {
+			out.println("source,target");
+			for (int i = 0; i < e; i++)
+				out.println("node" + random.nextInt(n) + ",node" + random.nextInt(n));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void run(Instances nodes, int e, int runs) throws Exception {
+		int n = nodes.numInstances();
+		File file = edges(n, e);
+		long best = Long.MAX_VALUE, time;
+		Graph graph = null;
+		for (int run = 0; run <= runs; run++) {
+			time = System.nanoTime();
+			graph = new GraphImporter().readGraph(nodes, 0, file, ",", true, false);
+			time = System.nanoTime() - time;
+			if (run > 0)
+				best = Math.min(best, time);
+		}
+		file.delete();
+		long checksum = 0;
+		int[] offsets = graph.getOutOffsets(), targets = graph.getOutTargets();
+		for (int source = 0; source < graph.getNumNodes(); source++)
+			for (int i = offsets[source]; i < offsets[source + 1]; i++)
+				checksum = checksum * 31 + source * (long) n + targets[i];
+		System.out.printf("%d\t%d\t%.1f\t%.0f\t%d\t%d%n", n, e, best / 1e6, (double) best / e,
+				graph.getNumEdges(), checksum);
+	}
+}
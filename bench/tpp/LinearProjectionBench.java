@@ -0,0 +1,97 @@
+package tpp;
+
+import java.util.Random;
+
+import weka.core.matrix.Matrix;
+
+/**
+ * Times the training of a LinearProjection on random data: one epoch of
+ * train, and a whole pursueTarget, for N points in D dimensions with three
+ * quarters of them selected and two outputs. The data and the starting
+ * weights are the same from run to run, and the final error and weights are
+ * printed so that runs against different versions of the class can be
+ * checked to give the same results.
+ *
+ * To compare two versions, compile this class against each of them and run
+ * it with the same arguments, eg
+ *
+ * <pre>
+ * javac -cp classes:weka.jar -d benchclasses bench/tpp/LinearProjectionBench.java
+ * java -Xmx2g -cp benchclasses:classes:weka.jar tpp.LinearProjectionBench [maxN [maxD [runs]]]
+ * </pre>
+ *
+ * Every timing is the best of a number of runs (3 by default), each made
+ * after a run that warms the JIT up, since the first run of a small case is
+ * mostly compilation.
+ */
+public class LinearProjectionBench {
+
+	private static final int[] N = { 1000, 100000, 1000000 };
+
+	private static final int[] D = { 10, 100, 1000 };
+
+	/** The most values in the data, so that it fits in a few GB */
+	private static final long MAX_VALUES = 100000000L;
+
+	public static void main(String[] args) {
+		int maxN = (args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE);
+		int maxD = (args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE);
+		int runs = (args.length > 2 ? Integer.parseInt(args[2]) : 3);
+		System.out.println("N\tD\ttrain/epoch ms\tpursueTarget ms\terror\tweights");
+		for (int n : N)
+			for (int d : D)
+				if (n <= maxN && d <= maxD) {
+					if ((long) n * d > MAX_VALUES)
+						System.out.println(n + "\t" + d + "\tnot run (" + (8L * n * d >> 20) + " MB of data)");
+					else
+						run(n, d, runs);
+				}
+	}
+
+	private static void run(int n, int d, int runs) {
+		Random random = new Random(1);
+		double[][] x = new double[n][d];
+		for (double[] row : x)
+			for (int i = 0; i < d; i++)
+				row[i] = random.nextDouble() * 2 - 1;
+		double[][] t = new double[n][2];
+		for (double[] row : t) {
+			row[0] = random.nextGaussian();
+			row[1] = random.nextGaussian();
+		}
+		Matrix data = new Matrix(x, n, d);
+		Matrix target = new Matrix(t, n, 2);
+		boolean[] selected = new boolean[n];
+		for (int p = 0; p < n; p++)
+			selected[p] = random.nextInt(4) != 0;
+		Matrix start = new Matrix(d, 2);
+		for (int i = 0; i < d; i++) {
+			start.set(i, 0, random.nextDouble() - .5);
+			start.set(i, 1, random.nextDouble() - .5);
+		}
+
+		// enough epochs of train to take a measurable time
+		int epochs = (int) Math.max(3, Math.min(200, 2e8 / ((long) n * d)));
+		long bestTrain = Long.MAX_VALUE, bestPursue = Long.MAX_VALUE, time;
+		double error = 0;
+		LinearProjection projection = null;
+		for (int run = 0; run <= runs; run++) {
+			projection = new LinearProjection(start.copy());
+			time = System.nanoTime();
+			for (int e = 0; e < epochs; e++)
+				projection.train(data, target, selected, null, 0.2 / n);
+			time = (System.nanoTime() - time) / epochs;
+			if (run > 0)
+				bestTrain = Math.min(bestTrain, time);
+
+			projection = new LinearProjection(start.copy());
+			time = System.nanoTime();
+			error = projection.pursueTarget(data, target, selected);
+			time = System.nanoTime() - time;
+			if (run > 0)
+				bestPursue = Math.min(bestPursue, time);
+		}
+		System.out.printf("%d\t%d\t%.3f\t%.1f\t%.17g\t%.17g%n", n, d, bestTrain / 1e6, bestPursue / 1e6, error,
+				projection.normF());
+	}
+}
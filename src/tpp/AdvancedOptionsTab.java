@@ -15,7 +15,11 @@ import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.border.Border;
 import javax.swing.border.EtchedBorder;
 import javax.swing.border.TitledBorder;
@@ -244,25 +248,61 @@ public class AdvancedOptionsTab extends JPanel implements ActionListener {
 		if (event.getSource() == removeTestSetButton)
 			spModel.removeTestSet();
 		
-		if (event.getSource() == applyClassifierButton) {
-			try {
+		if (event.getSource() == applyClassifierButton)
+			applyClassifier();
+	}
 
-				Attribute[] classification = spModel.createCrossValidation(
-						classificationTargetCombo.getSelectedAttribute(),
-						(Classifier) classifierChooser.getValue());
-				// and fill the points by the error
-				spModel.setColourAttribute(classification[0]);
-				pointModel.setSelectAttribute(classification[0]);
-				pointModel.setFillAttribute(classification[1]);
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+	/**
+	 * Cross validate the chosen classifier on another thread, showing its
+	 * progress (and letting the user cancel it), then colour the points by the
+	 * classification and fill them by the error
+	 */
+	private void applyClassifier() {
+		final CrossValidation crossValidation = spModel.newCrossValidation(
+				classificationTargetCombo.getSelectedAttribute(),
+				(Classifier) classifierChooser.getValue());
+		final ProgressMonitor monitor = new ProgressMonitor(this, "Cross validating "
+				+ crossValidation.getClassifier().getClass().getSimpleName(), null, 0,
+				crossValidation.getNumFolds());
+		final Timer timer = new Timer(100, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (monitor.isCanceled())
+					crossValidation.cancel();
+				monitor.setProgress(crossValidation.getFoldsDone());
 			}
-		}
-		
-		
-		
+		});
+		applyClassifierButton.setEnabled(false);
+		timer.start();
+		new Thread() {
+			public void run() {
+				try {
+					crossValidation.run();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						timer.stop();
+						monitor.close();
+						applyClassifierButton.setEnabled(true);
+						Attribute[] classification = spModel.addCrossValidation(crossValidation);
+						if (classification != null) {
+							// and fill the points by the error
+							spModel.setColourAttribute(classification[0]);
+							pointModel.setSelectAttribute(classification[0]);
+							pointModel.setFillAttribute(classification[1]);
+							init();
+						} else if (crossValidation.getFailure() != null)
+							JOptionPane.showMessageDialog(AdvancedOptionsTab.this, "The cross validation failed: "
+									+ crossValidation.getFailure().getMessage(), "Cross validation",
+									JOptionPane.ERROR_MESSAGE);
+						else if (crossValidation.isFinished())
+							JOptionPane.showMessageDialog(AdvancedOptionsTab.this,
+									"The data changed while it was being cross validated, so the results were not added");
+					}
+				});
+			}
+		}.start();
 	}
 
 }
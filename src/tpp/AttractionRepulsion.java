@@ -0,0 +1,210 @@
+package tpp;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The attraction-repulsion model used to separate points when there is no
+ * separation attribute: each point is moved towards every other point by
+ * (x_j-x_i)(m-d_ij)/m, where d_ij is the distance between them and m the mean
+ * distance between all points, so that points closer than the mean repel each
+ * other and those further apart attract.
+ *
+ * The sum over all other points separates into sum_j(x_j-x_i), which is found
+ * exactly from the centroid, and sum_j(x_j-x_i)d_ij (along with sum_j d_ij for
+ * the mean), which is approximated using a Barnes-Hut quadtree over the view:
+ * the points in any cell whose width, seen from x_i, subtends less than theta
+ * are treated as if they were all at the cell's centre of mass. Since the
+ * centre of mass is used, the error is second order in the width of the cell.
+ * Theta of zero gives the exact result. The tree is built in O(N log N), and
+ * the points' movements are found in parallel.
+ */
+public class AttractionRepulsion {
+
+	public static final double DEFAULT_THETA = 0.5;
+
+	/** The number of points whose movements are found by each task */
+	private static final int CHUNK_POINTS = 1024;
+
+	private final double theta;
+
+	// the tree built over the view, and its cells' centres of mass
+	private QuadTree tree;
+	private double[] mass, comX, comY;
+
+	// the results for each point: sum_j d_ij and sum_j (x_j-x_i)d_ij
+	private double[] sumDistance, sumX, sumY;
+
+	public AttractionRepulsion() {
+		this(DEFAULT_THETA);
+	}
+
+	/**
+	 * @param theta
+	 *            the largest ratio of cell width to distance at which the
+	 *            points in a cell are treated as one. Zero gives the exact
+	 *            result.
+	 */
+	public AttractionRepulsion(double theta) {
+		if (theta < 0)
+			throw new IllegalArgumentException("Theta must not be negative: " + theta);
+		this.theta = theta;
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Find how far each point in the 2D view should move
+	 *
+	 * @return the movement of each point, as an N x 2 array
+	 */
+	public double[][] movement(double[][] view) {
+		int n = view.length;
+		double[][] movement = new double[n][2];
+		if (n < 2)
+			return movement;
+
+		tree = QuadTree.fromView(view);
+		double[][] centres = tree.centresOfMass(null);
+		mass = centres[0];
+		comX = centres[1];
+		comY = centres[2];
+		double[] x = tree.x, y = tree.y;
+		double totalX = 0, totalY = 0;
+		for (int i = 0; i < n; i++) {
+			totalX += x[i];
+			totalY += y[i];
+		}
+
+		sumDistance = new double[n];
+		sumX = new double[n];
+		sumY = new double[n];
+		int chunks = (n + CHUNK_POINTS - 1) / CHUNK_POINTS;
+		if (chunks > 1 && WorkerPool.isParallel())
+			WorkerPool.getPool().invoke(new SumTask(0, chunks));
+		else
+			sum(0, n);
+
+		// each pair is counted twice, and added up in order so the result is
+		// the same however the work was shared out
+		double total = 0;
+		for (int i = 0; i < n; i++)
+			total += sumDistance[i];
+		double mean = total / ((double) n * (n - 1));
+
+		for (int i = 0; i < n; i++) {
+			movement[i][0] = (totalX - n * x[i]) - sumX[i] / mean;
+			movement[i][1] = (totalY - n * y[i]) - sumY[i] / mean;
+		}
+
+		tree = null;
+		mass = comX = comY = null;
+		sumDistance = sumX = sumY = null;
+		return movement;
+	}
+
+	/**
+	 * The movements found by comparing every pair of points, in O(N^2), as
+	 * SeparatePoints originally did
+	 */
+	public static double[][] exactMovement(double[][] view) {
+		int n = view.length;
+		double[][] movement = new double[n][2];
+		double d, dx, dy;
+
+		// find the mean distance between points
+		double total = 0;
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < i; j++) {
+				dx = view[i][0] - view[j][0];
+				dy = view[i][1] - view[j][1];
+				total += Math.sqrt(dx * dx + dy * dy);
+			}
+		double mean = total / (0.5 * n * (n - 1));
+		double force;
+
+		// attract/repulse each point from each other
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j) {
+					dx = view[j][0] - view[i][0];
+					dy = view[j][1] - view[i][1];
+					d = Math.sqrt(dx * dx + dy * dy);
+					force = (mean - d) / mean;
+					movement[i][0] += dx * force;
+					movement[i][1] += dy * force;
+				}
+			}
+		}
+		return movement;
+	}
+
+	/** Find the sums for points from..to-1 */
+	private void sum(int from, int to) {
+		double[] x = tree.x, y = tree.y, width = tree.width;
+		int[] order = tree.order, start = tree.start, end = tree.end;
+		int[] firstChild = tree.firstChild, numChildren = tree.numChildren;
+		int[] stack = new int[QuadTree.STACK_SIZE];
+		int top, node, k, j;
+		double xi, yi, dx, dy, d, sd, sx, sy;
+		double theta2 = theta * theta;
+		for (int i = from; i < to; i++) {
+			xi = x[i];
+			yi = y[i];
+			sd = sx = sy = 0;
+			top = 0;
+			stack[top++] = 0;
+			while (top > 0) {
+				node = stack[--top];
+				dx = comX[node] - xi;
+				dy = comY[node] - yi;
+				d = dx * dx + dy * dy;
+				if (numChildren[node] == 0) {
+					// a leaf, so add up its points exactly (including i itself,
+					// which adds nothing)
+					for (k = start[node]; k < end[node]; k++) {
+						j = order[k];
+						dx = x[j] - xi;
+						dy = y[j] - yi;
+						d = Math.sqrt(dx * dx + dy * dy);
+						sd += d;
+						sx += dx * d;
+						sy += dy * d;
+					}
+				} else if (width[node] * width[node] < theta2 * d) {
+					// far enough away to treat as a single point
+					d = Math.sqrt(d);
+					sd += mass[node] * d;
+					sx += mass[node] * dx * d;
+					sy += mass[node] * dy * d;
+				} else
+					for (k = 0; k < numChildren[node]; k++)
+						stack[top++] = firstChild[node] + k;
+			}
+			sumDistance[i] = sd;
+			sumX[i] = sx;
+			sumY[i] = sy;
+		}
+	}
+
+	private class SumTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 4400420788716432937L;
+
+		private final int fromChunk, toChunk;
+
+		SumTask(int fromChunk, int toChunk) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new SumTask(fromChunk, mid), new SumTask(mid, toChunk));
+			} else
+				sum(fromChunk * CHUNK_POINTS, Math.min(tree.getNumPoints(), (fromChunk + 1) * CHUNK_POINTS));
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package tpp;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.matrix.Matrix;
+
+/**
+ * The centroids of the classes defined by the nominal attributes of a model.
+ * For each attribute the sum of the data points in each class (in the data
+ * space) and the number of points in each class are kept, so the centroids in
+ * the view can be found by projecting the k centroids, in O(k.D), rather than
+ * averaging all N points in the view each time the projection changes.
+ *
+ * The sums for an attribute are found in one pass over the data when they are
+ * first needed, and are rebuilt if the model's data or instances are
+ * replaced. When a point changes class, or the data is rescaled, the sums are
+ * updated in place.
+ */
+public class ClassCentroids implements Serializable {
+
+	private static final long serialVersionUID = 2213937405178226735L;
+
+	/** The sums and counts for the classes defined by one attribute */
+	private static class Classes implements Serializable {
+
+		private static final long serialVersionUID = -4917620358131350287L;
+
+		/** The instances and data that the sums were found from */
+		Instances instances;
+		Matrix data;
+
+		/** The class of each point, or -1 if it is missing */
+		int[] labels;
+
+		double[][] sums;
+		int[] counts;
+	}
+
+	private final TPPModel model;
+
+	private final HashMap<Attribute, Classes> classes = new HashMap<Attribute, Classes>();
+
+	public ClassCentroids(TPPModel model) {
+		this.model = model;
+	}
+
+	/** Forget the sums for every attribute */
+	public synchronized void invalidate() {
+		classes.clear();
+	}
+
+	/**
+	 * Forget the sums for the attribute, eg after many of the points' values
+	 * have been changed
+	 */
+	public synchronized void invalidate(Attribute attribute) {
+		classes.remove(attribute);
+	}
+
+	/** Scale the sums to match data that has been multiplied by the factor */
+	public synchronized void scale(double factor) {
+		for (Classes c : classes.values())
+			for (double[] sum : c.sums)
+				for (int i = 0; i < sum.length; i++)
+					sum[i] *= factor;
+	}
+
+	/**
+	 * Move the point into a different class of the attribute. This should be
+	 * called when the point's value of the attribute is changed.
+	 *
+	 * @param classIndex
+	 *            the index of the point's new value, or -1 if it is missing
+	 */
+	public synchronized void setClass(Attribute attribute, int point, int classIndex) {
+		Classes c = classes.get(attribute);
+		if (c == null || !isCurrent(c))
+			return;
+		int old = c.labels[point];
+		if (old == classIndex)
+			return;
+		double[] x = c.data.getArray()[point];
+		if (old >= 0) {
+			for (int i = 0; i < x.length; i++)
+				c.sums[old][i] -= x[i];
+			c.counts[old]--;
+		}
+		if (classIndex >= 0) {
+			for (int i = 0; i < x.length; i++)
+				c.sums[classIndex][i] += x[i];
+			c.counts[classIndex]++;
+		}
+		c.labels[point] = classIndex;
+	}
+
+	/**
+	 * The class of each point, or -1 if its value is missing. The array is
+	 * shared, so should not be changed.
+	 */
+	public synchronized int[] getLabels(Attribute attribute) {
+		return getClasses(attribute).labels;
+	}
+
+	/** The number of points in each class */
+	public synchronized int[] getCounts(Attribute attribute) {
+		return getClasses(attribute).counts.clone();
+	}
+
+	/**
+	 * The centroids of the classes in the data space, one row per class.
+	 * Empty classes have a centroid of zero.
+	 */
+	public synchronized double[][] getDataCentroids(Attribute attribute) {
+		Classes c = getClasses(attribute);
+		double[][] centroids = new double[c.sums.length][];
+		for (int k = 0; k < centroids.length; k++) {
+			centroids[k] = c.sums[k].clone();
+			if (c.counts[k] > 0)
+				for (int i = 0; i < centroids[k].length; i++)
+					centroids[k][i] /= c.counts[k];
+		}
+		return centroids;
+	}
+
+	/**
+	 * The centroids of the classes in the current view, one row per class.
+	 * Empty classes have a centroid of zero.
+	 */
+	public double[][] getCentroids(Attribute attribute) {
+		return new Matrix(getDataCentroids(attribute)).times(model.getProjection()).getArray();
+	}
+
+	private boolean isCurrent(Classes c) {
+		return c.instances == model.getInstances() && c.data == model.getData();
+	}
+
+	private Classes getClasses(Attribute attribute) {
+		if (!attribute.isNominal())
+			throw new IllegalArgumentException("Can only find centroids over nominal attributes");
+		Classes c = classes.get(attribute);
+		if (c == null || !isCurrent(c)) {
+			c = sum(attribute);
+			classes.put(attribute, c);
+		}
+		return c;
+	}
+
+	/** Add up the data points in each class */
+	private Classes sum(Attribute attribute) {
+		Classes c = new Classes();
+		c.instances = model.getInstances();
+		c.data = model.getData();
+		int n = c.data.getRowDimension(), d = c.data.getColumnDimension();
+		double[][] x = c.data.getArray();
+		c.labels = new int[n];
+		c.sums = new double[attribute.numValues()][d];
+		c.counts = new int[attribute.numValues()];
+		double value;
+		int k;
+		for (int p = 0; p < n; p++) {
+			value = c.instances.instance(p).value(attribute);
+			if (Double.isNaN(value))
+				c.labels[p] = -1;
+			else {
+				k = (int) value;
+				c.labels[p] = k;
+				c.counts[k]++;
+				for (int i = 0; i < d; i++)
+					c.sums[k][i] += x[p][i];
+			}
+		}
+		return c;
+	}
+}
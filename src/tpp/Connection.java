@@ -12,7 +12,6 @@ public class Connection {
 	private String sourceNode;
 	private String targetNode;
 	
-	private Instance nodeInstance;
 	private Instance sourceInstance;
 	private Instance targetInstance;
 	
@@ -29,15 +28,25 @@ public class Connection {
 	 * @param targetNode
 	 */
 	public Connection(Instances ins, int index, String sourceNode, String targetNode, Double weight) {
+		this(new NodeIndex(ins, index), sourceNode, targetNode, weight);
+	}
+
+	/**
+	 * 
+	 * @param nodes - an index of the node identifiers, built once for all the connections in a graph
+	 * @param sourceNode
+	 * @param targetNode
+	 */
+	public Connection(NodeIndex nodes, String sourceNode, String targetNode, Double weight) {
 		
 		this.sourceNode = sourceNode;
 		this.targetNode = targetNode;
-				
-		sourceInstance = getNodeInstance(ins, sourceNode, index);
-		targetInstance = getNodeInstance(ins, targetNode, index);
 		
-		sourceIndex = indexOf(ins, sourceInstance);
-		targetIndex = indexOf(ins, targetInstance);
+		sourceIndex = nodes.indexOf(sourceNode);
+		targetIndex = nodes.indexOf(targetNode);
+				
+		sourceInstance = (sourceIndex < 0 ? null : nodes.getInstances().instance(sourceIndex));
+		targetInstance = (targetIndex < 0 ? null : nodes.getInstances().instance(targetIndex));
 		
 		this.weight = weight;
 		
@@ -70,28 +79,4 @@ public class Connection {
 	public double getEdgeWeight() {
 		return weight;
 	}
-		
-	private Instance getNodeInstance(Instances ins, String node, int index) {
-			
-		for(int i = 0; i < ins.numInstances(); i++) {
-			Instance in = ins.instance(i);
-			String attVal = in.stringValue(index);
-						
-			if(attVal.equals(node)) {
-				nodeInstance = in;
-			}
-		}
-		
-		return nodeInstance;	
-		
-	}
-	
-	// Copied from TPPModel
-	private int indexOf(Instances ins, Instance in) {
-		for (int i = 0; i < ins.numInstances(); i++)
-			if (ins.instance(i).equals(in)){
-				return i;
-				}
-		return -1;
-	}
 }
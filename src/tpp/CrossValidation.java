@@ -0,0 +1,242 @@
+package tpp;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Cross validation of a classifier over a set of instances, giving the
+ * classification of each instance by the classifier trained on the folds that
+ * do not contain it, and whether that classification was in error (or, for a
+ * numeric class, by how much). The folds are run at the same time, each with
+ * its own copy of the classifier, and the results are kept in the order of
+ * the instances. A fold may take seconds, so the folds have threads of their
+ * own, one fewer than there are processors, rather than the shared worker
+ * pool, which is left free for pursuit and painting.
+ *
+ * The folds are run on a copy of the instances, so the instances themselves
+ * may go on changing while the cross validation runs (eg on another thread),
+ * but the results then only fit the copy; see {@link #isOf}.
+ *
+ * The progress of the folds can be followed, and the cross validation
+ * cancelled, from another thread. If a fold fails the others are cancelled.
+ */
+public class CrossValidation {
+
+	public static final int DEFAULT_FOLDS = 10;
+
+	/** The most folds that are run at once */
+	private static final int MAX_CONCURRENT_FOLDS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+	/** Makes the threads that run the folds, which do not keep TPP running */
+	private static final ThreadFactory FOLD_THREADS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Cross validation");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	/** The copy of the instances that the folds are run on */
+	private final Instances instances;
+
+	/** The instances that were copied */
+	private final Instances source;
+
+	private final Attribute classAttribute;
+
+	private final Classifier classifier;
+
+	private final int numFolds;
+
+	private double[] classifications, errors;
+
+	private final AtomicInteger foldsDone = new AtomicInteger();
+
+	private volatile boolean cancelled;
+
+	private volatile boolean finished;
+
+	/** Why the cross validation failed, if it did */
+	private volatile Exception failure;
+
+	public CrossValidation(Instances instances, Classifier classifier) {
+		this(instances, classifier, DEFAULT_FOLDS);
+	}
+
+	/**
+	 * The class of the instances must be set. The instances are copied, so
+	 * they may be changed once this returns.
+	 */
+	public CrossValidation(Instances instances, Classifier classifier, int numFolds) {
+		if (instances.classIndex() < 0)
+			throw new IllegalArgumentException("The class of the instances has not been set");
+		this.source = instances;
+		this.instances = new Instances(instances);
+		this.instances.setClassIndex(instances.classIndex());
+		this.classAttribute = this.instances.classAttribute();
+		this.classifier = classifier;
+		this.numFolds = Math.min(numFolds, instances.numInstances());
+	}
+
+	/**
+	 * Train and test the classifier on each fold. Returns once every fold is
+	 * finished, or early if cancelled.
+	 *
+	 * @throws Exception
+	 *             if the classifier could not be copied, or could not be
+	 *             trained or applied in one of the folds, in which case the
+	 *             other folds are cancelled
+	 */
+	public void run() throws Exception {
+		try {
+			runFolds();
+		} catch (Exception e) {
+			cancel();
+			failure = e;
+			throw e;
+		}
+		finished = !cancelled;
+	}
+
+	private void runFolds() throws Exception {
+		int n = instances.numInstances();
+		classifications = new double[n];
+		errors = new double[n];
+		Classifier[] copies = AbstractClassifier.makeCopies(classifier, numFolds);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numFolds, MAX_CONCURRENT_FOLDS),
+				FOLD_THREADS);
+		CompletionService<Void> folds = new ExecutorCompletionService<Void>(executor);
+		try {
+			for (int f = 0; f < numFolds; f++)
+				folds.submit(new Fold(f, copies[f]));
+			// wait for the folds in the order they finish, so that a failure
+			// is noticed as soon as it happens
+			for (int f = 0; f < numFolds; f++) {
+				try {
+					folds.take().get();
+				} catch (ExecutionException e) {
+					throw (e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+				}
+			}
+		} finally {
+			// stops any folds still running if one has failed
+			executor.shutdownNow();
+		}
+	}
+
+	/** Stop the cross validation as soon as each fold can */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** Whether every fold has been run (and the run was not cancelled) */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/** Why the cross validation failed, or null if it has not */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Whether this is a cross validation of the given instances, which still
+	 * have the rows it was run on, so that its results can be added to them
+	 */
+	public boolean isOf(Instances instances) {
+		return instances == source && instances.numInstances() == this.instances.numInstances();
+	}
+
+	public int getNumFolds() {
+		return numFolds;
+	}
+
+	/** The number of folds that have been trained and tested so far */
+	public int getFoldsDone() {
+		return foldsDone.get();
+	}
+
+	public Attribute getClassAttribute() {
+		return classAttribute;
+	}
+
+	public Classifier getClassifier() {
+		return classifier;
+	}
+
+	/**
+	 * The class given to each instance by the fold that tested it, as a value
+	 * of the class attribute
+	 */
+	public double[] getClassifications() {
+		return classifications;
+	}
+
+	/**
+	 * For a nominal class, 1 if each instance was misclassified and 0 if not;
+	 * for a numeric class, the predicted value less the actual one. Missing if
+	 * the instance's class is missing.
+	 */
+	public double[] getErrors() {
+		return errors;
+	}
+
+	/**
+	 * One fold, which trains its classifier on the other folds and classifies
+	 * its own instances. The instances of each fold are contiguous (as in
+	 * Instances.testCV), so the results can be written straight into place.
+	 */
+	private class Fold implements Callable<Void> {
+
+		private final int fold;
+
+		private final Classifier classifier;
+
+		Fold(int fold, Classifier classifier) {
+			this.fold = fold;
+			this.classifier = classifier;
+		}
+
+		public Void call() throws Exception {
+			if (cancelled)
+				return null;
+			int n = instances.numInstances();
+			int first = fold * (n / numFolds) + Math.min(fold, n % numFolds);
+			int size = n / numFolds + (fold < n % numFolds ? 1 : 0);
+			classifier.buildClassifier(instances.trainCV(numFolds, fold));
+			Instance instance;
+			double classification;
+			boolean nominal = classAttribute.isNominal();
+			for (int i = first; i < first + size && !cancelled; i++) {
+				instance = instances.instance(i);
+				classification = classifier.classifyInstance(instance);
+				classifications[i] = classification;
+				if (instance.classIsMissing() || Utils.isMissingValue(classification))
+					errors[i] = Utils.missingValue();
+				else if (nominal)
+					errors[i] = (Utils.eq(instance.classValue(), classification) ? 0 : 1);
+				else
+					errors[i] = classification - instance.classValue();
+			}
+			foldsDone.incrementAndGet();
+			return null;
+		}
+	}
+}
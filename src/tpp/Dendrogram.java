@@ -0,0 +1,149 @@
+package tpp;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The result of a hierarchical clustering of N points, held as the N-1 merges
+ * that built it, in order of increasing height. Clusters are numbered as in
+ * most statistics packages: the points themselves are clusters 0..N-1, and
+ * merge k creates cluster N+k from two earlier clusters.
+ */
+public class Dendrogram implements Serializable {
+
+	private static final long serialVersionUID = 3809264154721617834L;
+
+	private final int numPoints;
+
+	/** The two clusters joined by each merge */
+	private final int[] left, right;
+
+	/** The distance between the two clusters joined by each merge */
+	private final double[] height;
+
+	/** The number of points in each cluster */
+	private final int[] size;
+
+	private Dendrogram(int numPoints, int[] left, int[] right, double[] height, int[] size) {
+		this.numPoints = numPoints;
+		this.left = left;
+		this.right = right;
+		this.height = height;
+		this.size = size;
+	}
+
+	/**
+	 * Build a dendrogram from a list of merges, each given by the height of the
+	 * merge and a point in each of the clusters joined. The merges may be in
+	 * any order, as long as they are consistent with being made in order of
+	 * height (as they are for single, average and complete linkage).
+	 */
+	static Dendrogram fromMerges(int numPoints, int[] a, int[] b, final double[] h) {
+		int numMerges = h.length;
+		Integer[] order = new Integer[numMerges];
+		for (int k = 0; k < numMerges; k++)
+			order[k] = k;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer k1, Integer k2) {
+				return Double.compare(h[k1], h[k2]);
+			}
+		});
+
+		// keep track of which cluster each point is in using union-find, with
+		// the cluster number held at the root of each set
+		int[] parent = new int[numPoints];
+		int[] cluster = new int[numPoints];
+		for (int p = 0; p < numPoints; p++) {
+			parent[p] = p;
+			cluster[p] = p;
+		}
+		int[] left = new int[numMerges];
+		int[] right = new int[numMerges];
+		double[] height = new double[numMerges];
+		int[] size = new int[numPoints + numMerges];
+		Arrays.fill(size, 0, numPoints, 1);
+		int m, ra, rb;
+		for (int k = 0; k < numMerges; k++) {
+			m = order[k];
+			ra = find(parent, a[m]);
+			rb = find(parent, b[m]);
+			left[k] = cluster[ra];
+			right[k] = cluster[rb];
+			height[k] = h[m];
+			size[numPoints + k] = size[left[k]] + size[right[k]];
+			parent[ra] = rb;
+			cluster[rb] = numPoints + k;
+		}
+		return new Dendrogram(numPoints, left, right, height, size);
+	}
+
+	/** The root of the set containing p, halving the path as it goes */
+	private static int find(int[] parent, int p) {
+		while (parent[p] != p) {
+			parent[p] = parent[parent[p]];
+			p = parent[p];
+		}
+		return p;
+	}
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	public int getNumMerges() {
+		return height.length;
+	}
+
+	/** The first cluster joined by the merge */
+	public int getLeft(int merge) {
+		return left[merge];
+	}
+
+	/** The second cluster joined by the merge */
+	public int getRight(int merge) {
+		return right[merge];
+	}
+
+	/** The distance between the clusters joined by the merge */
+	public double getHeight(int merge) {
+		return height[merge];
+	}
+
+	/** The number of points in the cluster */
+	public int getSize(int cluster) {
+		return size[cluster];
+	}
+
+	/**
+	 * The centroid of every cluster in the view, one row per cluster. Since
+	 * the view is a linear projection of the data these are found from the
+	 * points' positions, in O(N), without going back to the data. Returns null
+	 * if the view does not have the same points as the dendrogram.
+	 */
+	public double[][] getViewCentroids(ViewSnapshot snapshot) {
+		if (snapshot.getNumPoints() != numPoints)
+			return null;
+		int dims = snapshot.getNumDimensions();
+		double[][] centroids = new double[numPoints + height.length][dims];
+		for (int p = 0; p < numPoints; p++)
+			for (int d = 0; d < dims; d++)
+				centroids[p][d] = snapshot.get(p, d);
+		int c;
+		for (int k = 0; k < height.length; k++) {
+			c = numPoints + k;
+			for (int d = 0; d < dims; d++)
+				centroids[c][d] = (size[left[k]] * centroids[left[k]][d] + size[right[k]]
+						* centroids[right[k]][d])
+						/ size[c];
+		}
+		return centroids;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int k = 0; k < height.length; k++)
+			s.append(numPoints + k).append("=[").append(left[k]).append(" ").append(right[k]).append("] ");
+		return s.toString().trim();
+	}
+}
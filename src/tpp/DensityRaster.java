@@ -0,0 +1,228 @@
+package tpp;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The density of the points in a view, for drawing more points than can
+ * usefully be drawn one at a time. The view is divided into square cells a
+ * few pixels across, and each cell is drawn with an opacity that increases
+ * with the (log of the) number of points in it, and either in the mean colour
+ * of those points or in a colour from the spectrum that shows the density.
+ *
+ * The cell of each point is found in parallel. The cells are remembered, so
+ * that when the view changes only the points that have moved to a different
+ * cell need to be taken out of one cell and put into another, which is few of
+ * them when the projection changes slightly.
+ */
+public class DensityRaster {
+
+	/** The width and height of each cell, in pixels */
+	public static final int CELL_PIXELS = 2;
+
+	/** The number of points in each chunk of the work given to a thread */
+	private static final int CHUNK_POINTS = 65536;
+
+	/** The least opacity of a cell with any points in it */
+	private static final double MIN_ALPHA = 0.25;
+
+	// the size of the grid, in cells
+	private int columns, rows;
+
+	// the points that were binned, and the version of their colours
+	private int numPoints = -1;
+	private int colourVersion = -1;
+
+	/** The cell of each point, or -1 if it is outside the view */
+	private int[] cell;
+
+	/** The new cell of each point, while it is being binned */
+	private int[] newCell;
+
+	// the number of points in each cell, and the sums of their colours
+	private int[] count;
+	private long[] red, green, blue;
+
+	private int numVisible;
+
+	private BufferedImage image;
+
+	// what is being binned (while it is being binned)
+	private double[] x, y;
+	private AffineTransform transform;
+
+	/**
+	 * Bin the points, given by their positions in data space. The colours may
+	 * only change if their version does.
+	 *
+	 * @param transform
+	 *            the transform from data space to pixels
+	 * @param width
+	 *            the width of the view in pixels
+	 * @param height
+	 *            the height of the view in pixels
+	 * @return the number of points in the view
+	 */
+	public int bin(double[] x, double[] y, int[] argb, int numPoints, AffineTransform transform, int width,
+			int height, int colourVersion) {
+		int c = Math.max(1, (width + CELL_PIXELS - 1) / CELL_PIXELS);
+		int r = Math.max(1, (height + CELL_PIXELS - 1) / CELL_PIXELS);
+		if (c != columns || r != rows || numPoints != this.numPoints || colourVersion != this.colourVersion) {
+			columns = c;
+			rows = r;
+			this.numPoints = numPoints;
+			this.colourVersion = colourVersion;
+			count = new int[columns * rows];
+			red = new long[columns * rows];
+			green = new long[columns * rows];
+			blue = new long[columns * rows];
+			cell = new int[numPoints];
+			Arrays.fill(cell, -1);
+			newCell = new int[numPoints];
+			image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+			numVisible = 0;
+		}
+
+		// find the new cells, then move the points that have changed cell
+		this.x = x;
+		this.y = y;
+		this.transform = transform;
+		int chunks = (numPoints + CHUNK_POINTS - 1) / CHUNK_POINTS;
+		try {
+			if (chunks > 1 && WorkerPool.isParallel())
+				WorkerPool.getPool().invoke(new BinTask(0, chunks));
+			else
+				for (int k = 0; k < chunks; k++)
+					binChunk(k);
+		} finally {
+			this.x = null;
+			this.y = null;
+			this.transform = null;
+		}
+		int from, to, colour;
+		for (int p = 0; p < numPoints; p++) {
+			from = cell[p];
+			to = newCell[p];
+			if (from == to)
+				continue;
+			colour = argb[p];
+			if (from != -1) {
+				count[from]--;
+				red[from] -= (colour >> 16) & 0xff;
+				green[from] -= (colour >> 8) & 0xff;
+				blue[from] -= colour & 0xff;
+				numVisible--;
+			}
+			if (to != -1) {
+				count[to]++;
+				red[to] += (colour >> 16) & 0xff;
+				green[to] += (colour >> 8) & 0xff;
+				blue[to] += colour & 0xff;
+				numVisible++;
+			}
+			cell[p] = to;
+		}
+		return numVisible;
+	}
+
+	/** The number of points in the view when they were last binned */
+	public int getNumVisible() {
+		return numVisible;
+	}
+
+	private void binChunk(int chunk) {
+		int from = chunk * CHUNK_POINTS, to = Math.min(numPoints, from + CHUNK_POINTS);
+		double m00 = transform.getScaleX(), m01 = transform.getShearX(), m02 = transform.getTranslateX();
+		double m10 = transform.getShearY(), m11 = transform.getScaleY(), m12 = transform.getTranslateY();
+		double px, py;
+		int c, r;
+		for (int p = from; p < to; p++) {
+			px = (m00 * x[p] + m01 * y[p] + m02) / CELL_PIXELS;
+			py = (m10 * x[p] + m11 * y[p] + m12) / CELL_PIXELS;
+			// NaN positions fail both tests and are left out
+			if (px >= 0 && px < columns && py >= 0 && py < rows) {
+				c = (int) px;
+				r = (int) py;
+				newCell[p] = r * columns + c;
+			} else
+				newCell[p] = -1;
+		}
+	}
+
+	/**
+	 * Draw the cells, in device space (ie ignoring the transform of the
+	 * graphics)
+	 *
+	 * @param byColour
+	 *            whether to draw each cell in the mean colour of its points,
+	 *            rather than in a colour showing its density
+	 */
+	public void draw(Graphics2D g2, boolean byColour, ColourScheme colours) {
+		int maxCount = 0;
+		for (int k = 0; k < count.length; k++)
+			if (count[k] > maxCount)
+				maxCount = count[k];
+		double logMax = Math.log1p(maxCount);
+
+		// the density is shown by the spectrum, from 0 to 1
+		int[] spectrum = null;
+		if (!byColour) {
+			spectrum = new int[256];
+			for (int i = 0; i < spectrum.length; i++)
+				spectrum[i] = colours.getColorFromSpectrum(i / 255d, 0, 1).getRGB() & 0xffffff;
+		}
+
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int n;
+		double density;
+		int alpha;
+		for (int k = 0; k < count.length; k++) {
+			n = count[k];
+			if (n == 0) {
+				pixels[k] = 0;
+				continue;
+			}
+			density = (logMax == 0 ? 1 : Math.log1p(n) / logMax);
+			alpha = (int) Math.round(255 * (MIN_ALPHA + (1 - MIN_ALPHA) * density));
+			if (byColour)
+				pixels[k] = (alpha << 24) | ((int) (red[k] / n) << 16) | ((int) (green[k] / n) << 8)
+						| (int) (blue[k] / n);
+			else
+				pixels[k] = (alpha << 24) | spectrum[(int) Math.round(density * 255)];
+		}
+
+		AffineTransform saveTransform = g2.getTransform();
+		Object saveInterpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		g2.setTransform(new AffineTransform());
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(image, 0, 0, columns * CELL_PIXELS, rows * CELL_PIXELS, null);
+		if (saveInterpolation != null)
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, saveInterpolation);
+		g2.setTransform(saveTransform);
+	}
+
+	private class BinTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -5326015807419620541L;
+
+		private final int fromChunk, toChunk;
+
+		BinTask(int fromChunk, int toChunk) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new BinTask(fromChunk, mid), new BinTask(mid, toChunk));
+			} else
+				binChunk(fromChunk);
+		}
+	}
+}
@@ -6,7 +6,6 @@ package tpp;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
@@ -17,123 +16,188 @@ import java.util.ArrayList;
 
 import processing.core.PVector;
 
-import weka.core.Attribute;
-import weka.core.Instance;
-import weka.core.matrix.Matrix;
-
 /**
  * @author Helen
  * A class which controls the drawing of each edge and the associates calculations to go with it. 
  */
 public class Edge {
 	
-	private ScatterPlotModel spModel;
+	private RenderInput input;
 	private EdgeModel edgeModel;
-	private Connection cnxn;
 	private Line2D.Double arrowLine;
 
+	/** Whether to draw every edge as a straight line, whatever its style */
+	private boolean straight;
+
+	/** The edges collected to be drawn together, or null to draw each edge as it comes */
+	private EdgeBatch batch;
+
+	/** The number of edges drawn so far between each pair of clusters */
+	private double[][] clusterEdgesDrawn;
+
+	/** The control points of the last bezier edge */
+	private final double[] control = new double[4];
+
+	/**
+	 * Initiates the edge renderer. A single instance can be used to draw every
+	 * edge in the graph.
+	 * @param input What the frame is drawn from: the positions, colours and
+	 *            selection of the nodes, the edges of the graph, and a copy
+	 *            of the edge model with all the parameters for drawing them
+	 */
+	public Edge(RenderInput input) {
+		this.input = input;
+		this.edgeModel = input.edgeModel;
+	}
+
+	/**
+	 * Draw every edge in the graph, walking the outgoing edges of each node.
+	 * @param g The Graphics2D context for the scatterplotviewplan
+	 * @param lineWidth what the current strokewidth for  edges has been defined at. 
+	 */
+	public void drawEdges(Graphics2D g, float lineWidth) {
+		drawEdges(g, lineWidth, null);
+	}
+
 	/**
-	 * Initiates the edge
-	 * @param cnxn The edge that we are drawing. Includes source node, target node and weight.
-	 * @param edgeModel The model that holds all the parameters for drawing the edges
-	 * @param spModel The model that holds the higher level parameters
+	 * Draw the edges of the graph as part of a frame drawn in the background.
+	 * Only one in every edge stride of the frame's edges is drawn, which
+	 * samples the edges of every node evenly; a draft frame's edges are all
+	 * drawn straight; and drawing stops if the frame is to stop.
+	 * 
+	 * Straight and bezier edges are collected into a batch and drawn together
+	 * once they have all been found; the other styles are drawn one by one.
+	 * @param frame the frame being drawn, or null to draw every edge in full
 	 */
-	public Edge(Connection cnxn, EdgeModel edgeModel, ScatterPlotModel spModel) {
-		this.edgeModel = edgeModel;	
-		this.cnxn = cnxn;
-		this.spModel = spModel;
+	public void drawEdges(Graphics2D g, float lineWidth, RenderFrame frame) {
+		int[] offsets = input.outOffsets;
+		int[] targets = input.outTargets;
+		float[] weights = input.outWeights;
+		if (offsets == null)
+			return;
+		int numNodes = input.numGraphNodes;
+		int stride = (frame == null ? 1 : frame.getEdgeStride());
+		straight = (frame != null && frame.isDraft());
+		if (straight || !(edgeModel.bundledEdges() || edgeModel.fannedEdges() || edgeModel.intelligentEdges()))
+			batch = new EdgeBatch(g);
+		double[][] bundles = edgeModel.getClusterEdgesDrawn();
+		clusterEdgesDrawn = (bundles == null ? null : new double[bundles.length][bundles.length]);
+		try {
+			for (int i = 0; i < numNodes; i++) {
+				if (frame != null && frame.shouldStop())
+					return;
+				for (int e = (offsets[i] + stride - 1) / stride * stride; e < offsets[i + 1]; e += stride)
+					if (targets[e] < numNodes)
+						drawEdge(g, lineWidth, i, targets[e], weights[e]);
+			}
+		} finally {
+			if (batch != null)
+				batch.flush();
+			batch = null;
+		}
 	}
 
 	/**
 	 * Sets up drawing the edge depending on whether edges are filtered by weight or not. 
 	 * @param g The Graphics2D context for the scatterplotviewplan
 	 * @param lineWidth what the current strokewidth for  edges has been defined at. 
+	 * @param i the source node
+	 * @param j the target node
+	 * @param edgeWeight the weight of the edge
 	 */
-	public void drawEdge(Graphics2D g, float lineWidth) { 
+	public void drawEdge(Graphics2D g, float lineWidth, int i, int j, double edgeWeight) { 
 		
 		// If we're filtering the edges by weight then only draw those edges that fall within the weight range
 		if (edgeModel.filterEdgesByWeight()) {
-			if ((cnxn.getEdgeWeight() >= edgeModel.getLowerEdgeWeightRange())
-					&& (cnxn.getEdgeWeight() <= edgeModel.getUpperEdgeWeightRange()))
-				drawEdge(cnxn, g, lineWidth);
+			if ((edgeWeight >= edgeModel.getLowerEdgeWeightRange())
+					&& (edgeWeight <= edgeModel.getUpperEdgeWeightRange()))
+				drawEdge(i, j, edgeWeight, g, lineWidth);
 		} else
-			drawEdge(cnxn, g, lineWidth);
+			drawEdge(i, j, edgeWeight, g, lineWidth);
 	}
 	
 	/**
 	 * 
-	 * @param cnxn the connection drawn
+	 * @param i the source node
+	 * @param j the target node
+	 * @param edgeWeight the weight of the edge
 	 * @param g2 the graphics 2D context 
 	 * @param lineWidth the current linewidth used. 
 	 */
-	private void drawEdge(Connection cnxn, Graphics2D g2, float lineWidth) {
+	private void drawEdge(int i, int j, double edgeWeight, Graphics2D g2, float lineWidth) {
 		
 		double x1,y1,x2,y2;
 		Line2D.Double line;
-		int i, j;
-		Color c;
+		int c;
 		
-		int transparency = spModel.getTransparency();
+		int transparency = input.transparency;
 		double bundleSpacing = edgeModel.getBundleSpacing();
-		double[][] clusterEdgesDrawn = edgeModel.getClusterEdgesDrawn();
 		{
-			Instance source = cnxn.getSourceInstance();
-			Instance target = cnxn.getTargetInstance();
-			double edgeWeight = cnxn.getEdgeWeight();
-			
-			Matrix noise = spModel.getNoise();
-
-			if (source != null && target != null) {
-				i = cnxn.getSourceIndex();
-				x1 = spModel.getView().get(i, 0) + noise.get(i, 0);
-				y1 = spModel.getView().get(i, 1) + noise.get(i, 1);
-
-				j = cnxn.getTargetIndex();
-				x2 = spModel.getView().get(j, 0) + noise.get(j, 0);
-				y2 = spModel.getView().get(j, 1) + noise.get(j, 1);
-
-				if (!edgeModel.filterAllEdges()	|| (edgeModel.filterAllEdges()
-						&& (spModel.isPointSelected(i) || spModel.isPointSelected(j)))) {
-
-					// Color the edges of the graph
-					if (edgeModel.sourceColorEdges())
-						c = spModel.setColor(i);
-					else if (edgeModel.targetColorEdges())
-						c = spModel.setColor(j);
-					else if (edgeModel.mixedColorEdges())
-						c = addColors(spModel.setColor(i), spModel.setColor(j));
-					else if (edgeModel.defaultColorEdges())
-						c = spModel.getColours().getGraphColor();
-					else
-						c = spModel.getColours().getGraphColor();
+			x1 = input.x[i];
+			y1 = input.y[i];
+
+			x2 = input.x[j];
+			y2 = input.y[j];
+
+			if (!edgeModel.filterAllEdges()	|| (edgeModel.filterAllEdges()
+					&& (input.isPointSelected(i) || input.isPointSelected(j)))) {
+
+				// Color the edges of the graph
+				if (edgeModel.sourceColorEdges())
+					c = input.argb[i];
+				else if (edgeModel.targetColorEdges())
+					c = input.argb[j];
+				else if (edgeModel.mixedColorEdges())
+					c = addColors(input.argb[i], input.argb[j]);
+				else if (edgeModel.defaultColorEdges())
+					c = input.colours.getGraphColor().getRGB();
+				else
+					c = input.colours.getGraphColor().getRGB();
+
+				c = evaluateEdgeColorOptions(i, j, transparency, c);
+
+				if (batch != null) {
+					float width = (edgeModel.viewEdgeWeights() ? (float) (lineWidth * edgeWeight) : lineWidth);
+					if (!straight && edgeModel.bezierEdges()) {
+						bezierControlPoints(x1, y1, x2, y2);
+						batch.addCurve(c, width, x1, y1, control[0], control[1], control[2], control[3], x2, y2);
+					} else {
+						batch.addLine(c, width, x1, y1, x2, y2);
+						if (!straight && edgeModel.directed())
+							batch.addArrowHead(c, width, x1, y1, x2, y2, arrowHeadSize(j));
+					}
+					return;
+				}
 
-					evaluateEdgeColorOptions(g2, i, j, transparency, c);
+				g2.setColor(new Color(c, true));
 
-					if (edgeModel.viewEdgeWeights())
-						g2.setStroke(new BasicStroke((float) (lineWidth * edgeWeight)));
+				if (edgeModel.viewEdgeWeights())
+					g2.setStroke(new BasicStroke((float) (lineWidth * edgeWeight)));
 
-					// Code from gephi
-					// TODO Add proper attribution(preview.plugin.renderers.edgerender.java)
-					
-					if (edgeModel.bezierEdges())
-						drawBezierEdge(g2, x1, y1, x2, y2);
-					else if (edgeModel.bundledEdges()) {
-						if (edgeModel.directed())
-							drawBundledEdges(i, j, x1, y1, x2, y2, g2, clusterEdgesDrawn,bundleSpacing);
-						else
-							drawUndirectedBundledEdges(i, j, x1, y1, x2, y2, g2, clusterEdgesDrawn, bundleSpacing);
-					}
-					else if (edgeModel.fannedEdges()) 
-						drawFannedEdges(i, j, x1, y1, x2, y2, g2);
-					else if (edgeModel.intelligentEdges())
-						drawIntelligentBundledEdges(i, j, x1, y1, x2, y2, g2,
-								clusterEdgesDrawn, bundleSpacing);
-					else {
-						line = new Line2D.Double(x1, y1, x2, y2);
-						g2.draw(line);
-						if (edgeModel.directed()) {
-							drawArrowHead(g2, line, j);
-						}
+				// Code from gephi
+				// TODO Add proper attribution(preview.plugin.renderers.edgerender.java)
+				
+				if (straight) {
+					line = new Line2D.Double(x1, y1, x2, y2);
+					g2.draw(line);
+				} else if (edgeModel.bezierEdges())
+					drawBezierEdge(g2, x1, y1, x2, y2);
+				else if (edgeModel.bundledEdges()) {
+					if (edgeModel.directed())
+						drawBundledEdges(i, j, x1, y1, x2, y2, g2, clusterEdgesDrawn,bundleSpacing);
+					else
+						drawUndirectedBundledEdges(i, j, x1, y1, x2, y2, g2, clusterEdgesDrawn, bundleSpacing);
+				}
+				else if (edgeModel.fannedEdges()) 
+					drawFannedEdges(i, j, x1, y1, x2, y2, g2);
+				else if (edgeModel.intelligentEdges())
+					drawIntelligentBundledEdges(i, j, x1, y1, x2, y2, g2,
+							clusterEdgesDrawn, bundleSpacing);
+				else {
+					line = new Line2D.Double(x1, y1, x2, y2);
+					g2.draw(line);
+					if (edgeModel.directed()) {
+						drawArrowHead(g2, line, j);
 					}
 				}
 			}
@@ -143,34 +207,17 @@ public class Edge {
 
 
 	public void drawArrowHead(Graphics2D g2, Line2D line, int j) {
-		AffineTransform transform = spModel.getTransform();
-		double size;
-		PointModel pointModel = spModel.getPointModel();
-		GraphModel graphModel = spModel.getGraphModel();
-		
-		double markerRadius = pointModel.getMarkerRadius();
-		double markerMin = pointModel.getMinMarkerSize();
-		double markerRange = pointModel.getMarkerRange();
-		
-		if (pointModel.getSizeAttribute() == null && graphModel.getNodeSizeDegree() == null) {
-			size = Math.sqrt(markerRadius / Math.PI);
-		} else if (graphModel.getNodeSizeDegree() != null) {
-			double area = (markerMin + markerRange
-					* (graphModel.getNodeSizeDegree()[j] - pointModel.sizeAttributeLowerBound)
-					/ (pointModel.sizeAttributeUpperBound - pointModel.sizeAttributeLowerBound))
-					/ transform.getScaleX();
-			size = Math.sqrt(area / Math.PI);
-		} else {
-			double area = (markerMin + markerRange
-					* (spModel.getInstances().instance(j).value(pointModel
-									.getSizeAttribute()) - pointModel.sizeAttributeLowerBound)
-					/ (pointModel.sizeAttributeUpperBound - pointModel.sizeAttributeLowerBound))
-					/ transform.getScaleX();
-			size = Math.sqrt(area / Math.PI);
-		}
-		g2.fill(MarkerFactory.buildArrowHead(line, size,
+		g2.fill(MarkerFactory.buildArrowHead(line, arrowHeadSize(j),
 				true));
 	}
+
+	/** The size of the arrowhead of an edge, which depends on the size of its target node */
+	private double arrowHeadSize(int j) {
+		if (java.lang.Double.isNaN(input.sizeFraction[j]))
+			return Math.sqrt(input.markerRadius / Math.PI);
+		double area = input.markerArea(j, 0) / input.scale;
+		return Math.sqrt(area / Math.PI);
+	}
 	
 	public Line2D.Double getArrowLine() {
 		return arrowLine;
@@ -178,8 +225,6 @@ public class Edge {
 
 	/**
 	 * 
-	 * @param g2
-	 *            The Graphics2D environment being used
 	 * @param i
 	 *            the source node
 	 * @param j
@@ -187,33 +232,32 @@ public class Edge {
 	 * @param transparency
 	 *            how transparent non-selected nodes should be
 	 * @param c
-	 *            the colour of the edge
+	 *            the colour of the edge, as ARGB
+	 * @return the colour to draw the edge in, as ARGB
 	 */
-	private void evaluateEdgeColorOptions(Graphics2D g2, int i, int j,
-			int transparency, Color c) {
+	private int evaluateEdgeColorOptions(int i, int j,
+			int transparency, int c) {
 
-		if ((spModel.isPointSelected(i) && spModel.isPointSelected(j)))
-			g2.setColor(c);
-		else if ((spModel.isPointSelected(i) || spModel.isPointSelected(j))
+		int faded = (transparency << 24) | (c & 0xffffff);
+		if ((input.isPointSelected(i) && input.isPointSelected(j)))
+			return c;
+		else if ((input.isPointSelected(i) || input.isPointSelected(j))
 				&& (edgeModel.incomingEdges() && edgeModel.outgoingEdges()))
-			g2.setColor(c);
-		else if (spModel.isPointSelected(i)
+			return c;
+		else if (input.isPointSelected(i)
 				&& (edgeModel.incomingEdges() && !edgeModel.outgoingEdges()))
-			g2.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(),
-					transparency));
-		else if (spModel.isPointSelected(i)
+			return faded;
+		else if (input.isPointSelected(i)
 				&& (!edgeModel.incomingEdges() && edgeModel.outgoingEdges()))
-			g2.setColor(c);
-		else if (spModel.isPointSelected(j)
+			return c;
+		else if (input.isPointSelected(j)
 				&& (edgeModel.incomingEdges() && !edgeModel.outgoingEdges()))
-			g2.setColor(c);
-		else if (spModel.isPointSelected(j)
+			return c;
+		else if (input.isPointSelected(j)
 				&& (!edgeModel.incomingEdges() && edgeModel.outgoingEdges()))
-			g2.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(),
-					transparency));
+			return faded;
 		else
-			g2.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(),
-					transparency));
+			return faded;
 	}
 
 	/**
@@ -221,65 +265,68 @@ public class Edge {
 	 * together
 	 * 
 	 * @param c1
-	 *            source node colour
+	 *            source node colour, as ARGB
 	 * @param c2
-	 *            target node colour
-	 * @return mixed colour
+	 *            target node colour, as ARGB
+	 * @return mixed colour, as ARGB
 	 */
-	private Color addColors(Color c1, Color c2) {
-		int a1 = c1.getAlpha();
-		int r1 = c1.getRed();
-		int g1 = c1.getGreen();
-		int b1 = c1.getBlue();
-		int a2 = c2.getAlpha();
-		int r2 = c2.getRed();
-		int g2 = c2.getGreen();
-		int b2 = c2.getBlue();
+	private int addColors(int c1, int c2) {
+		int a1 = (c1 >>> 24);
+		int r1 = (c1 >> 16) & 0xff;
+		int g1 = (c1 >> 8) & 0xff;
+		int b1 = c1 & 0xff;
+		int a2 = (c2 >>> 24);
+		int r2 = (c2 >> 16) & 0xff;
+		int g2 = (c2 >> 8) & 0xff;
+		int b2 = c2 & 0xff;
 		int ax = (a1 + a2) / 2;
 		int rx = (r1 + r2) / 2;
 		int gx = (g1 + g2) / 2;
 		int bx = (b1 + b2) / 2;
-		return new Color(rx, gx, bx, ax);
+		return (ax << 24) | (rx << 16) | (gx << 8) | bx;
 	}
 		
 	private void drawBezierEdge(Graphics2D g2, double x1, double y1, double x2,
 			double y2) {
-		CubicCurve2D beizerLine;
-		PVector direction = new PVector((float) x2, (float) y2);
-		direction.sub(new PVector((float) x1, (float) y1));
-		float length = direction.mag();
-		direction.normalize();
+		bezierControlPoints(x1, y1, x2, y2);
+		g2.draw(new CubicCurve2D.Double(x1, y1, control[0], control[1],
+				control[2], control[3], x2, y2));
+	}
 
-		float factor = 0.2f * length;
-		// float factor = spModel.getBeizerCurviness() * length;
+	/**
+	 * Find the control points of a bezier edge, which bows to one side by a
+	 * fifth of its length, and put them in the control array
+	 */
+	private void bezierControlPoints(double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		if (length != 0) {
+			dx /= length;
+			dy /= length;
+		}
+
+		double factor = 0.2 * length;
+		// double factor = spModel.getBeizerCurviness() * length;
 
 		// normal vector to the edge
-		PVector n = new PVector(direction.y, -direction.x);
-		n.mult(factor);
+		double nx = dy * factor;
+		double ny = -dx * factor;
 
 		// first control point
-		PVector v1 = new PVector(direction.x, direction.y);
-		v1.mult(factor);
-		v1.add(new PVector((float) x1, (float) y1));
-		v1.add(n);
+		control[0] = x1 + dx * factor + nx;
+		control[1] = y1 + dy * factor + ny;
 
 		// second control point
-		PVector v2 = new PVector(direction.x, direction.y);
-		v2.mult(-factor);
-		v2.add(new PVector((float) x2, (float) y2));
-		v2.add(n);
-
-		beizerLine = new CubicCurve2D.Double(x1, y1, (double) v1.x,
-				(double) v1.y, (double) v2.x, (double) v2.y, x2, y2);
-		g2.draw(beizerLine);
+		control[2] = x2 - dx * factor + nx;
+		control[3] = y2 - dy * factor + ny;
 	}
 
 	private void drawFannedEdges(int i, int j, double x1, double y1, double x2,
 			double y2, Graphics2D g2) {
 
-		Attribute sepAtt = spModel.getSeparationAttribute();
-		int c = (int) spModel.getInstances().instance(i).value(sepAtt);
-		int d = (int) spModel.getInstances().instance(j).value(sepAtt);
+		int c = input.separationClass[i];
+		int d = input.separationClass[j];
 		
 		ArrayList<Point2D> centroids = edgeModel.getCentroids();
 		Point2D sourceCentroid = centroids.get(c);
@@ -385,12 +432,9 @@ public class Edge {
 	private void drawBundledEdges(int i, int j, double x1, double y1,
 			double x2, double y2, Graphics2D g2, double[][] k, double curveFactor) {
 
-		// get the attribute used to currently separate the nodes
-		Attribute sepAtt = spModel.getSeparationAttribute();
-						
 		// c is the cluster the source node belongs to, d the cluster the target node belongs to
-		int c = (int) spModel.getInstances().instance(i).value(sepAtt);
-		int d = (int) spModel.getInstances().instance(j).value(sepAtt);
+		int c = input.separationClass[i];
+		int d = input.separationClass[j];
 		
 		// Add one to the number of edges drawn between those two clusters
 		k[c][d] = k[c][d] + 1.0;
@@ -532,12 +576,9 @@ public class Edge {
 	private void drawUndirectedBundledEdges(int i, int j, double x1, double y1,
 			double x2, double y2, Graphics2D g2, double[][] clusterEdgesDrawn, double curveFactor) {
 		
-				// get the attribute used to currently separate the nodes
-				Attribute sepAtt = spModel.getSeparationAttribute();
-				
 				// c is the cluster the source node belongs to, d the cluster the target node belongs to
-				int c = (int) spModel.getInstances().instance(i).value(sepAtt);
-				int d = (int) spModel.getInstances().instance(j).value(sepAtt);
+				int c = input.separationClass[i];
+				int d = input.separationClass[j];
 				
 				int s;
 				int t;
@@ -640,10 +681,9 @@ public class Edge {
 
 		// double radius = 0.5;
 
-		Attribute sepAtt = spModel.getSeparationAttribute();
 		int numClasses = edgeModel.getCurrentBundledAttribute().numValues();
-		int c = (int) spModel.getInstances().instance(i).value(sepAtt);
-		int d = (int) spModel.getInstances().instance(j).value(sepAtt);
+		int c = input.separationClass[i];
+		int d = input.separationClass[j];
 
 		k[c][d]++;
 		
@@ -0,0 +1,196 @@
+package tpp;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Edges collected into buckets by colour and line width, so that a graph with
+ * many edges is drawn with one change of colour and stroke for each bucket
+ * rather than for each edge, and without making any shapes or colours for
+ * each edge. The coordinates of the edges in a bucket are kept in arrays, and
+ * are drawn through the same reused shapes when the bucket fills up or the
+ * batch is flushed.
+ *
+ * The edges of a bucket are still drawn one at a time rather than joined into
+ * one path: Java2D draws a straight line much faster than it strokes a path
+ * of many lines, especially when they are long and cross each other. For the
+ * same reason a curved edge is drawn as a few straight pieces, as many as its
+ * length in pixels needs, rather than as a curve.
+ */
+public class EdgeBatch {
+
+	/** Draw the edges in a bucket when it has this many */
+	private static final int MAX_EDGES = 4096;
+
+	/** The length, in pixels, of each straight piece of a curved edge */
+	private static final double CURVE_PIECE_PIXELS = 8;
+
+	/** The most pieces a curved edge is drawn in */
+	private static final int MAX_CURVE_PIECES = 32;
+
+	// the kinds of shape in a bucket, and the number of coordinates of each:
+	// the ends of a line, the ends and control points of a curve, and the
+	// ends of the line an arrowhead is on and its length
+	private static final int LINE = 0;
+	private static final int CURVE = 1;
+	private static final int ARROW = 2;
+	private static final int[] COORDINATES = { 4, 8, 5 };
+
+	private final Graphics2D g2;
+
+	/** The buckets, keyed by colour (high bits) and line width (low bits) */
+	private final LinkedHashMap<Long, Bucket> buckets = new LinkedHashMap<Long, Bucket>();
+
+	// the bucket last added to, since edges from a node often share one
+	private Bucket last;
+	private long lastKey;
+
+	// the shapes reused for every edge
+	private final Line2D.Float line = new Line2D.Float();
+	private final Path2D.Float head = new Path2D.Float();
+
+	public EdgeBatch(Graphics2D g2) {
+		this.g2 = g2;
+	}
+
+	/** Add a straight edge */
+	public void addLine(int argb, float lineWidth, double x1, double y1, double x2, double y2) {
+		bucket(argb, lineWidth).add(LINE, x1, y1, x2, y2, 0, 0, 0, 0);
+	}
+
+	/** Add a curved edge, with the given control points */
+	public void addCurve(int argb, float lineWidth, double x1, double y1, double cx1, double cy1, double cx2,
+			double cy2, double x2, double y2) {
+		bucket(argb, lineWidth).add(CURVE, x1, y1, cx1, cy1, cx2, cy2, x2, y2);
+	}
+
+	/**
+	 * Add the arrowhead at the end of an edge from (x1, y1) to (x2, y2), which
+	 * is filled after the edges of its bucket are drawn
+	 */
+	public void addArrowHead(int argb, float lineWidth, double x1, double y1, double x2, double y2,
+			double arrowLength) {
+		bucket(argb, lineWidth).add(ARROW, x1, y1, x2, y2, arrowLength, 0, 0, 0);
+	}
+
+	/** Draw every edge that has been added and not yet drawn */
+	public void flush() {
+		for (Bucket bucket : buckets.values())
+			bucket.draw();
+	}
+
+	private Bucket bucket(int argb, float lineWidth) {
+		long key = ((long) argb << 32) | (Float.floatToIntBits(lineWidth) & 0xffffffffL);
+		if (last != null && key == lastKey)
+			return last;
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new Bucket(new Color(argb, true), new BasicStroke(lineWidth));
+			buckets.put(key, bucket);
+		}
+		last = bucket;
+		lastKey = key;
+		return bucket;
+	}
+
+	private class Bucket {
+
+		private final Color colour;
+		private final BasicStroke stroke;
+
+		// the coordinates of each kind of shape, and the number of each
+		private final float[][] coordinates = new float[COORDINATES.length][];
+		private final int[] count = new int[COORDINATES.length];
+		private int total;
+
+		Bucket(Color colour, BasicStroke stroke) {
+			this.colour = colour;
+			this.stroke = stroke;
+		}
+
+		/** Add a shape, of which only the first few coordinates are used */
+		void add(int kind, double a, double b, double c, double d, double e, double f, double g, double h) {
+			int n = COORDINATES[kind];
+			float[] cs = coordinates[kind];
+			if (cs == null)
+				cs = coordinates[kind] = new float[64 * n];
+			else if ((count[kind] + 1) * n > cs.length)
+				cs = coordinates[kind] = Arrays.copyOf(cs, cs.length * 2);
+			int k = count[kind] * n;
+			cs[k] = (float) a;
+			cs[k + 1] = (float) b;
+			cs[k + 2] = (float) c;
+			cs[k + 3] = (float) d;
+			if (n > 4)
+				cs[k + 4] = (float) e;
+			if (n > 5) {
+				cs[k + 5] = (float) f;
+				cs[k + 6] = (float) g;
+				cs[k + 7] = (float) h;
+			}
+			count[kind]++;
+			if (++total >= MAX_EDGES)
+				draw();
+		}
+
+		void draw() {
+			if (total == 0)
+				return;
+			g2.setColor(colour);
+			g2.setStroke(stroke);
+			float[] c = coordinates[LINE];
+			for (int k = 0; k < count[LINE] * 4; k += 4) {
+				line.setLine(c[k], c[k + 1], c[k + 2], c[k + 3]);
+				g2.draw(line);
+			}
+			c = coordinates[CURVE];
+			if (count[CURVE] > 0) {
+				// the number of pixels in a unit of data space
+				double scale = Math.sqrt(Math.abs(g2.getTransform().getDeterminant()));
+				for (int k = 0; k < count[CURVE] * 8; k += 8)
+					drawCurve(c, k, scale);
+			}
+			c = coordinates[ARROW];
+			for (int k = 0; k < count[ARROW] * 5; k += 5) {
+				head.reset();
+				MarkerFactory.appendArrowHead(head, c[k], c[k + 1], c[k + 2], c[k + 3], c[k + 4], true);
+				g2.fill(head);
+			}
+			Arrays.fill(count, 0);
+			total = 0;
+		}
+
+		/**
+		 * Draw the curve starting at c[k] in straight pieces, as many as the
+		 * length of its control polygon (which is at least as long as the
+		 * curve) needs
+		 */
+		private void drawCurve(float[] c, int k, double scale) {
+			double length = Math.hypot(c[k + 2] - c[k], c[k + 3] - c[k + 1])
+					+ Math.hypot(c[k + 4] - c[k + 2], c[k + 5] - c[k + 3])
+					+ Math.hypot(c[k + 6] - c[k + 4], c[k + 7] - c[k + 5]);
+			int pieces = (int) Math.min(MAX_CURVE_PIECES, Math.max(1, Math.ceil(length * scale / CURVE_PIECE_PIXELS)));
+			double t, u, b0, b1, b2, b3;
+			float x = c[k], y = c[k + 1], nextX, nextY;
+			for (int p = 1; p <= pieces; p++) {
+				t = (double) p / pieces;
+				u = 1 - t;
+				b0 = u * u * u;
+				b1 = 3 * u * u * t;
+				b2 = 3 * u * t * t;
+				b3 = t * t * t;
+				nextX = (float) (b0 * c[k] + b1 * c[k + 2] + b2 * c[k + 4] + b3 * c[k + 6]);
+				nextY = (float) (b0 * c[k + 1] + b1 * c[k + 3] + b2 * c[k + 5] + b3 * c[k + 7]);
+				line.setLine(x, y, nextX, nextY);
+				g2.draw(line);
+				x = nextX;
+				y = nextY;
+			}
+		}
+	}
+}
@@ -6,11 +6,9 @@ package tpp;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Enumeration;
 
 import processing.core.PVector;
 import weka.core.Attribute;
-import weka.core.Instances;
 
 /**
  * @author Helen
@@ -86,7 +84,7 @@ public class EdgeModel {
 				}
 			}
 
-			bundleSpacing = (spModel.getGraph().getAllConnections().size() / centroids
+			bundleSpacing = (spModel.getGraph().getNumEdges() / centroids
 					.size()) / getBundleControl();
 
 			if (intelligentEdges()) {
@@ -98,6 +96,43 @@ public class EdgeModel {
 		}
 	}
 
+	/**
+	 * A copy of the options and of the bundles worked out by initialise, to
+	 * draw a frame from while this model goes on changing. The copy shares the
+	 * bundles, which initialise makes anew rather than changing, and should
+	 * only be read.
+	 */
+	public EdgeModel copy() {
+		EdgeModel copy = new EdgeModel(spModel);
+		copy.clusterEdgesDrawn = clusterEdgesDrawn;
+		copy.bundleControl = bundleControl;
+		copy.bundleSpacing = bundleSpacing;
+		copy.lowEdgeWeightValue = lowEdgeWeightValue;
+		copy.upperEdgeWeightRange = upperEdgeWeightRange;
+		copy.incomingEdges = incomingEdges;
+		copy.outgoingEdges = outgoingEdges;
+		copy.showSourceEdgeColor = showSourceEdgeColor;
+		copy.showTargetEdgeColor = showTargetEdgeColor;
+		copy.showDefaultEdgeColor = showDefaultEdgeColor;
+		copy.showMixedEdgeColor = showMixedEdgeColor;
+		copy.currentBundledAttribute = currentBundledAttribute;
+		copy.straightEdges = straightEdges;
+		copy.beizerCurviness = beizerCurviness;
+		copy.bezierEdges = bezierEdges;
+		copy.bundledEdges = bundledEdges;
+		copy.fannedEdges = fannedEdges;
+		copy.intelligentEdges = intelligentEdges;
+		copy.directed = directed;
+		copy.filterAllEdges = filterAllEdges;
+		copy.filterEdgesByWeight = filterEdgesByWeight;
+		copy.viewEdgeWeights = viewEdgeWeights;
+		copy.centroids = centroids;
+		copy.vectors = vectors;
+		copy.midPoints = midPoints;
+		copy.centroidRadii = centroidRadii;
+		return copy;
+	}
+
 	/** Show the incoming edges of selected nodes(s) */
 	public void showIncomingEdges(boolean b) {
 		incomingEdges = b;
@@ -199,25 +234,11 @@ public class EdgeModel {
 	}
 
 	public double getMinEdgeWeight() {
-		ArrayList<Connection> allConnections = spModel.getGraph()
-				.getAllConnections();
-		double min = allConnections.get(0).getEdgeWeight();
-		for (int i = 1; i < allConnections.size(); i++) {
-			if (allConnections.get(i).getEdgeWeight() < min)
-				min = allConnections.get(i).getEdgeWeight();
-		}
-		return min;
+		return spModel.getGraph().getMinEdgeWeight();
 	}
 
 	public double getMaxEdgeWeight() {
-		ArrayList<Connection> allConnections = spModel.getGraph()
-				.getAllConnections();
-		double max = allConnections.get(0).getEdgeWeight();
-		for (int i = 1; i < allConnections.size(); i++) {
-			if (allConnections.get(i).getEdgeWeight() > max)
-				max = allConnections.get(i).getEdgeWeight();
-		}
-		return max;
+		return spModel.getGraph().getMaxEdgeWeight();
 	}
 
 	public void setLowerEdgeWeightRange(int lowerValue) {
@@ -312,29 +333,15 @@ public class EdgeModel {
 	public void calculateCentroids() {
 
 		Attribute sepAtt = currentBundledAttribute;
-		Instances instances = spModel.getInstances();
 
 		centroids = new ArrayList<Point2D>();
 
 		if (sepAtt.isNominal()) {
-			Enumeration<String> classValues = sepAtt.enumerateValues();
-
-			String classValue;
-			while (classValues.hasMoreElements()) {
-				classValue = classValues.nextElement();
-				int k = 0;
-				double xcoordsum = 0;
-				double ycoordsum = 0;
-				for (int j = 0; j < spModel.getNumDataPoints(); j++) {
-					if (instances.get(j).toString(sepAtt)
-							.replaceAll("^\'|\'$", "").equals(classValue)) {
-						xcoordsum += spModel.getTarget().get(j, 0);
-						ycoordsum += spModel.getTarget().get(j, 1);
-						k++;
-					}
-				}
-				centroids.add(new Point2D.Double(xcoordsum / k, ycoordsum / k));
-			}
+			// the centroids are kept by the model in the data space, so only
+			// they need to be projected
+			double[][] classCentroids = spModel.getClassCentroids().getCentroids(sepAtt);
+			for (int c = 0; c < classCentroids.length; c++)
+				centroids.add(new Point2D.Double(classCentroids[c][0], classCentroids[c][1]));
 		}
 	}
 
@@ -372,29 +379,18 @@ public class EdgeModel {
 	public void calculateCentroidRadius() {
 
 		Attribute sepAtt = currentBundledAttribute;
-		Instances instances = spModel.getInstances();
 		centroidRadii = new double[sepAtt.numValues()];
 
 		if (sepAtt.isNominal()) {
-			Enumeration<String> classValues = sepAtt.enumerateValues();
-			String classValue;
-			int i = 0;
-			while (classValues.hasMoreElements()) {
-				classValue = classValues.nextElement();
-				double maxRadius = 0;
-				for (int j = 0; j < spModel.getNumDataPoints(); j++) {
-					if (instances.get(j).toString(sepAtt)
-							.replaceAll("^\'|\'$", "").equals(classValue)) {
-						double xcoord = spModel.getTarget().get(j, 0);
-						double ycoord = spModel.getTarget().get(j, 1);
-						double radius = Math.sqrt(Math.pow(xcoord, 2)
-								+ Math.pow(ycoord, 2));
-						if (radius > maxRadius)
-							maxRadius = radius;
-					}
+			int[] labels = spModel.getClassCentroids().getLabels(sepAtt);
+			ViewSnapshot view = spModel.getViewSnapshot();
+			double radius;
+			for (int j = 0; j < labels.length; j++) {
+				if (labels[j] >= 0) {
+					radius = Math.sqrt(Math.pow(view.get(j, 0), 2) + Math.pow(view.get(j, 1), 2));
+					if (radius > centroidRadii[labels[j]])
+						centroidRadii[labels[j]] = radius;
 				}
-				centroidRadii[i] = maxRadius;
-				i++;
 			}
 		}
 	}
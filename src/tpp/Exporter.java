@@ -145,7 +145,7 @@ public class Exporter {
 
 		try {
 			FileWriter out = new FileWriter(file);
-			out.write(model.getProjection().toString());
+			out.write(model.getViewSnapshot().getProjection().toString());
 			out.close();
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -1,51 +1,228 @@
 /*
-Added by Helen Gibson 
+Added by Helen Gibson
 */
 
 package tpp;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-
-import weka.core.Instance;
-import weka.core.Instances;
+import java.util.Arrays;
 
+/**
+ * A directed graph over the instances of a model, held as compressed sparse
+ * rows. Edges are added by node (ie instance) index while the graph is being
+ * imported and are then packed into primitive arrays: for each node the
+ * offsets of its outgoing edges (with their targets and weights) and of its
+ * incoming edges (with their sources). Neighbours of a node can then be
+ * visited in O(degree), and each edge costs about 12 bytes.
+ */
 public class Graph {
-		
-	private ArrayList<Connection> cnxns;
-	
-	public Graph(){	
-		cnxns = new ArrayList<Connection>();		
+
+	/** The number of nodes, or -1 if not yet known */
+	private int numNodes;
+
+	private int numEdges;
+
+	// edges as they are added, before the graph is packed
+	private int[] addedSources;
+	private int[] addedTargets;
+	private float[] addedWeights;
+
+	// outgoing edges: those of node i are at outOffsets[i]..outOffsets[i+1]-1
+	private int[] outOffsets;
+	private int[] outTargets;
+	private float[] outWeights;
+
+	// incoming edges: those of node i are at inOffsets[i]..inOffsets[i+1]-1
+	private int[] inOffsets;
+	private int[] inSources;
+
+	private double minEdgeWeight;
+	private double maxEdgeWeight;
+
+	/** Incremented every time an edge is added */
+	private int modCount;
+
+	public Graph() {
+		this(-1);
+	}
+
+	/**
+	 * @param numNodes
+	 *            the number of nodes (ie instances) in the graph
+	 */
+	public Graph(int numNodes) {
+		this.numNodes = numNodes;
+		addedSources = new int[16];
+		addedTargets = new int[16];
+		addedWeights = new float[16];
 	}
-	
+
 	public void add(Connection cnxn) {
-		cnxns.add(cnxn);				
+		if (cnxn.getSourceIndex() >= 0 && cnxn.getTargetIndex() >= 0)
+			addEdge(cnxn.getSourceIndex(), cnxn.getTargetIndex(), cnxn.getEdgeWeight());
+	}
+
+	/** Add an edge between the nodes with the given indices */
+	public void addEdge(int source, int target, double weight) {
+		if (outOffsets != null)
+			unpack();
+		if (numEdges == addedSources.length) {
+			int capacity = addedSources.length * 2;
+			addedSources = Arrays.copyOf(addedSources, capacity);
+			addedTargets = Arrays.copyOf(addedTargets, capacity);
+			addedWeights = Arrays.copyOf(addedWeights, capacity);
+		}
+		addedSources[numEdges] = source;
+		addedTargets[numEdges] = target;
+		addedWeights[numEdges] = (float) weight;
+		numEdges++;
+		modCount++;
+	}
+
+	/**
+	 * Pack the edges that have been added into the compressed arrays. This is
+	 * done automatically the first time the graph is queried, but importers
+	 * call it once all the edges are read so the staging arrays can be freed.
+	 */
+	public void pack() {
+		if (outOffsets != null)
+			return;
+
+		int n = numNodes;
+		for (int e = 0; e < numEdges; e++)
+			n = Math.max(n, Math.max(addedSources[e], addedTargets[e]) + 1);
+		numNodes = Math.max(n, 0);
+
+		// count the degree of each node, then turn the counts into offsets
+		outOffsets = new int[numNodes + 1];
+		inOffsets = new int[numNodes + 1];
+		for (int e = 0; e < numEdges; e++) {
+			outOffsets[addedSources[e] + 1]++;
+			inOffsets[addedTargets[e] + 1]++;
+		}
+		for (int i = 0; i < numNodes; i++) {
+			outOffsets[i + 1] += outOffsets[i];
+			inOffsets[i + 1] += inOffsets[i];
+		}
+
+		// then place each edge, keeping the order in which they were added
+		outTargets = new int[numEdges];
+		outWeights = new float[numEdges];
+		inSources = new int[numEdges];
+		int[] outNext = Arrays.copyOf(outOffsets, numNodes);
+		int[] inNext = Arrays.copyOf(inOffsets, numNodes);
+		minEdgeWeight = Double.POSITIVE_INFINITY;
+		maxEdgeWeight = Double.NEGATIVE_INFINITY;
+		int s, t, o;
+		for (int e = 0; e < numEdges; e++) {
+			s = addedSources[e];
+			t = addedTargets[e];
+			o = outNext[s]++;
+			outTargets[o] = t;
+			outWeights[o] = addedWeights[e];
+			inSources[inNext[t]++] = s;
+			if (addedWeights[e] < minEdgeWeight)
+				minEdgeWeight = addedWeights[e];
+			if (addedWeights[e] > maxEdgeWeight)
+				maxEdgeWeight = addedWeights[e];
+		}
+
+		addedSources = null;
+		addedTargets = null;
+		addedWeights = null;
+	}
+
+	/** Return the packed edges to the staging arrays so more can be added */
+	private void unpack() {
+		addedSources = new int[Math.max(16, numEdges * 2)];
+		addedTargets = new int[addedSources.length];
+		addedWeights = new float[addedSources.length];
+		int e = 0;
+		for (int i = 0; i < numNodes; i++)
+			for (int o = outOffsets[i]; o < outOffsets[i + 1]; o++) {
+				addedSources[e] = i;
+				addedTargets[e] = outTargets[o];
+				addedWeights[e] = outWeights[o];
+				e++;
+			}
+		outOffsets = null;
+		outTargets = null;
+		outWeights = null;
+		inOffsets = null;
+		inSources = null;
 	}
-	
+
 	public Graph getGraph(){
 		return this;
 	}
 
-	public ArrayList<Connection> getAllConnections() {
-		return cnxns;
-	}
-	
-	public ArrayList<Connection> findNeighbours(String nodeId) {
-		ArrayList<Connection> neighbours = new ArrayList<Connection>();
-		Iterator<Connection> allConnections = getAllConnections().iterator();
-		Connection cnxn;
-		
-		while (allConnections.hasNext()) {
-			cnxn = allConnections.next();
-			if (nodeId.equals(cnxn.getSourceNode())){
-				neighbours.add(cnxn);
-			} else if (nodeId.equals(cnxn.getTargetNode())){
-				neighbours.add(cnxn);
-			}
-		}
-		return neighbours;
+	public int getNumNodes() {
+		pack();
+		return numNodes;
+	}
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * A count of the changes made to this graph, so that anything derived
+	 * from it can tell when it is out of date
+	 */
+	public int getModCount() {
+		return modCount;
+	}
+
+	public int outDegree(int node) {
+		pack();
+		return outOffsets[node + 1] - outOffsets[node];
+	}
+
+	public int inDegree(int node) {
+		pack();
+		return inOffsets[node + 1] - inOffsets[node];
+	}
+
+	/**
+	 * The offsets into the outgoing edge arrays: the targets and weights of
+	 * the edges leaving node i are at outOffsets[i]..outOffsets[i+1]-1
+	 */
+	public int[] getOutOffsets() {
+		pack();
+		return outOffsets;
 	}
-	
-	
-		
+
+	public int[] getOutTargets() {
+		pack();
+		return outTargets;
+	}
+
+	public float[] getOutWeights() {
+		pack();
+		return outWeights;
+	}
+
+	/**
+	 * The offsets into the incoming edge array: the sources of the edges
+	 * entering node i are at inOffsets[i]..inOffsets[i+1]-1
+	 */
+	public int[] getInOffsets() {
+		pack();
+		return inOffsets;
+	}
+
+	public int[] getInSources() {
+		pack();
+		return inSources;
+	}
+
+	public double getMinEdgeWeight() {
+		pack();
+		return minEdgeWeight;
+	}
+
+	public double getMaxEdgeWeight() {
+		pack();
+		return maxEdgeWeight;
+	}
+
 }
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Scanner;
 
@@ -26,12 +27,13 @@ public class GraphImporter {
 	private Graph graph;
 	private Instances in;
 	private int index;
+	private NodeIndex nodes;
 	private String delimiter;
 	private boolean header;
 	private FileReader reader;
 	private boolean weight;
 
-	String unimportedEdges = "";
+	StringBuilder unimportedEdges = new StringBuilder();
 
 
 	/**
@@ -55,28 +57,12 @@ public class GraphImporter {
 	public Graph importGraph(Instances in, int index, String instancesFileName,
 			String delimiter, boolean header, boolean weight) throws Exception {
 
-		this.in = in;
-		this.index = index;
-		this.delimiter = delimiter;
-		this.header = header;
-		this.weight = weight;
-
 		// Read data from file
 		System.out.println("Reading graph data from file " + instancesFileName);
 
-		// File selectedFile = chooser.getSelectedFile();
-		File selectedFile = new File(instancesFileName);
-
-		Scanner fileScanner = new Scanner(selectedFile);
-		graph = new Graph();
-		if (header)
-			fileScanner.nextLine();
-		// read the each line separately
-		while (fileScanner.hasNextLine()) {
-			readLine(fileScanner.nextLine());
-		}
+		readGraph(in, index, new File(instancesFileName), delimiter, header, weight);
 
-		if (unimportedEdges.equals(""))
+		if (unimportedEdges.length() == 0)
 			JOptionPane.showMessageDialog(null,
 					"All edges imported sucessfully");
 		else
@@ -91,6 +77,34 @@ public class GraphImporter {
 		return graph;
 	}
 
+	/**
+	 * Read a graph from a separate edge list csv file, as importGraph does,
+	 * but without telling the user how it went. Any edges that could not be
+	 * imported are listed in unimportedEdges.
+	 */
+	Graph readGraph(Instances in, int index, File file, String delimiter, boolean header,
+			boolean weight) throws Exception {
+
+		this.in = in;
+		this.index = index;
+		this.delimiter = delimiter;
+		this.header = header;
+		this.weight = weight;
+
+		Scanner fileScanner = new Scanner(file);
+		graph = new Graph(in.numInstances());
+		nodes = new NodeIndex(in, index);
+		if (header)
+			fileScanner.nextLine();
+		// read the each line separately
+		while (fileScanner.hasNextLine()) {
+			readLine(fileScanner.nextLine());
+		}
+		fileScanner.close();
+		graph.pack();
+		return graph;
+	}
+
 	/**
 	 * Imports the graph from the ARFF file
 	 * 
@@ -109,9 +123,11 @@ public class GraphImporter {
 
 			index = in.attribute("NodeId").index();
 			int pIndex = projectionInstances.attribute("NodeId").index();
+			nodes = new NodeIndex(in, index);
+			NodeIndex projectionNodes = new NodeIndex(projectionInstances, pIndex);
 
 			// get a list of the nodes as attributes
-			int[] nodeList = new int[in.numInstances()];
+			int[] nodeList = new int[in.numAttributes()];
 			int j = 0;
 
 			// pick out the attributes that are designated to be edges
@@ -122,7 +138,8 @@ public class GraphImporter {
 					j++;
 				}
 			}
-			graph = new Graph();
+			nodeList = Arrays.copyOf(nodeList, j);
+			graph = new Graph(projectionInstances.numInstances());
 			Enumeration instances = in.enumerateInstances();
 			while (instances.hasMoreElements()) {
 				Instance inst = (Instance) instances.nextElement();
@@ -133,14 +150,15 @@ public class GraphImporter {
 						String nodeB = in.attribute(node).name();
 						nodeB = nodeB.substring(1);
 						if (validateConnection(nodeA, nodeB)) {
-							Connection cnxn = new Connection(
-									projectionInstances, pIndex, nodeA, nodeB,
-									edgeValue);
-							graph.add(cnxn);
+							int source = projectionNodes.indexOf(nodeA);
+							int target = projectionNodes.indexOf(nodeB);
+							if (source >= 0 && target >= 0)
+								graph.addEdge(source, target, edgeValue);
 						}
 					}
 				}
 			}
+			graph.pack();
 
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
@@ -150,7 +168,6 @@ public class GraphImporter {
 	}
 
 	private void readLine(String aLine) {
-		System.out.println(aLine);
 		Scanner lineScanner = new Scanner(aLine).useDelimiter(delimiter);
 
 		String nodeA = lineScanner.next();
@@ -161,54 +178,16 @@ public class GraphImporter {
 			double edgeWeight = 1.0;
 			if (weight)
 				edgeWeight = lineScanner.nextDouble();
-			Connection cnxn = new Connection(in, index, nodeA, nodeB,
+			graph.addEdge(nodes.indexOf(nodeA), nodes.indexOf(nodeB),
 					edgeWeight);
-			graph.add(cnxn);
 		} else {
-			String missingEdge = "Edge " + nodeA + "  to " + nodeB
-					+ " could not be imported. \n";
-			unimportedEdges += missingEdge;
+			unimportedEdges.append("Edge ").append(nodeA).append("  to ")
+					.append(nodeB).append(" could not be imported. \n");
 		}
 	}
 
 	private boolean validateConnection(String nodeA, String nodeB) {
-
-		Instance sourceInstance = getNodeInstance(in, nodeA, index);
-		Instance targetInstance = getNodeInstance(in, nodeB, index);
-
-		int sourceIndex = indexOf(in, sourceInstance);
-		int targetIndex = indexOf(in, targetInstance);
-
-		if (sourceIndex >= 0 && targetIndex >= 0)
-			return true;
-		else
-			return false;
-	}
-
-	private Instance getNodeInstance(Instances ins, String node, int index) {
-
-		Instance nodeInstance = null;
-
-		for (int i = 0; i < ins.numInstances(); i++) {
-			Instance in = ins.instance(i);
-			String attVal = in.stringValue(index);
-
-			if (attVal.equals(node)) {
-				nodeInstance = in;
-			}
-		}
-
-		return nodeInstance;
-
-	}
-
-	// Copied from TPPModel
-	private int indexOf(Instances ins, Instance in) {
-		for (int i = 0; i < ins.numInstances(); i++)
-			if (ins.instance(i).equals(in)) {
-				return i;
-			}
-		return -1;
+		return nodes.contains(nodeA) && nodes.contains(nodeB);
 	}
 
 }
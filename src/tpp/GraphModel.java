@@ -4,10 +4,7 @@ Added by Helen Gibson
 
 package tpp;
 
-import java.util.Iterator;
-
-import weka.core.Instance;
-import weka.core.Instances;
+import java.util.BitSet;
 
 public class GraphModel {
 	
@@ -16,6 +13,16 @@ public class GraphModel {
 	private int[] nodeDegree;
 	private int[] inDegree;
 	private int[] outDegree;
+	private double[] nodeStrength;
+	/** The modification count of the graph when the degrees were calculated */
+	private int degreeModCount = -1;
+	/** Which nodes are connected to a selected node by a visible edge */
+	private BitSet neighbourMask;
+	/** The state of the model and graph that the neighbour mask was built from */
+	private long maskSelectionEpoch;
+	private int maskModCount;
+	private boolean maskIncoming;
+	private boolean maskOutgoing;
 	int[] degree;
 	int edgeAttributeIndex;
 	private int[] nodeSizeDegree;
@@ -30,115 +37,110 @@ public class GraphModel {
 		edgeAttributeIndex = spModel.getEdgeAttributeIndex();
 	}
 	
-	private int[] calculateNodeDegree() {
-			
-		Instances ins = spModel.getInstances();
-		int numberInstances = ins.numInstances();
-		Connection cnxn = null;
+	/**
+	 * Calculate the degree, in-degree, out-degree and weighted strength of
+	 * every node in a single pass over the edges. The results are cached until
+	 * the graph or the number of instances changes.
+	 */
+	private void calculateDegrees() {
+		int numberInstances = spModel.getInstances().numInstances();
+		if (nodeDegree != null && nodeDegree.length == numberInstances
+				&& degreeModCount == graph.getModCount())
+			return;
+
 		nodeDegree = new int[numberInstances];
+		inDegree = new int[numberInstances];
+		outDegree = new int[numberInstances];
+		nodeStrength = new double[numberInstances];
 
-		for (int i = 0; i < numberInstances; i++){
-			
-			Iterator<Connection> allConnections = spModel.getGraph().getAllConnections().iterator();
-			Instance currentNode = ins.instance(i);
-			int currentDegree = 0;
-								
-			while (allConnections.hasNext()) {
-				cnxn = allConnections.next();
-				if(cnxn.getSourceInstance()== currentNode)
-					currentDegree++;
-				
-				if(cnxn.getTargetInstance() == currentNode)
-					currentDegree++;
-				
-			} 
-			nodeDegree[i] = currentDegree;
+		int[] offsets = graph.getOutOffsets();
+		int[] targets = graph.getOutTargets();
+		float[] weights = graph.getOutWeights();
+		int numNodes = Math.min(graph.getNumNodes(), numberInstances);
+		int j;
+		for (int i = 0; i < numNodes; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				j = targets[e];
+				if (j < numberInstances) {
+					outDegree[i]++;
+					inDegree[j]++;
+					nodeStrength[i] += weights[e];
+					nodeStrength[j] += weights[e];
+				}
+			}
 		}
+		for (int i = 0; i < numberInstances; i++)
+			nodeDegree[i] = inDegree[i] + outDegree[i];
+		degreeModCount = graph.getModCount();
+	}
+
+	private int[] calculateNodeDegree() {
+		calculateDegrees();
 		return nodeDegree;	
 	}
 	
 	private int[] calculateNodeInDegree() {	
-		
-		Instances ins = spModel.getInstances();
-		int numberInstances = ins.numInstances();
-		Connection cnxn = null;
-		inDegree = new int[numberInstances];
-		
-		for (int i = 0; i < numberInstances; i++){
-			
-			Iterator<Connection> allConnections = spModel.getGraph().getAllConnections().iterator();
-			Instance currentNode = ins.instance(i);
-			int currentInDegree = 0;
-			
-					
-			while (allConnections.hasNext()) {
-				cnxn = allConnections.next();
-				if(cnxn.getTargetInstance() == currentNode)
-					currentInDegree++;
-			}
-			inDegree[i] = currentInDegree;
-			
-		}
-	return inDegree;	
+		calculateDegrees();
+		return inDegree;	
 	}
 	
 	private int[] calculateNodeOutDegree() {
-		
-		Instances ins = spModel.getInstances();
-		int numberInstances = ins.numInstances();
-		Connection cnxn = null;
-		outDegree = new int[numberInstances];
+		calculateDegrees();
+		return outDegree;	
+	}
 
-		for (int i = 0; i < numberInstances; i++){
-			
-			Iterator<Connection> allConnections = spModel.getGraph().getAllConnections().iterator();
-			Instance currentNode = ins.instance(i);
-			int currentOutDegree = 0;
-			
-			while (allConnections.hasNext()) {
-				cnxn = allConnections.next();
-				if(cnxn.getSourceInstance() == currentNode)
-					currentOutDegree++;
-			}
-			outDegree[i] = currentOutDegree;
-		}
-	return outDegree;	
+	/** The sum of the weights of the edges into and out of each node */
+	public double[] getNodeStrength() {
+		calculateDegrees();
+		return nodeStrength;
 	}
 	
+	/**
+	 * Is node i connected to a selected node by an edge that is being shown?
+	 * The answer is read from a mask that is only rebuilt when the selection,
+	 * the graph or the edge directions shown have changed.
+	 */
 	public boolean neighbourSelected(int i) {
-		// get all neighbours of a node
-		
-		Instances instances = spModel.getInstances();
+		return getNeighbourMask().get(i);
+	}
+
+	/**
+	 * The nodes that are connected to a selected node. If i is the source of an
+	 * edge then it is highlighted when the target is selected and we are
+	 * showing incoming edges; if it is the target then when the source is
+	 * selected and we are showing outgoing edges.
+	 */
+	public BitSet getNeighbourMask() {
 		EdgeModel edgeModel = spModel.getEdgeModel();
-		
-		int idIndex =  instances.attribute(spModel.getEdgeAttributeString()).index(); 
-		Iterator<Connection> nbs = spModel.getGraph().findNeighbours(
-				instances.instance(i).stringValue(idIndex)).iterator();
-		boolean result = false;
-		while (nbs.hasNext()) {
-			Connection nextnbr;
-			int j;
-			nextnbr = nbs.next();
-			// check if the node i is the source node in this connection and
-			// that we are wanting to display
-			// outgoing edges
-			if (nextnbr.getSourceNode().equals(instances.instance(i).stringValue(idIndex)) ){
-				// if it is get the instance this target node belongs to
-				j = nextnbr.getTargetIndex();
-				// then check if this instance is in the list of selected nodes
-				if (spModel.isPointSelected(j) && edgeModel.incomingEdges()) {
-					result = true;
-				}
-			} else if (nextnbr.getTargetNode().equals(instances.instance(i).stringValue(idIndex))) {
-				j = nextnbr.getSourceIndex();
-				if (spModel.isPointSelected(j) && edgeModel.outgoingEdges()) {
-					result = true;
-				}
-			} else {
-				result = false;
-			}
+		long epoch = spModel.getSelectionEpoch();
+		if (neighbourMask != null && maskSelectionEpoch == epoch
+				&& maskModCount == graph.getModCount()
+				&& maskIncoming == edgeModel.incomingEdges()
+				&& maskOutgoing == edgeModel.outgoingEdges())
+			return neighbourMask;
+
+		BitSet mask = new BitSet(spModel.getNumDataPoints());
+		int[] outOffsets = graph.getOutOffsets();
+		int[] outTargets = graph.getOutTargets();
+		int[] inOffsets = graph.getInOffsets();
+		int[] inSources = graph.getInSources();
+		int numNodes = Math.min(graph.getNumNodes(), spModel.getNumDataPoints());
+		PointSet selected = spModel.getSelectedPoints();
+		for (int s = selected.nextPoint(0); s >= 0 && s < numNodes; s = selected.nextPoint(s + 1)) {
+			if (edgeModel.incomingEdges())
+				for (int e = inOffsets[s]; e < inOffsets[s + 1]; e++)
+					mask.set(inSources[e]);
+			if (edgeModel.outgoingEdges())
+				for (int e = outOffsets[s]; e < outOffsets[s + 1]; e++)
+					mask.set(outTargets[e]);
 		}
-		return result;
+
+		maskSelectionEpoch = epoch;
+		maskModCount = graph.getModCount();
+		maskIncoming = edgeModel.incomingEdges();
+		maskOutgoing = edgeModel.outgoingEdges();
+		neighbourMask = mask;
+		return mask;
 	}
 	
 	public int[] getNodeSizeDegree() {
@@ -1,114 +1,201 @@
 package tpp;
 
-import weka.core.EuclideanDistance;
-import weka.core.Instance;
-import weka.core.matrix.Matrix;
+import java.util.Arrays;
 
 /**
- * Class for performing HAC using the S. C. Johnson (1967):
- * "Hierarchical Clustering Schemes" Psychometrika, 2:241-254. Different methods
- * use different distance measure to determine the distance between clusters. <br>
+ * Hierarchical agglomerative clustering of the data points of a model, using
+ * the Euclidean distance between them. Different methods use different
+ * measures of the distance between clusters: <br>
+ * single linkage, the distance between the nearest members, is found from the
+ * minimum spanning tree of the points, which is built by Prim's algorithm in
+ * O(N^2) time and O(N) memory; <br>
+ * average and complete linkage (the mean and largest distance between the
+ * members) are found with the nearest-neighbour chain algorithm, in O(N^2) time
+ * but O(N^2) memory for the distances between the clusters. <br>
  * see http://home.dei.polimi.it/matteucc/Clustering/tutorial_html/
  * hierarchical.html#johnson for more information
  */
 public class HierarchicalAgglomerativeClustering {
 
-	TPPModel model;
-	
+	public static final int SINGLE_LINKAGE = 0;
+
+	public static final int AVERAGE_LINKAGE = 1;
+
+	public static final int COMPLETE_LINKAGE = 2;
+
 	/**
 	 * HAC using single linkage clustering
 	 */
-	public HierarchicalCluster singleLinkage(TPPModel model) {
-		this.model=model;
-		return agglomerativeClustering(model, new SingleLinkage());
+	public Dendrogram singleLinkage(TPPModel model) {
+		return cluster(model, SINGLE_LINKAGE);
 	}
 
 	/**
-	 * HAC using the given distance measure
+	 * HAC using average linkage clustering
 	 */
-	public HierarchicalCluster agglomerativeClustering(TPPModel model, ClusterDistanceCalculator cdc) {
-		// the 'root' cluster containing all others
-		HierarchicalCluster root = new HierarchicalCluster(model);
-
-		// create new 'leaf' clusters, each containing a single instance
-		HierarchicalCluster leaf;
-		for (int i = 0; i < model.getNumDataPoints(); i++) {
-			leaf = new HierarchicalCluster(model);
-			leaf.add(model.instances.instance(i));
-			root.add(leaf);
-		}
+	public Dendrogram averageLinkage(TPPModel model) {
+		return cluster(model, AVERAGE_LINKAGE);
+	}
 
-		// until there is a single root cluster
-		while (root.size() > 1) {
-
-			// compute distances between clusters and record the most nearest
-			// pair
-			double nearestDistance = -1, distance;
-			HierarchicalCluster[] nearestPair = null;
-			HierarchicalCluster cluster1, cluster2;
-			for (int i = 0; i < root.size(); i++) {
-				for (int j = 0; j < i; j++) {
-					cluster1 = (HierarchicalCluster) root.get(i);
-					cluster2 = (HierarchicalCluster) root.get(j);
-					distance = cdc.distance(cluster1, cluster2);
-					if (nearestDistance < 0 || (distance < nearestDistance)) {
-						nearestPair = new HierarchicalCluster[] { cluster1, cluster2 };
-						nearestDistance = distance;
-					}
-				}
-			}
+	/**
+	 * HAC using complete linkage clustering
+	 */
+	public Dendrogram completeLinkage(TPPModel model) {
+		return cluster(model, COMPLETE_LINKAGE);
+	}
 
-			// create a new cluster containing the nearest pair and remove the
-			// old two
-			HierarchicalCluster newCluster = new HierarchicalCluster(model);
-			newCluster.add(nearestPair[0]);
-			newCluster.add(nearestPair[1]);
-			root.remove(nearestPair[0]);
-			root.remove(nearestPair[1]);
-			root.add(newCluster);
+	/**
+	 * HAC of the model's data using the given linkage
+	 */
+	public Dendrogram cluster(TPPModel model, int linkage) {
+		return cluster(model.getData().getArray(), linkage);
+	}
 
+	/**
+	 * HAC of the points (one per row) using the given linkage
+	 */
+	public static Dendrogram cluster(double[][] x, int linkage) {
+		switch (linkage) {
+		case SINGLE_LINKAGE:
+			return minimumSpanningTree(x);
+		case AVERAGE_LINKAGE:
+		case COMPLETE_LINKAGE:
+			return nearestNeighbourChain(x, linkage);
+		default:
+			throw new IllegalArgumentException("Unknown linkage: " + linkage);
 		}
-
-		System.out.println("Clustering: " + root);
-
-		return root;
 	}
 
 	/**
-	 * Class for calculating distances between clusters. Difference
-	 * implementations can be used to perform different types of clustering.
+	 * Single linkage clustering. The merges are the edges of the minimum
+	 * spanning tree, which is grown one point at a time, keeping the distance
+	 * from each point outside the tree to its nearest point in the tree.
 	 */
-	private abstract class ClusterDistanceCalculator {
-
-		abstract double distance(HierarchicalCluster c1, HierarchicalCluster c2);
-
-		protected double euclideanDistance(Instance in1, Instance in2) {
-			int i1 = model.indexOf(in1);
-			int i2 = model.indexOf(in2);
-			Matrix m1 = model.data.getMatrix(i1, i1, 0, model.data.getColumnDimension()-1);
-			Matrix m2 = model.data.getMatrix(i2, i2, 0, model.data.getColumnDimension()-1);
-			double distance = m1.minus(m2).normF();
-			return distance;
+	private static Dendrogram minimumSpanningTree(double[][] x) {
+		int n = x.length;
+		int numMerges = Math.max(n - 1, 0);
+		int[] a = new int[numMerges];
+		int[] b = new int[numMerges];
+		double[] h = new double[numMerges];
+
+		boolean[] inTree = new boolean[n];
+		double[] nearest = new double[n];
+		int[] nearestInTree = new int[n];
+		Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+		int latest = 0, next;
+		double d, best;
+		for (int k = 0; k < numMerges; k++) {
+			inTree[latest] = true;
+			next = -1;
+			best = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < n; j++)
+				if (!inTree[j]) {
+					d = squaredDistance(x[latest], x[j]);
+					if (d < nearest[j]) {
+						nearest[j] = d;
+						nearestInTree[j] = latest;
+					}
+					if (next == -1 || nearest[j] < best) {
+						best = nearest[j];
+						next = j;
+					}
+				}
+			a[k] = nearestInTree[next];
+			b[k] = next;
+			h[k] = Math.sqrt(best);
+			latest = next;
 		}
-		
+		return Dendrogram.fromMerges(n, a, b, h);
 	}
 
-	private class SingleLinkage extends ClusterDistanceCalculator {
-
-
-		public double distance(HierarchicalCluster c1, HierarchicalCluster c2) {
-			double distance, minDistance = -1;
+	/**
+	 * Average or complete linkage clustering. Follow a chain of nearest
+	 * neighbours until two clusters are each other's nearest neighbour, then
+	 * merge them and update the distances from the merged cluster using the
+	 * Lance-Williams formula. Each cluster is kept in the slot of one of its
+	 * points.
+	 */
+	private static Dendrogram nearestNeighbourChain(double[][] x, int linkage) {
+		int n = x.length;
+		if ((long) n * (n - 1) / 2 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many points to find the distances between them: " + n);
+		int numMerges = Math.max(n - 1, 0);
+		int[] a = new int[numMerges];
+		int[] b = new int[numMerges];
+		double[] h = new double[numMerges];
+
+		// the distances between the clusters, as the lower triangle of the
+		// distance matrix
+		double[] distance = new double[(int) ((long) n * (n - 1) / 2)];
+		for (int i = 1; i < n; i++)
+			for (int j = 0; j < i; j++)
+				distance[index(i, j)] = Math.sqrt(squaredDistance(x[i], x[j]));
+
+		boolean[] merged = new boolean[n];
+		int[] size = new int[n];
+		Arrays.fill(size, 1);
+		int[] chain = new int[n];
+		int length = 0, first = 0;
+		int i, j, c;
+		double best, d, di, dj;
+		for (int k = 0; k < numMerges; k++) {
+			if (length == 0) {
+				while (merged[first])
+					first++;
+				chain[length++] = first;
+			}
 
-			// search through the instances in each of the clusters
-			for (Instance i1 : c1.getInstances())
-				for (Instance i2 : c2.getInstances()) {
-					distance = euclideanDistance(i1, i2);
-					if (minDistance < 0 || minDistance < distance)
-						minDistance = distance;
+			// extend the chain until its last two clusters are each other's
+			// nearest neighbours, preferring the previous cluster on ties so
+			// that the chain cannot cycle
+			while (true) {
+				i = chain[length - 1];
+				j = (length > 1 ? chain[length - 2] : -1);
+				best = (j != -1 ? distance[index(i, j)] : Double.POSITIVE_INFINITY);
+				for (c = 0; c < n; c++)
+					if (!merged[c] && c != i) {
+						d = distance[index(i, c)];
+						if (d < best) {
+							best = d;
+							j = c;
+						}
+					}
+				if (length > 1 && j == chain[length - 2])
+					break;
+				chain[length++] = j;
+			}
+			length -= 2;
+
+			// merge i into j
+			a[k] = i;
+			b[k] = j;
+			h[k] = best;
+			merged[i] = true;
+			for (c = 0; c < n; c++)
+				if (!merged[c] && c != j) {
+					di = distance[index(i, c)];
+					dj = distance[index(j, c)];
+					distance[index(j, c)] = (linkage == COMPLETE_LINKAGE ? Math.max(di, dj) : (size[i] * di + size[j]
+							* dj)
+							/ (size[i] + size[j]));
 				}
+			size[j] += size[i];
+		}
+		return Dendrogram.fromMerges(n, a, b, h);
+	}
+
+	/** The position of the distance between i and j in the lower triangle */
+	private static int index(int i, int j) {
+		return (i > j ? (int) ((long) i * (i - 1) / 2) + j : (int) ((long) j * (j - 1) / 2) + i);
+	}
 
-			return minDistance;
+	private static double squaredDistance(double[] x1, double[] x2) {
+		double d = 0, diff;
+		for (int i = 0; i < x1.length; i++) {
+			diff = x1[i] - x2[i];
+			d += diff * diff;
 		}
+		return d;
 	}
 
 }
@@ -0,0 +1,335 @@
+package tpp;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * K-means clustering of the rows of a data array. The centres are seeded by
+ * k-means++, ie each is chosen at random with probability proportional to its
+ * squared distance from the nearest centre chosen so far. The centres are then
+ * refined either by Lloyd's algorithm, assigning every point to its nearest
+ * centre and moving each centre to the mean of its points until no point
+ * changes cluster, or (if a batch size is set) by mini-batch k-means, which
+ * moves the centres towards small random samples of the points and so scales
+ * to millions of points.
+ *
+ * The points are assigned to centres in parallel, in chunks whose results are
+ * combined in a fixed order, so the same seed always gives the same
+ * clustering.
+ */
+public class KMeans {
+
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+	/** The number of points in each chunk of the work given to a thread */
+	private static final int CHUNK_POINTS = 8192;
+
+	private int numClusters;
+
+	private long seed = 1;
+
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+	/** The number of points in each mini-batch, or zero to use every point */
+	private int batchSize;
+
+	// the data being clustered, and the columns of it that are used
+	private double[][] x;
+	private int[] columns;
+
+	private double[][] centres;
+	private int[] assignments;
+	private int iterations;
+
+	// the sums and counts of the points assigned to each centre by each chunk
+	private double[][][] chunkSums;
+	private int[][] chunkCounts;
+	private int[] chunkChanges;
+
+	public KMeans(int numClusters) {
+		if (numClusters < 1)
+			throw new IllegalArgumentException("Need at least one cluster: " + numClusters);
+		this.numClusters = numClusters;
+	}
+
+	public int getNumClusters() {
+		return numClusters;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/** The seed of the random choices, so that clusterings can be repeated */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * The largest number of iterations of Lloyd's algorithm, or the number of
+	 * mini-batches
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Use mini-batches of this many points to refine the centres. If zero
+	 * (the default) every point is used in each iteration.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/** The number of iterations used by the last clustering */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * The centres found by the last clustering, one row per cluster, over the
+	 * columns that were used
+	 */
+	public double[][] getCentres() {
+		return centres;
+	}
+
+	/**
+	 * Cluster the rows of the data
+	 *
+	 * @param columns
+	 *            the columns of the data to use, or null to use them all
+	 * @return the cluster of each row
+	 */
+	public int[] cluster(double[][] data, int[] columns) {
+		int n = data.length;
+		if (n < numClusters)
+			throw new IllegalArgumentException("Cannot make " + numClusters + " clusters from " + n + " points");
+		if (columns == null) {
+			columns = new int[data[0].length];
+			for (int c = 0; c < columns.length; c++)
+				columns[c] = c;
+		}
+		if (columns.length == 0)
+			throw new IllegalArgumentException("No columns to cluster on");
+		this.x = data;
+		this.columns = columns;
+		Random random = new Random(seed);
+		assignments = new int[n];
+		int chunks = (n + CHUNK_POINTS - 1) / CHUNK_POINTS;
+		chunkSums = new double[chunks][numClusters][columns.length];
+		chunkCounts = new int[chunks][numClusters];
+		chunkChanges = new int[chunks];
+		try {
+			seed(random);
+			if (batchSize > 0 && batchSize < n) {
+				miniBatches(random);
+				assign(chunks);
+			} else
+				lloyd(chunks);
+			return assignments;
+		} finally {
+			x = null;
+			chunkSums = null;
+			chunkCounts = null;
+			chunkChanges = null;
+		}
+	}
+
+	/** Choose the initial centres by k-means++ */
+	private void seed(Random random) {
+		int n = x.length;
+		centres = new double[numClusters][];
+		centres[0] = row(random.nextInt(n));
+		double[] nearest = new double[n];
+		double total = 0, dist, target;
+		for (int i = 0; i < n; i++) {
+			nearest[i] = squaredDistance(x[i], centres[0]);
+			total += nearest[i];
+		}
+		int chosen;
+		for (int k = 1; k < numClusters; k++) {
+			// if every point is on a centre already then choose any point
+			chosen = random.nextInt(n);
+			if (total > 0) {
+				target = random.nextDouble() * total;
+				for (int i = 0; i < n; i++) {
+					target -= nearest[i];
+					if (target < 0 && nearest[i] > 0) {
+						chosen = i;
+						break;
+					}
+				}
+			}
+			centres[k] = row(chosen);
+			total = 0;
+			for (int i = 0; i < n; i++) {
+				dist = squaredDistance(x[i], centres[k]);
+				if (dist < nearest[i])
+					nearest[i] = dist;
+				total += nearest[i];
+			}
+		}
+	}
+
+	/** Refine the centres by Lloyd's algorithm */
+	private void lloyd(int chunks) {
+		int d = columns.length;
+		Arrays.fill(assignments, -1);
+		int changes;
+		double[] sum = new double[d];
+		int count;
+		for (iterations = 1; iterations <= maxIterations; iterations++) {
+			changes = assign(chunks);
+			if (changes == 0)
+				break;
+
+			// move each centre to the mean of its points, combining the
+			// chunks in order, and leave any empty cluster where it is
+			for (int k = 0; k < numClusters; k++) {
+				Arrays.fill(sum, 0);
+				count = 0;
+				for (int c = 0; c < chunks; c++) {
+					count += chunkCounts[c][k];
+					for (int j = 0; j < d; j++)
+						sum[j] += chunkSums[c][k][j];
+				}
+				if (count > 0)
+					for (int j = 0; j < d; j++)
+						centres[k][j] = sum[j] / count;
+			}
+		}
+		iterations = Math.min(iterations, maxIterations);
+	}
+
+	/**
+	 * Refine the centres by mini-batch k-means: each point in a random sample
+	 * pulls its nearest centre towards it by a step that shrinks with the
+	 * number of points the centre has taken so far.
+	 */
+	private void miniBatches(Random random) {
+		int n = x.length, d = columns.length;
+		int[] batch = new int[batchSize];
+		int[] nearest = new int[batchSize];
+		int[] taken = new int[numClusters];
+		double[] centre, point;
+		double rate;
+		for (iterations = 1; iterations <= maxIterations; iterations++) {
+			for (int b = 0; b < batchSize; b++) {
+				batch[b] = random.nextInt(n);
+				nearest[b] = nearestCentre(x[batch[b]]);
+			}
+			for (int b = 0; b < batchSize; b++) {
+				centre = centres[nearest[b]];
+				point = x[batch[b]];
+				rate = 1d / ++taken[nearest[b]];
+				for (int j = 0; j < d; j++)
+					centre[j] += rate * (point[columns[j]] - centre[j]);
+			}
+		}
+		iterations = maxIterations;
+	}
+
+	/**
+	 * Assign every point to its nearest centre, and find the sums and counts
+	 * of each chunk's points in each cluster
+	 *
+	 * @return the number of points that changed cluster
+	 */
+	private int assign(int chunks) {
+		if (chunks > 1 && WorkerPool.isParallel())
+			WorkerPool.getPool().invoke(new AssignTask(0, chunks));
+		else
+			for (int c = 0; c < chunks; c++)
+				assignChunk(c);
+		int changes = 0;
+		for (int c = 0; c < chunks; c++)
+			changes += chunkChanges[c];
+		return changes;
+	}
+
+	private void assignChunk(int chunk) {
+		int from = chunk * CHUNK_POINTS, to = Math.min(x.length, from + CHUNK_POINTS);
+		double[][] sums = chunkSums[chunk];
+		int[] counts = chunkCounts[chunk];
+		for (int k = 0; k < numClusters; k++) {
+			Arrays.fill(sums[k], 0);
+			counts[k] = 0;
+		}
+		int changes = 0, k;
+		double[] point, sum;
+		for (int i = from; i < to; i++) {
+			point = x[i];
+			k = nearestCentre(point);
+			if (k != assignments[i]) {
+				assignments[i] = k;
+				changes++;
+			}
+			counts[k]++;
+			sum = sums[k];
+			for (int j = 0; j < columns.length; j++)
+				sum[j] += point[columns[j]];
+		}
+		chunkChanges[chunk] = changes;
+	}
+
+	private int nearestCentre(double[] point) {
+		int nearest = 0;
+		double best = squaredDistance(point, centres[0]), dist;
+		for (int k = 1; k < numClusters; k++) {
+			dist = squaredDistance(point, centres[k]);
+			if (dist < best) {
+				best = dist;
+				nearest = k;
+			}
+		}
+		return nearest;
+	}
+
+	/** The squared distance between a point and a centre */
+	private double squaredDistance(double[] point, double[] centre) {
+		double dist = 0, diff;
+		for (int j = 0; j < columns.length; j++) {
+			diff = point[columns[j]] - centre[j];
+			dist += diff * diff;
+		}
+		return dist;
+	}
+
+	/** The used columns of a row of the data */
+	private double[] row(int i) {
+		double[] r = new double[columns.length];
+		for (int j = 0; j < columns.length; j++)
+			r[j] = x[i][columns[j]];
+		return r;
+	}
+
+	private class AssignTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 4406917256718283170L;
+
+		private final int fromChunk, toChunk;
+
+		AssignTask(int fromChunk, int toChunk) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new AssignTask(fromChunk, mid), new AssignTask(mid, toChunk));
+			} else
+				assignChunk(fromChunk);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package tpp;
+
+import java.util.Arrays;
+
+import weka.core.matrix.CholeskyDecomposition;
+import weka.core.matrix.Matrix;
+
+/**
+ * Finds the projection that best maps the data to a target directly, as a
+ * least squares problem, rather than by training the projection as a
+ * perceptron. The Cholesky factorisation of X'X (for the rows of the data X
+ * that are in the training set) is kept between calls, so each new target
+ * costs a single pass over the data plus a D x D solve.
+ *
+ * A small ridge penalty on the change to the projection is added so that the
+ * problem is well posed when there are fewer points than attributes or the
+ * attributes are collinear; in that case the solution is the one nearest to
+ * the current projection, much as the perceptron would find.
+ */
+public class LeastSquaresSolver {
+
+	/** The ridge penalty, relative to the mean diagonal value of X'X */
+	private static final double RIDGE = 1E-8;
+
+	/** The smallest ridge penalty, for data that is all zero */
+	private static final double MIN_RIDGE = 1E-12;
+
+	/** The data that the factorisation is for */
+	private Matrix data;
+
+	/** The training set that the factorisation is for, or null for all rows */
+	private boolean[] inTrainingSet;
+
+	/** X'X for the rows in the training set */
+	private double[][] gram;
+
+	/** The Cholesky factorisation of X'X plus the ridge penalty */
+	private CholeskyDecomposition cholesky;
+
+	/**
+	 * Forget the cached factorisation. Must be called if the values in the data
+	 * are changed in place; a new data matrix or training set is noticed
+	 * automatically.
+	 */
+	public void invalidate() {
+		data = null;
+		inTrainingSet = null;
+		gram = null;
+		cholesky = null;
+	}
+
+	/**
+	 * Replace the values of the projection with those that best map the data
+	 * to the target.
+	 *
+	 * @param inTrainingSet
+	 *            which points to fit; the others are ignored. (if ==null then
+	 *            we use all the points)
+	 * @return the resulting error, measured as in LinearProjection.pursueTarget
+	 *         (sum of squared errors / sum of squared target values)
+	 */
+	public double solve(LinearProjection projection, Matrix data, Matrix target,
+			boolean[] inTrainingSet) {
+		factorise(data, inTrainingSet);
+
+		int rows = projection.getRowDimension(), cols = projection.getColumnDimension();
+		int i, j, l, p;
+		double[][] aData = data.getArray(), aTarget = target.getArray(), w = projection
+				.getArray();
+		double[] x, t;
+		double out, normTarget = 0;
+
+		// one pass over the data to find X'R, where R=T-XW is the residual of
+		// the current projection
+		double[][] xtr = new double[rows][cols];
+		double[] residual = new double[cols];
+		for (p = 0; p < data.getRowDimension(); p++) {
+			if (inTrainingSet == null || inTrainingSet[p]) {
+				x = aData[p];
+				t = aTarget[p];
+				for (j = 0; j < cols; j++) {
+					out = 0;
+					for (i = 0; i < rows; i++)
+						out += x[i] * w[i][j];
+					residual[j] = t[j] - out;
+					normTarget += t[j] * t[j];
+				}
+				for (i = 0; i < rows; i++)
+					for (j = 0; j < cols; j++)
+						xtr[i][j] += x[i] * residual[j];
+			}
+		}
+		if (normTarget < Double.MIN_VALUE)
+			throw new RuntimeException("norm of target is zero");
+
+		// the change to the projection solves (X'X + rI) dW = X'R
+		double[][] change = cholesky.solve(new Matrix(xtr)).getArray();
+
+		// move to the new projection and find its error
+		// |T-XW|^2 = |T|^2 - 2W'X'T + W'X'XW without another pass over the
+		// data, since X'T = X'R + X'X(W-dW)
+		double error = normTarget;
+		double[] gw = new double[rows];
+		for (j = 0; j < cols; j++) {
+			for (i = 0; i < rows; i++)
+				w[i][j] += change[i][j];
+			for (i = 0; i < rows; i++) {
+				gw[i] = 0;
+				for (l = 0; l < rows; l++)
+					gw[i] += gram[i][l] * w[l][j];
+			}
+			for (i = 0; i < rows; i++) {
+				double xtt = xtr[i][j];
+				for (l = 0; l < rows; l++)
+					xtt += gram[i][l] * (w[l][j] - change[l][j]);
+				error += w[i][j] * gw[i] - 2 * w[i][j] * xtt;
+			}
+		}
+		return Math.max(error, 0) / normTarget;
+	}
+
+	/** Factorise X'X for the data and training set, unless already done */
+	private void factorise(Matrix data, boolean[] inTrainingSet) {
+		if (cholesky != null && this.data == data
+				&& Arrays.equals(this.inTrainingSet, inTrainingSet))
+			return;
+
+		int rows = data.getColumnDimension();
+		int i, l, p;
+		double[][] aData = data.getArray();
+		double[] x;
+		double xi;
+		gram = new double[rows][rows];
+		for (p = 0; p < data.getRowDimension(); p++) {
+			if (inTrainingSet == null || inTrainingSet[p]) {
+				x = aData[p];
+				for (i = 0; i < rows; i++) {
+					xi = x[i];
+					if (xi != 0)
+						for (l = i; l < rows; l++)
+							gram[i][l] += xi * x[l];
+				}
+			}
+		}
+		double trace = 0;
+		for (i = 0; i < rows; i++) {
+			trace += gram[i][i];
+			for (l = 0; l < i; l++)
+				gram[i][l] = gram[l][i];
+		}
+
+		Matrix penalised = new Matrix(rows, rows);
+		double ridge = Math.max(RIDGE * trace / rows, MIN_RIDGE);
+		for (i = 0; i < rows; i++)
+			for (l = 0; l < rows; l++)
+				penalised.set(i, l, gram[i][l] + (i == l ? ridge : 0));
+		cholesky = new CholeskyDecomposition(penalised);
+
+		this.data = data;
+		this.inTrainingSet = (inTrainingSet == null ? null : inTrainingSet.clone());
+	}
+}
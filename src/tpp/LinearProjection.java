@@ -1,7 +1,9 @@
 package tpp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.RecursiveAction;
 
 import weka.core.matrix.Matrix;
 import weka.core.matrix.SingularValueDecomposition;
@@ -47,6 +49,15 @@ public class LinearProjection extends Matrix implements Projection {
 	/** The maximum number of epochs to train for */
 	private static final int TRAINING_EPOCH_LIMIT = 500;
 
+	/**
+	 * Data with fewer values than this (rows x attributes) are trained on one
+	 * thread, as it is not worth the cost of sharing out the work
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+	/** The number of rows in each chunk of the data that is trained in parallel */
+	private static final int CHUNK_ROWS = 4096;
+
 	private double[][] previousWeights;
 
 	private double rate = -1d;
@@ -55,6 +66,15 @@ public class LinearProjection extends Matrix implements Projection {
 
 	private boolean zeroInstance;
 
+	// scratch buffers for training, reused from one epoch to the next
+	private transient double[] weights;
+	private transient double[] gradient;
+	private transient double[] error;
+	private transient double[][] partialGradients;
+	private transient double[] partialErrors;
+
+	private boolean parallelTraining;
+
 	public LinearProjection(int inputDimensions, int outputDimensions) {
 		super(inputDimensions, outputDimensions);
 	}
@@ -95,21 +115,17 @@ public class LinearProjection extends Matrix implements Projection {
 	public double pursueTarget(Matrix data, Matrix target,
 			boolean[] inTrainingSet) {
 
-		try {
-			Thread.sleep(100);
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
 		double previousError, currentError = 0;
 		rate = TRAINING_RATE / data.getRowDimension();
 		double normTarget = normF(target, inTrainingSet);
 		if (normTarget < MIN_VALUE)
 			throw new RuntimeException("norm of target is zero");
-		Matrix currentOutput = project(data);
 		if (previousWeights == null)
 			previousWeights = getValues(new double[getRowDimension()][getColumnDimension()]);
-		previousError = normF(currentOutput.minus(target), inTrainingSet);
+
+		// each pass over the data finds the error of the current weights and
+		// the gradient that the next epoch will train with
+		previousError = accumulate(data, target, inTrainingSet, rate);
 
 		// System.out.println("Initial error: "+previousError);
 
@@ -121,11 +137,10 @@ public class LinearProjection extends Matrix implements Projection {
 				return previousError;
 
 			// else train
-			train(data, target, inTrainingSet, previousWeights, rate);
+			applyGradient(previousWeights);
 
 			// find the current error
-			currentOutput = project(data);
-			currentError = normF(currentOutput.minus(target), inTrainingSet)
+			currentError = accumulate(data, target, inTrainingSet, rate)
 					/ normTarget;
 
 			// System.out.println("epoch=" + epoch + "\tRate: " + rate +
@@ -144,6 +159,8 @@ public class LinearProjection extends Matrix implements Projection {
 					return previousError;
 				rate = rate * .5d;
 				setValues(previousWeights);
+				// the gradient was for the weights we have just discarded
+				accumulate(data, target, inTrainingSet, rate);
 			} else {
 				previousError = currentError;
 				previousWeights = getValues(previousWeights);
@@ -158,58 +175,228 @@ public class LinearProjection extends Matrix implements Projection {
 	// selected points in the data
 	public void train(Matrix data, Matrix target, boolean[] selected,
 			double[][] previousWeights, double rate) {
-		int i, j, p;
+		accumulate(data, target, selected, rate);
+		applyGradient(previousWeights);
+	}
+
+	/**
+	 * Make a single pass over the selected points in the data, projecting each
+	 * one with the current weights and comparing it with the target. The
+	 * weight differences that the perceptron rule gives for these errors are
+	 * left in the gradient buffer, ready for applyGradient.
+	 * 
+	 * @return the sum of the squared errors
+	 */
+	private double accumulate(Matrix data, Matrix target, boolean[] selected,
+			double rate) {
+		int rows = getRowDimension(), cols = getColumnDimension();
+		int i, j;
 
 		// use native arrays rather than Matrix classes, to make access faster
-		double[][] aData = data.getArray(), aTarget = target.getArray(), aOutput = project(
-				data).getArray();
+		double[][] aData = data.getArray(), aTarget = target.getArray();
+		double[] w = scratchWeights(rows * cols), g = scratchGradient(rows * cols);
+		int n = data.getRowDimension();
+		double sum = 0;
+
+		// copy the weights so that each unit's weights for an input are
+		// adjacent
+		for (i = 0; i < rows; i++)
+			for (j = 0; j < cols; j++)
+				w[i * cols + j] = A[i][j];
+		Arrays.fill(g, 0);
+
+		if (parallelTraining && (long) n * rows >= PARALLEL_THRESHOLD
+				&& WorkerPool.isParallel()) {
+			// each chunk of rows is summed separately, and the chunks are then
+			// added together in order, so that the result does not depend on
+			// how many threads there are or how the work was shared out
+			int chunks = (n + CHUNK_ROWS - 1) / CHUNK_ROWS;
+			if (partialGradients == null || partialGradients.length != chunks
+					|| partialGradients[0].length != rows * cols) {
+				partialGradients = new double[chunks][rows * cols];
+				partialErrors = new double[chunks];
+			}
+			WorkerPool.getPool().invoke(new AccumulateTask(aData, aTarget, selected, rate, w, rows,
+					cols, partialGradients, partialErrors, 0, chunks));
+			for (int c = 0; c < chunks; c++) {
+				for (i = 0; i < g.length; i++)
+					g[i] += partialGradients[c][i];
+				sum += partialErrors[c];
+			}
+		} else
+			sum = accumulate(aData, aTarget, selected, rate, w, rows, cols, 0, n,
+					g, scratchError(cols));
+		return sum;
+	}
 
-		// the cumulative weight difference for this unit (ie column of the
-		// projection)
-		double[] cumWeightDiff;
+	/**
+	 * Accumulate the weight differences for rows from..to-1 of the data into g
+	 * and return the sum of their squared errors
+	 * 
+	 * @param w
+	 *            the weights, with each unit's weights for an input adjacent
+	 * @param error
+	 *            scratch space for the error of each unit
+	 */
+	private static double accumulate(double[][] aData, double[][] aTarget,
+			boolean[] selected, double rate, double[] w, int rows, int cols,
+			int from, int to, double[] g, double[] error) {
+		int i, j, p;
+		double[] x, t;
+		double out, sum = 0;
+
+		for (p = from; p < to; p++) {
+			if (selected == null || selected[p]) {
+				x = aData[p];
+				t = aTarget[p];
+
+				// the output of each unit for this point, and its error
+				if (cols == 2) {
+					double out0 = 0, out1 = 0;
+					for (i = 0; i < rows; i++) {
+						out0 += x[i] * w[2 * i];
+						out1 += x[i] * w[2 * i + 1];
+					}
+					error[0] = t[0] - out0;
+					error[1] = t[1] - out1;
+					sum += error[0] * error[0];
+					sum += error[1] * error[1];
+					error[0] = error[0] * rate;
+					error[1] = error[1] * rate;
+				} else
+					for (j = 0; j < cols; j++) {
+						out = 0;
+						for (i = 0; i < rows; i++)
+							out += x[i] * w[i * cols + j];
+						error[j] = t[j] - out;
+						sum += error[j] * error[j];
+						error[j] = error[j] * rate;
+					}
+
+				// then use these to calculate the weight differences which are
+				// added to the cumulative totals
+				if (cols == 2) {
+					double e0 = error[0], e1 = error[1];
+					for (i = 0; i < rows; i++) {
+						g[2 * i] += e0 * x[i];
+						g[2 * i + 1] += e1 * x[i];
+					}
+				} else
+					for (i = 0; i < rows; i++)
+						for (j = 0; j < cols; j++)
+							g[i * cols + j] += error[j] * x[i];
+			}
+		}
+		return sum;
+	}
 
-		// the error for this unit applied to a single point (ie row in the
-		// data)
-		double error;
+	/**
+	 * Accumulates the weight differences for a range of chunks of rows, each
+	 * into its own partial gradient, splitting the range between threads
+	 */
+	private static class AccumulateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -2735961287310151763L;
+
+		private final double[][] aData, aTarget, partialGradients;
+		private final boolean[] selected;
+		private final double rate;
+		private final double[] w, partialErrors;
+		private final int rows, cols, fromChunk, toChunk;
+
+		AccumulateTask(double[][] aData, double[][] aTarget, boolean[] selected,
+				double rate, double[] w, int rows, int cols,
+				double[][] partialGradients, double[] partialErrors,
+				int fromChunk, int toChunk) {
+			this.aData = aData;
+			this.aTarget = aTarget;
+			this.selected = selected;
+			this.rate = rate;
+			this.w = w;
+			this.rows = rows;
+			this.cols = cols;
+			this.partialGradients = partialGradients;
+			this.partialErrors = partialErrors;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
 
-		// for each unit (ie column of the projection)
-		for (j = 0; j < getColumnDimension(); j++) {
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new AccumulateTask(aData, aTarget, selected, rate, w, rows,
+						cols, partialGradients, partialErrors, fromChunk, mid),
+						new AccumulateTask(aData, aTarget, selected, rate, w, rows,
+								cols, partialGradients, partialErrors, mid, toChunk));
+			} else {
+				double[] g = partialGradients[fromChunk];
+				Arrays.fill(g, 0);
+				partialErrors[fromChunk] = accumulate(aData, aTarget, selected, rate, w,
+						rows, cols, fromChunk * CHUNK_ROWS,
+						Math.min(aData.length, (fromChunk + 1) * CHUNK_ROWS), g,
+						new double[cols]);
+			}
+		}
+	}
 
-			// cumulate a weight difference for all points
-			cumWeightDiff = new double[getRowDimension()];
-			for (p = 0; p < data.getRowDimension(); p++) {
+	/**
+	 * Should the projection be trained using all the available processors?
+	 * Even if so, data with fewer than PARALLEL_THRESHOLD values, or machines
+	 * with only one processor, are trained on one thread.
+	 */
+	public void setParallelTraining(boolean parallelTraining) {
+		this.parallelTraining = parallelTraining;
+	}
 
-				if (selected == null || selected[p]) {
+	public boolean isParallelTraining() {
+		return parallelTraining;
+	}
 
-					// first find the error for this point
-					error = aTarget[p][j] - aOutput[p][j];
+	/**
+	 * Add the weight differences left by accumulate to the weights, with
+	 * momentum from the previous weights if there are any
+	 */
+	private void applyGradient(double[][] previousWeights) {
+		int rows = getRowDimension(), cols = getColumnDimension();
+		double[] g = gradient;
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				if (previousWeights != null)
+					A[i][j] = A[i][j] + g[i * cols + j] + TRAINING_MOMENTUM
+							* (A[i][j] - previousWeights[i][j]);
+				else
+					A[i][j] = A[i][j] + g[i * cols + j];
+	}
 
-					// then use this to calculate a weight difference which is
-					// added to the cumulative total
-					for (i = 0; i < getRowDimension(); i++)
-						cumWeightDiff[i] += error * rate * aData[p][i];
-				}
-			}
+	private double[] scratchWeights(int size) {
+		if (weights == null || weights.length != size)
+			weights = new double[size];
+		return weights;
+	}
 
-			// then add the cumulative weight difference to the weights
-			if (previousWeights != null)
-				for (i = 0; i < getRowDimension(); i++)
-					set(i, j, A[i][j] + cumWeightDiff[i] + TRAINING_MOMENTUM
-							* (A[i][j] - previousWeights[i][j]));
-			else
-				for (i = 0; i < getRowDimension(); i++)
-					set(i, j, A[i][j] + cumWeightDiff[i]);
+	private double[] scratchGradient(int size) {
+		if (gradient == null || gradient.length != size)
+			gradient = new double[size];
+		return gradient;
+	}
 
-		}
+	private double[] scratchError(int size) {
+		if (error == null || error.length != size)
+			error = new double[size];
+		return error;
 	}
 
-	/** Calculate the Frobenius norm of the selected points of the matrix */
+	/**
+	 * Calculate the sum of squares of the selected rows of the matrix (ie the
+	 * square of their Frobenius norm)
+	 */
 	private double normF(Matrix mx, boolean[] selected) {
 		double n = 0;
+		double[][] a = mx.getArray();
 		for (int i = 0; i < mx.getRowDimension(); i++)
 			if (selected == null || selected[i])
 				for (int j = 0; j < mx.getColumnDimension(); j++)
-					n += (mx.get(i, j) * mx.get(i, j));
+					n += (a[i][j] * a[i][j]);
 		return n;
 	}
 
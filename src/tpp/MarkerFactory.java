@@ -30,107 +30,135 @@ public class MarkerFactory {
 	 * @return
 	 */
 	public static Shape buildMarker(int type, double x, double y, double size) {
-		Shape marker;
-		int shape = type % 8;
-		switch (shape) {
-		case 0: {
+		switch (type % 8) {
+		case 0:
 			// circle
-			marker = new Ellipse2D.Double(x - size, y - size, size * 2, size * 2);
-			return marker;
-		}
-		case 1: {
+			return new Ellipse2D.Double(x - size, y - size, size * 2, size * 2);
+		case 1:
 			// square
-			marker = new Rectangle2D.Double(x - size, y - size, size * 2, size * 2);
+			return new Rectangle2D.Double(x - size, y - size, size * 2, size * 2);
+		default:
+			Path2D.Double marker = new Path2D.Double();
+			tracePath(marker, type % 8, x, y, size);
 			return marker;
 		}
+	}
+
+	/**
+	 * Markers that are built by changing the same few shapes, so that a
+	 * renderer can draw any number of markers without creating any objects.
+	 * Each marker is only valid until the next is built.
+	 */
+	public static class Markers {
+
+		private final Ellipse2D.Double circle = new Ellipse2D.Double();
+
+		private final Rectangle2D.Double square = new Rectangle2D.Double();
+
+		private final Path2D.Double path = new Path2D.Double();
+
+		/** Build a marker, as for buildMarker */
+		public Shape build(int type, double x, double y, double size) {
+			switch (type % 8) {
+			case 0:
+				circle.setFrame(x - size, y - size, size * 2, size * 2);
+				return circle;
+			case 1:
+				square.setRect(x - size, y - size, size * 2, size * 2);
+				return square;
+			default:
+				path.reset();
+				tracePath(path, type % 8, x, y, size);
+				return path;
+			}
+		}
+	}
+
+	/** Trace the outline of one of the markers that is not a circle or square */
+	private static void tracePath(Path2D.Double marker, int shape, double x, double y, double size) {
+		switch (shape) {
 		case 2: {
 			// down-triangle
-			marker = new Path2D.Double();
-			((Path2D.Double) marker).moveTo(x - size, y - size);
-			((Path2D.Double) marker).lineTo(x + size, y - size);
-			((Path2D.Double) marker).lineTo(x, y + size);
-			((Path2D.Double) marker).closePath();
-			return marker;
+			marker.moveTo(x - size, y - size);
+			marker.lineTo(x + size, y - size);
+			marker.lineTo(x, y + size);
+			marker.closePath();
+			break;
 		}
 		case 3: {
 			// up-triangle
-			marker = new Path2D.Double();
-			((Path2D.Double) marker).moveTo(x - size, y + size);
-			((Path2D.Double) marker).lineTo(x + size, y + size);
-			((Path2D.Double) marker).lineTo(x, y - size);
-			((Path2D.Double) marker).closePath();
-			return marker;
+			marker.moveTo(x - size, y + size);
+			marker.lineTo(x + size, y + size);
+			marker.lineTo(x, y - size);
+			marker.closePath();
+			break;
 		}
 		case 4: {
 			// diamond
-			marker = new Path2D.Double();
-			((Path2D.Double) marker).moveTo(x - size, y);
-			((Path2D.Double) marker).lineTo(x, y + size);
-			((Path2D.Double) marker).lineTo(x + size, y);
-			((Path2D.Double) marker).lineTo(x, y - size);
-			((Path2D.Double) marker).closePath();
-			return marker;
+			marker.moveTo(x - size, y);
+			marker.lineTo(x, y + size);
+			marker.lineTo(x + size, y);
+			marker.lineTo(x, y - size);
+			marker.closePath();
+			break;
 		}
 		case 5: {
 			// pentagon
-			marker = new Path2D.Double();
 			double angle = Math.PI/2.5;
-			((Path2D.Double) marker).moveTo(x, y - size);
-			((Path2D.Double) marker).lineTo(x + size * Math.sin(angle), y - size * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x + size * Math.sin(angle/2), y + size * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x - size * Math.sin(angle/2), y + size * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x - size * Math.sin(angle), y - size * Math.cos(angle));
-			((Path2D.Double) marker).closePath();
-			return marker;
+			marker.moveTo(x, y - size);
+			marker.lineTo(x + size * Math.sin(angle), y - size * Math.cos(angle));
+			marker.lineTo(x + size * Math.sin(angle/2), y + size * Math.cos(angle/2));
+			marker.lineTo(x - size * Math.sin(angle/2), y + size * Math.cos(angle/2));
+			marker.lineTo(x - size * Math.sin(angle), y - size * Math.cos(angle));
+			marker.closePath();
+			break;
 		}
 		case 6: {
 			// 5 pointed star
-			marker = new Path2D.Double();
 			double angle = Math.PI/2.5;
 			double inner_radius = 2*size/3;
-			((Path2D.Double) marker).moveTo(x, y - size);
-			((Path2D.Double) marker).lineTo(x + inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x + size * Math.sin(angle), y - size * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x + inner_radius * Math.sin(angle), y + inner_radius * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x + size * Math.sin(angle/2), y + size * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x, y + inner_radius);
-			((Path2D.Double) marker).lineTo(x - size * Math.sin(angle/2), y + size * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x - inner_radius * Math.sin(angle), y + inner_radius * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x - size * Math.sin(angle), y - size * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x - inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
-			((Path2D.Double) marker).closePath();
-			return marker;
+			marker.moveTo(x, y - size);
+			marker.lineTo(x + inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
+			marker.lineTo(x + size * Math.sin(angle), y - size * Math.cos(angle));
+			marker.lineTo(x + inner_radius * Math.sin(angle), y + inner_radius * Math.cos(angle));
+			marker.lineTo(x + size * Math.sin(angle/2), y + size * Math.cos(angle/2));
+			marker.lineTo(x, y + inner_radius);
+			marker.lineTo(x - size * Math.sin(angle/2), y + size * Math.cos(angle/2));
+			marker.lineTo(x - inner_radius * Math.sin(angle), y + inner_radius * Math.cos(angle));
+			marker.lineTo(x - size * Math.sin(angle), y - size * Math.cos(angle));
+			marker.lineTo(x - inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
+			marker.closePath();
+			break;
 		}
 		
 		case 7: {
 			// 6 pointed star
-			marker = new Path2D.Double();
 			double angle = Math.PI/3;
 			double inner_radius = 2*size/3;
 			
-			((Path2D.Double) marker).moveTo(x, y - size);
-			((Path2D.Double) marker).lineTo(x + inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x + size * Math.sin(angle), y - size * Math.cos(angle));
+			marker.moveTo(x, y - size);
+			marker.lineTo(x + inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
+			marker.lineTo(x + size * Math.sin(angle), y - size * Math.cos(angle));
 			
-			((Path2D.Double) marker).lineTo(x + inner_radius, y);
-			((Path2D.Double) marker).lineTo(x + size * Math.sin(angle), y + size * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x + inner_radius * Math.sin(angle/2), y + inner_radius * Math.cos(angle/2));
+			marker.lineTo(x + inner_radius, y);
+			marker.lineTo(x + size * Math.sin(angle), y + size * Math.cos(angle));
+			marker.lineTo(x + inner_radius * Math.sin(angle/2), y + inner_radius * Math.cos(angle/2));
 			
-			((Path2D.Double) marker).lineTo(x, y + size);
-			((Path2D.Double) marker).lineTo(x - inner_radius * Math.sin(angle/2), y + inner_radius * Math.cos(angle/2));
-			((Path2D.Double) marker).lineTo(x - size * Math.sin(angle), y + size * Math.cos(angle));
+			marker.lineTo(x, y + size);
+			marker.lineTo(x - inner_radius * Math.sin(angle/2), y + inner_radius * Math.cos(angle/2));
+			marker.lineTo(x - size * Math.sin(angle), y + size * Math.cos(angle));
 			
-			((Path2D.Double) marker).lineTo(x - inner_radius, y);
-			((Path2D.Double) marker).lineTo(x - size * Math.sin(angle), y - size * Math.cos(angle));
-			((Path2D.Double) marker).lineTo(x - inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
+			marker.lineTo(x - inner_radius, y);
+			marker.lineTo(x - size * Math.sin(angle), y - size * Math.cos(angle));
+			marker.lineTo(x - inner_radius * Math.sin(angle/2), y - inner_radius * Math.cos(angle/2));
 			
-			((Path2D.Double) marker).closePath();
-			return marker;
+			marker.closePath();
+			break;
 		}
 		
 		default:
-			marker = new Ellipse2D.Double(x - size, y - size, size * 2, size * 2);
-			return marker;
+			// a circle, for types outside the range
+			marker.append(new Ellipse2D.Double(x - size, y - size, size * 2, size * 2), false);
 		}
 	}
 
@@ -143,14 +171,25 @@ public class MarkerFactory {
 	 * @return
 	 */
 	public static Shape buildArrowHead(Line2D line, double arrowLength, boolean indent) {
-		Shape head = new Path2D.Double();
-		
+		Path2D.Double head = new Path2D.Double();
+		appendArrowHead(head, line.getX1(), line.getY1(), line.getX2(), line.getY2(), arrowLength, indent);
+		return head;
+	}
+
+	/**
+	 * Add an arrow head for the line from (x1, y1) to (x2, y2) to a path, as
+	 * a closed triangle
+	 * 
+	 * @see #buildArrowHead(Line2D, double, boolean)
+	 */
+	public static void appendArrowHead(Path2D head, double x1, double y1, double x2, double y2,
+			double arrowLength, boolean indent) {
 		// the end of the line
-		double x = line.getX2();
-		double y = line.getY2();
+		double x = x2;
+		double y = y2;
 
 		// The direction of the line (reversed, from end to start)
-		double lineAngleR = Math.atan2(line.getY1() - y, line.getX1() - x);
+		double lineAngleR = Math.atan2(y1 - y, x1 - x);
 
 		if (indent){
 			// indent the arrow by one arrow length
@@ -158,14 +197,12 @@ public class MarkerFactory {
 			y=y + arrowLength * Math.sin(lineAngleR);
 		}
 		
-		((Path2D.Double) head).moveTo(x, y);
-		((Path2D.Double) head).lineTo(x + arrowLength * Math.cos(lineAngleR + ARROW_ANGLE),
+		head.moveTo(x, y);
+		head.lineTo(x + arrowLength * Math.cos(lineAngleR + ARROW_ANGLE),
 				y + arrowLength * Math.sin(lineAngleR + ARROW_ANGLE));
-		((Path2D.Double) head).lineTo(x + arrowLength * Math.cos(lineAngleR - ARROW_ANGLE),
+		head.lineTo(x + arrowLength * Math.cos(lineAngleR - ARROW_ANGLE),
 				y + arrowLength * Math.sin(lineAngleR - ARROW_ANGLE));
-		((Path2D.Double) head).closePath();
-
-		return head;
+		head.closePath();
 	}
 
 }
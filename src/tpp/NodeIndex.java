@@ -0,0 +1,67 @@
+package tpp;
+
+import java.util.HashMap;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * An index from the value of a node identifier attribute to the row of the
+ * instance that holds it. Built once per set of instances so that importing a
+ * graph needs a single hash lookup per edge endpoint rather than a scan of all
+ * the instances.
+ */
+public class NodeIndex {
+
+	private Instances instances;
+
+	private int attributeIndex;
+
+	private HashMap<String, Integer> rows;
+
+	/**
+	 * @param ins
+	 *            the instances which define the nodes
+	 * @param attributeIndex
+	 *            the index of the attribute that uniquely identifies each node
+	 */
+	public NodeIndex(Instances ins, int attributeIndex) {
+		this.instances = ins;
+		this.attributeIndex = attributeIndex;
+		int n = ins.numInstances();
+		rows = new HashMap<String, Integer>(Math.max(16, (int) (n / 0.75f) + 1));
+		// if an id is repeated the last instance wins, as it did when the
+		// instances were scanned for each edge
+		for (int i = 0; i < n; i++)
+			rows.put(ins.instance(i).stringValue(attributeIndex), i);
+	}
+
+	/** The row of the node with the given id, or -1 if there is no such node */
+	public int indexOf(String nodeId) {
+		Integer row = rows.get(nodeId);
+		return (row == null ? -1 : row.intValue());
+	}
+
+	/** The instance of the node with the given id, or null if there is none */
+	public Instance instanceOf(String nodeId) {
+		int row = indexOf(nodeId);
+		return (row < 0 ? null : instances.instance(row));
+	}
+
+	public boolean contains(String nodeId) {
+		return rows.containsKey(nodeId);
+	}
+
+	public Instances getInstances() {
+		return instances;
+	}
+
+	public int getAttributeIndex() {
+		return attributeIndex;
+	}
+
+	/** The number of distinct node ids */
+	public int size() {
+		return rows.size();
+	}
+}
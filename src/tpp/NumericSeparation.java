@@ -0,0 +1,268 @@
+package tpp;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The model used to separate points by the value of a numeric attribute: each
+ * point i is moved away from every other point j, along the unit vector
+ * u_ij=(x_i-x_j)/|x_i-x_j|, by f_i-f_j-m_i, where f is the attribute value and
+ * m_i the mean of |f_i-f_j| over all points. So points move away from those
+ * whose values differ from theirs by more than usual, and towards those whose
+ * values are similar.
+ *
+ * The mean absolute differences are found from the sorted values and their
+ * prefix sums, in O(N log N). The sum over all other points separates into
+ * (f_i-m_i)sum_j u_ij - sum_j f_j u_ij, and both sums are approximated using a
+ * Barnes-Hut quadtree over the view (as in AttractionRepulsion), the first
+ * with each point given unit weight and the second weighted by its value. The
+ * values are offset so that none of the weights are negative.
+ */
+public class NumericSeparation {
+
+	/** The number of points whose movements are found by each task */
+	private static final int CHUNK_POINTS = 1024;
+
+	private final double theta;
+
+	// the tree built over the view, and the weights of its cells with each
+	// point given unit weight and weighted by its offset value
+	private QuadTree tree;
+	private double[] mass, comX, comY, valueMass, valueX, valueY;
+	private double[] offsetValues;
+
+	// the results for each point: sum_j u_ij and sum_j (f_j-min f) u_ij
+	private double[] unitX, unitY, weightedX, weightedY;
+
+	public NumericSeparation() {
+		this(AttractionRepulsion.DEFAULT_THETA);
+	}
+
+	/**
+	 * @param theta
+	 *            the largest ratio of cell width to distance at which the
+	 *            points in a cell are treated as one. Zero gives the exact
+	 *            result.
+	 */
+	public NumericSeparation(double theta) {
+		if (theta < 0)
+			throw new IllegalArgumentException("Theta must not be negative: " + theta);
+		this.theta = theta;
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Find the mean absolute difference between each value and all the values
+	 * (including itself), mean_j|f_i-f_j|, by sorting the values. If the
+	 * values are sorted then the differences from the kth value are
+	 * s_k*k - P_k to those below and (P_n - P_k+1) - s_k*(n-k-1) to those
+	 * above, where P_k is the sum of the first k values.
+	 */
+	public static double[] meanAbsoluteDifferences(double[] values) {
+		int n = values.length;
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		double[] prefix = new double[n + 1];
+		for (int k = 0; k < n; k++)
+			prefix[k + 1] = prefix[k] + sorted[k];
+
+		// equal values have the same mean, so look up each value's first
+		// position in the sorted values
+		double[] means = new double[n];
+		double v;
+		int k;
+		for (int i = 0; i < n; i++) {
+			v = values[i];
+			k = firstIndexOf(sorted, v);
+			means[i] = (v * k - prefix[k] + (prefix[n] - prefix[k + 1]) - v * (n - k - 1)) / n;
+		}
+		return means;
+	}
+
+	/** The position of the first occurrence of the value in the sorted array */
+	private static int firstIndexOf(double[] sorted, double value) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Find how far each point in the 2D view should move, before it is scaled
+	 *
+	 * @param values
+	 *            the value of the attribute for each point
+	 * @param meanDifferences
+	 *            the mean absolute difference of each value from the others,
+	 *            as found by meanAbsoluteDifferences
+	 * @return the movement of each point, as an N x 2 array
+	 */
+	public double[][] movement(double[][] view, double[] values, double[] meanDifferences) {
+		int n = view.length;
+		double[][] movement = new double[n][2];
+		if (n < 2)
+			return movement;
+
+		double min = values[0];
+		for (int i = 1; i < n; i++)
+			if (values[i] < min)
+				min = values[i];
+		offsetValues = new double[n];
+		for (int i = 0; i < n; i++)
+			offsetValues[i] = values[i] - min;
+
+		tree = QuadTree.fromView(view);
+		double[][] centres = tree.centresOfMass(null);
+		mass = centres[0];
+		comX = centres[1];
+		comY = centres[2];
+		centres = tree.centresOfMass(offsetValues);
+		valueMass = centres[0];
+		valueX = centres[1];
+		valueY = centres[2];
+
+		unitX = new double[n];
+		unitY = new double[n];
+		weightedX = new double[n];
+		weightedY = new double[n];
+		int chunks = (n + CHUNK_POINTS - 1) / CHUNK_POINTS;
+		if (chunks > 1 && WorkerPool.isParallel())
+			WorkerPool.getPool().invoke(new SumTask(0, chunks));
+		else
+			sum(0, n);
+
+		// sum_j u_ij (f_i-f_j-m_i), with the values offset by the minimum
+		double scale;
+		for (int i = 0; i < n; i++) {
+			scale = offsetValues[i] - meanDifferences[i];
+			movement[i][0] = scale * unitX[i] - weightedX[i];
+			movement[i][1] = scale * unitY[i] - weightedY[i];
+		}
+
+		tree = null;
+		mass = comX = comY = valueMass = valueX = valueY = offsetValues = null;
+		unitX = unitY = weightedX = weightedY = null;
+		return movement;
+	}
+
+	/**
+	 * The movements found by comparing every pair of points, in O(N^2), as
+	 * SeparatePoints originally did. Points that coincide are not moved apart.
+	 */
+	public static double[][] exactMovement(double[][] view, double[] values) {
+		int n = view.length;
+		double[][] movement = new double[n][2];
+		double[] meanDifferences = new double[n];
+		double dX, dY, dXY, dValue;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++)
+				meanDifferences[i] += Math.abs(values[i] - values[j]);
+			meanDifferences[i] /= n;
+		}
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				dX = view[i][0] - view[j][0];
+				dY = view[i][1] - view[j][1];
+				dXY = Math.sqrt(dX * dX + dY * dY);
+				if (dXY > 0) {
+					dValue = values[i] - values[j] - meanDifferences[i];
+					movement[i][0] += dX / dXY * dValue;
+					movement[i][1] += dY / dXY * dValue;
+				}
+			}
+		}
+		return movement;
+	}
+
+	/** Find the sums for points from..to-1 */
+	private void sum(int from, int to) {
+		double[] x = tree.x, y = tree.y, width = tree.width;
+		int[] order = tree.order, start = tree.start, end = tree.end;
+		int[] firstChild = tree.firstChild, numChildren = tree.numChildren;
+		int[] stack = new int[QuadTree.STACK_SIZE];
+		int top, node, k, j;
+		double xi, yi, dx, dy, d, ux, uy, wx, wy;
+		double theta2 = theta * theta;
+		for (int i = from; i < to; i++) {
+			xi = x[i];
+			yi = y[i];
+			ux = uy = wx = wy = 0;
+			top = 0;
+			stack[top++] = QuadTree.ROOT;
+			while (top > 0) {
+				node = stack[--top];
+				dx = xi - comX[node];
+				dy = yi - comY[node];
+				d = dx * dx + dy * dy;
+				if (numChildren[node] == 0) {
+					// a leaf, so add up its points exactly, skipping any at
+					// the same place (including i itself)
+					for (k = start[node]; k < end[node]; k++) {
+						j = order[k];
+						dx = xi - x[j];
+						dy = yi - y[j];
+						d = Math.sqrt(dx * dx + dy * dy);
+						if (d > 0) {
+							dx /= d;
+							dy /= d;
+							ux += dx;
+							uy += dy;
+							wx += offsetValues[j] * dx;
+							wy += offsetValues[j] * dy;
+						}
+					}
+				} else if (width[node] * width[node] < theta2 * d) {
+					// far enough away to treat as a single point, which is
+					// at a different place for each weighting
+					d = Math.sqrt(d);
+					ux += mass[node] * dx / d;
+					uy += mass[node] * dy / d;
+					if (valueMass[node] > 0) {
+						dx = xi - valueX[node];
+						dy = yi - valueY[node];
+						d = Math.sqrt(dx * dx + dy * dy);
+						if (d > 0) {
+							wx += valueMass[node] * dx / d;
+							wy += valueMass[node] * dy / d;
+						}
+					}
+				} else
+					for (k = 0; k < numChildren[node]; k++)
+						stack[top++] = firstChild[node] + k;
+			}
+			unitX[i] = ux;
+			unitY[i] = uy;
+			weightedX[i] = wx;
+			weightedY[i] = wy;
+		}
+	}
+
+	private class SumTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -6102466330398721844L;
+
+		private final int fromChunk, toChunk;
+
+		SumTask(int fromChunk, int toChunk) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new SumTask(fromChunk, mid), new SumTask(mid, toChunk));
+			} else
+				sum(fromChunk * CHUNK_POINTS, Math.min(tree.getNumPoints(), (fromChunk + 1)
+						* CHUNK_POINTS));
+		}
+	}
+}
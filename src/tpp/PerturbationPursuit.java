@@ -14,4 +14,13 @@ public interface PerturbationPursuit extends Serializable {
 
 	public void pursuePerturbation() throws TPPException;
 
+	/** The error of the projection found by the last perturbation */
+	public double getError();
+
+	/**
+	 * How much the last perturbation changed the projection, relative to its
+	 * size. Used to tell when the pursuit has converged.
+	 */
+	public double getDisplacement();
+
 }
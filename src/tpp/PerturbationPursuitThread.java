@@ -1,39 +1,137 @@
 package tpp;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * A thread that will continuously apply a perturbation target, pursue it, and
- * redisplay the results
- * 
+ * redisplay the results. The pursuit stops by itself once the projection has
+ * converged (ie the relative change in the projection from one iteration to
+ * the next falls below a threshold), or after a maximum number of iterations.
+ * The error and displacement of each iteration are recorded, so that callers
+ * can see how the pursuit converged.
+ *
  * @author Joe
- * 
+ *
  */
 public class PerturbationPursuitThread extends Thread implements Serializable {
 
-	boolean pursue;
+	/** The default relative change in the projection that counts as converged */
+	public static final double DEFAULT_CONVERGENCE_THRESHOLD = 1E-4;
+
+	volatile boolean pursue = true;
 
 	private PerturbationPursuit perturbation;
 
+	/** Decides how fast the pursuit runs */
+	private PursuitScheduler scheduler;
+
+	/**
+	 * Stop when the projection changes by less than this (relative to its
+	 * size) in an iteration. Zero means never stop because of convergence.
+	 */
+	private volatile double convergenceThreshold = DEFAULT_CONVERGENCE_THRESHOLD;
+
+	/** Stop after this many iterations. Zero means no limit */
+	private volatile int maxIterations;
+
+	// the error and displacement of each iteration
+	private double[] errors = new double[64];
+	private double[] displacements = new double[64];
+	private int iterations;
+
+	private volatile boolean converged;
+
+	// when the pursuit started and (if it has) stopped
+	private long startTime, stopTime;
+
 	public PerturbationPursuitThread(PerturbationPursuit perturbation) {
+		this(perturbation, PursuitScheduler.atFrameRate(PursuitScheduler.DEFAULT_FRAMES_PER_SECOND));
+	}
+
+	public PerturbationPursuitThread(PerturbationPursuit perturbation, PursuitScheduler scheduler) {
 		this.perturbation = perturbation;
+		this.scheduler = scheduler;
+	}
+
+	public PursuitScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public void setScheduler(PursuitScheduler scheduler) {
+		this.scheduler = scheduler;
 	}
 
 	public void setPerturbation(PerturbationPursuit perturbation) {
 		this.perturbation = perturbation;
 	}
 
+	public double getConvergenceThreshold() {
+		return convergenceThreshold;
+	}
+
+	/**
+	 * Stop once an iteration changes the projection by less than this,
+	 * relative to its size. If zero then the pursuit never stops because it
+	 * has converged.
+	 */
+	public void setConvergenceThreshold(double convergenceThreshold) {
+		this.convergenceThreshold = convergenceThreshold;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/** Stop after this many iterations. If zero there is no limit */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
 	public void run() {
 //		System.out.println("Starting perturbation pursuit of " + perturbation);
-		pursue = true;
+		converged = false;
+		synchronized (this) {
+			iterations = 0;
+			startTime = System.nanoTime();
+			stopTime = 0;
+		}
 		if (perturbation != null)
 			while (pursue)
 				try {
+					scheduler.beginIteration();
 					perturbation.pursuePerturbation();
+					scheduler.endIteration();
+					record(perturbation.getError(), perturbation.getDisplacement());
 				} catch (TPPException e) {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
+				} catch (InterruptedException e) {
+					pursue = false;
 				}
+		synchronized (this) {
+			stopTime = System.nanoTime();
+		}
+	}
+
+	/** Record an iteration, and stop if the pursuit has converged */
+	private void record(double error, double displacement) {
+		int n;
+		synchronized (this) {
+			if (iterations == errors.length) {
+				errors = Arrays.copyOf(errors, iterations * 2);
+				displacements = Arrays.copyOf(displacements, iterations * 2);
+			}
+			errors[iterations] = error;
+			displacements[iterations] = displacement;
+			n = ++iterations;
+		}
+		if (displacement < convergenceThreshold) {
+			converged = true;
+			pursue = false;
+		}
+		if (maxIterations > 0 && n >= maxIterations)
+			pursue = false;
 	}
 
 	/**
@@ -46,4 +144,41 @@ public class PerturbationPursuitThread extends Thread implements Serializable {
 		pursue = false;
 	}
 
+	/**
+	 * Whether the pursuit is to carry on, ie it has not been stopped and has
+	 * not yet converged or run out of iterations
+	 */
+	public boolean isPursuing() {
+		return pursue;
+	}
+
+	/** Whether the pursuit stopped because the projection had converged */
+	public boolean hasConverged() {
+		return converged;
+	}
+
+	/** The number of iterations so far */
+	public synchronized int getIterations() {
+		return iterations;
+	}
+
+	/** The mean number of iterations per second since the pursuit started */
+	public synchronized double getIterationRate() {
+		long end = (stopTime == 0 ? System.nanoTime() : stopTime);
+		return (end > startTime ? iterations * 1E9 / (end - startTime) : 0);
+	}
+
+	/** The error of the projection after each iteration so far */
+	public synchronized double[] getErrorCurve() {
+		return Arrays.copyOf(errors, iterations);
+	}
+
+	/**
+	 * The change in the projection (relative to its size) in each iteration
+	 * so far
+	 */
+	public synchronized double[] getDisplacementCurve() {
+		return Arrays.copyOf(displacements, iterations);
+	}
+
 }
@@ -45,6 +45,14 @@ public class PointModel {
 
 	private int upperLabelFilterDegreeBound;
 
+	/**
+	 * The default number of points in the view above which their density is
+	 * drawn rather than the points themselves
+	 */
+	public static final int DEFAULT_DENSITY_THRESHOLD = 100000;
+	private int densityThreshold = DEFAULT_DENSITY_THRESHOLD;
+	private boolean densityByColour = true;
+
 	
 	public PointModel(ScatterPlotModel spModel) {
 		this.spModel = spModel;
@@ -167,6 +175,32 @@ public class PointModel {
 		spModel.fireModelChanged(TPPModelEvent.RETINAL_ATTRIBUTE_CHANGED);
 	}
 	
+	/**
+	 * The number of points in the view above which their density is drawn
+	 * rather than the points themselves
+	 */
+	public int getDensityThreshold() {
+		return densityThreshold;
+	}
+
+	public void setDensityThreshold(int densityThreshold) {
+		this.densityThreshold = densityThreshold;
+		spModel.fireModelChanged(TPPModelEvent.RETINAL_ATTRIBUTE_CHANGED);
+	}
+
+	/**
+	 * Whether the density is drawn in the colours of the points, or in
+	 * colours that show the density
+	 */
+	public boolean densityByColour() {
+		return densityByColour;
+	}
+
+	public void setDensityByColour(boolean b) {
+		densityByColour = b;
+		spModel.fireModelChanged(TPPModelEvent.RETINAL_ATTRIBUTE_CHANGED);
+	}
+
 	/** Use the degree to size the labels */
 	public boolean sizeLabels() {
 		return sizeLabels;
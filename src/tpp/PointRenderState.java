@@ -0,0 +1,458 @@
+package tpp;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.matrix.Matrix;
+
+/**
+ * Controls the drawing of the points/nodes in the scatterplotviewpanel.
+ *
+ * Everything needed to draw each point (its position, colour, size, shape,
+ * fill and label, and whether it is selected, hovered or next to a selected
+ * node) is held in arrays, one entry per point. The arrays are kept up to date
+ * on the event thread, and only rebuilt when the model tells us something they
+ * depend on has changed: the positions when a new view is published, the
+ * style when the retinal attributes, colour scheme or data change, and the
+ * emphasis when the selection changes. They are rebuilt as new arrays, so
+ * that each frame can take the arrays as they are when it is asked for (see
+ * {@link RenderInput}) and draw them while the model goes on changing.
+ * Drawing a frame then just walks the arrays, reusing the same shapes and
+ * colours, so that panning and zooming a large graph does not create any
+ * garbage.
+ */
+public class PointRenderState {
+
+	private final ScatterPlotModel spModel;
+
+	// the arrays taken by each frame (see RenderInput for what each holds),
+	// which are never changed once they have been made
+	int numPoints = -1;
+	double[] x, y;
+	int[] argb;
+	int[] colourIndex;
+	double[] sizeFraction;
+	int[] shape;
+	int[] fill;
+	double[] labelSize;
+	String[] labelText;
+	int styleVersion;
+	byte[] emphasis;
+	int[] order;
+	Color[] palette, fadedPalette, brighterPalette;
+	Color fadedWhite, fadedBlack;
+
+	// what the arrays were built from (used only by the event thread)
+	private long positionEpoch = -1;
+	private Matrix positionNoise;
+	private boolean styleValid, emphasisValid;
+	private Instances styleInstances;
+	private BitSet emphasisNeighbours;
+	private long emphasisSelection = -1;
+	private int emphasisHover = -1;
+	private boolean emphasisShowGraph;
+	private int emphasisTransparency = -1;
+	private Color[] fadedFrom;
+
+	// the label layouts and their sizes, the labels and scale they were laid
+	// out for, and the shapes reused for every point (used only while
+	// drawing, under the panel's render lock)
+	private TextLayout[] labelLayouts;
+	private double[] labelWidth, labelHeight;
+	private String[] layoutText;
+	private double labelScaleX, labelScaleY, labelShearX, labelShearY;
+	private final Font labelFont = new Font("SansSerif", Font.PLAIN, 1);
+	private final MarkerFactory.Markers markers = new MarkerFactory.Markers();
+	private final Line2D.Double line = new Line2D.Double();
+	private final AffineTransform labelTransform = new AffineTransform();
+
+	/** The density of the points, used when there are too many to draw */
+	private final DensityRaster density = new DensityRaster();
+
+	public PointRenderState(ScatterPlotModel spModel) {
+		this.spModel = spModel;
+	}
+
+	/**
+	 * Note that the model has changed, so that the arrays that depend on it
+	 * are rebuilt before the next frame
+	 */
+	public void modelChanged(int type) {
+		switch (type) {
+		case TPPModelEvent.PROJECTION_CHANGED:
+		case TPPModelEvent.AXIS_SELECTION_CHANGED:
+		case TPPModelEvent.RECTANGLE_CHANGED:
+			// the positions are checked against the view each frame
+			break;
+		case TPPModelEvent.POINT_SELECTION_CHANGED:
+			emphasisValid = false;
+			break;
+		default:
+			styleValid = false;
+			emphasisValid = false;
+		}
+	}
+
+	/**
+	 * Bring the arrays up to date with the model and the view that is to be
+	 * drawn. Must be called on the event thread.
+	 *
+	 * @param noisy
+	 *            whether the noise may have changed since the last frame
+	 */
+	public void update(ViewSnapshot snapshot, boolean noisy) {
+		if (snapshot.getNumPoints() != numPoints) {
+			numPoints = snapshot.getNumPoints();
+			positionEpoch = -1;
+			styleValid = false;
+			emphasisValid = false;
+		}
+		Matrix noise = spModel.getNoise();
+		if (noisy || snapshot.getEpoch() != positionEpoch || noise != positionNoise)
+			updatePositions(snapshot, noise);
+		if (!styleValid || spModel.getInstances() != styleInstances)
+			updateStyle();
+		GraphModel graphModel = spModel.getGraphModel();
+		BitSet neighbours = (spModel.showGraph() && graphModel != null ? graphModel.getNeighbourMask() : null);
+		if (!emphasisValid || emphasisSelection != spModel.getSelectionEpoch()
+				|| emphasisHover != spModel.getHoverPoints().getEpoch() || emphasisNeighbours != neighbours
+				|| emphasisShowGraph != spModel.showGraph() || emphasisTransparency != spModel.getTransparency())
+			updateEmphasis(neighbours);
+	}
+
+	private void updatePositions(ViewSnapshot snapshot, Matrix noise) {
+		double[][] offsets = noise.getArray();
+		double[] x = new double[numPoints];
+		double[] y = new double[numPoints];
+		for (int p = 0; p < numPoints; p++) {
+			x[p] = snapshot.get(p, 0) + offsets[p][0];
+			y[p] = snapshot.get(p, 1) + offsets[p][1];
+		}
+		this.x = x;
+		this.y = y;
+		positionEpoch = snapshot.getEpoch();
+		positionNoise = noise;
+	}
+
+	/** Find the colour, size, shape, fill and label of each point */
+	private void updateStyle() {
+		styleValid = true;
+		styleVersion++;
+		Instances instances = spModel.getInstances();
+		PointModel pointModel = spModel.getPointModel();
+		GraphModel graphModel = spModel.getGraphModel();
+		int[] nodeSizeDegree = (graphModel == null ? null : graphModel.getNodeSizeDegree());
+		int[] labelDegree = (graphModel == null ? null : graphModel.getLabelDegree());
+		Attribute sizeAttribute = pointModel.getSizeAttribute();
+		Attribute shapeAttribute = pointModel.getShapeAttribute();
+		Attribute fillAttribute = pointModel.getFillAttribute();
+		double sizeRange = pointModel.sizeAttributeUpperBound - pointModel.sizeAttributeLowerBound;
+		double labelRange = pointModel.labelSizeUpperBound - pointModel.labelSizeLowerBound;
+
+		int[] argb = new int[numPoints];
+		int[] colourIndex = new int[numPoints];
+		double[] sizeFraction = new double[numPoints];
+		int[] shape = new int[numPoints];
+		int[] fill = new int[numPoints];
+		double[] labelSize = new double[numPoints];
+		String[] labelText = new String[numPoints];
+		HashMap<Integer, Integer> colours = new HashMap<Integer, Integer>();
+		Color c;
+		Integer index;
+		for (int p = 0; p < numPoints; p++) {
+			c = spModel.setColor(p);
+			argb[p] = c.getRGB();
+			index = colours.get(argb[p]);
+			if (index == null) {
+				index = colours.size();
+				colours.put(argb[p], index);
+			}
+			colourIndex[p] = index;
+
+			// size of the marker depends on size attribute
+			if (nodeSizeDegree != null)
+				sizeFraction[p] = (nodeSizeDegree[p] - pointModel.sizeAttributeLowerBound) / sizeRange;
+			else if (sizeAttribute != null)
+				sizeFraction[p] = (instances.instance(p).value(sizeAttribute) - pointModel.sizeAttributeLowerBound)
+						/ sizeRange;
+			else
+				sizeFraction[p] = Double.NaN;
+
+			shape[p] = (shapeAttribute == null ? 0 : (int) instances.instance(p).value(shapeAttribute));
+			fill[p] = (fillAttribute == null ? RenderInput.NO_FILL : (int) instances.instance(p).value(
+					fillAttribute));
+
+			// size of the label depends on the size attribute
+			if (labelDegree == null || !pointModel.sizeLabels())
+				labelSize[p] = pointModel.getLabelSize();
+			else
+				labelSize[p] = pointModel.getLabelSize()
+						* (1.0 + ((labelDegree[p] - pointModel.labelSizeLowerBound) / labelRange));
+
+			labelText[p] = spModel.getDescriptionOfInstanceOnly(p);
+			if (labelText[p].equals(""))
+				labelText[p] = "" + (p + 1);
+		}
+		Color[] palette = new Color[colours.size()];
+		Color[] brighterPalette = new Color[colours.size()];
+		for (int p = 0; p < numPoints; p++)
+			if (palette[colourIndex[p]] == null) {
+				palette[colourIndex[p]] = new Color(argb[p], true);
+				brighterPalette[colourIndex[p]] = palette[colourIndex[p]].brighter();
+			}
+		this.argb = argb;
+		this.colourIndex = colourIndex;
+		this.sizeFraction = sizeFraction;
+		this.shape = shape;
+		this.fill = fill;
+		this.labelSize = labelSize;
+		this.labelText = labelText;
+		this.palette = palette;
+		this.brighterPalette = brighterPalette;
+		styleInstances = instances;
+		emphasisValid = false;
+	}
+
+	/**
+	 * Find which points are selected, hovered over or next to selected nodes,
+	 * and so the order to draw them in
+	 */
+	private void updateEmphasis(BitSet neighbours) {
+		emphasisValid = true;
+		boolean showGraph = spModel.showGraph();
+		int transparency = spModel.getTransparency();
+		byte[] emphasis = new byte[numPoints];
+		int[] order = new int[numPoints];
+		int numBackground = 0, numLinked = 0, numSelected = 0;
+		byte e;
+		for (int p = 0; p < numPoints; p++) {
+			e = 0;
+			if (spModel.isPointSelected(p))
+				e |= RenderInput.SELECTED;
+			if (neighbours != null && neighbours.get(p))
+				e |= RenderInput.NEIGHBOUR;
+			if (spModel.isPointHovered(p))
+				e |= RenderInput.HOVERED;
+			emphasis[p] = e;
+			if ((e & RenderInput.SELECTED) != 0)
+				numSelected++;
+			else if (e != 0)
+				numLinked++;
+			else
+				numBackground++;
+		}
+
+		// in a graph draw the background points first, then those linked to
+		// the selection, then the selected ones
+		if (showGraph) {
+			int background = 0, linked = numBackground, selected = numBackground + numLinked;
+			for (int p = 0; p < numPoints; p++)
+				if ((emphasis[p] & RenderInput.SELECTED) != 0)
+					order[selected++] = p;
+				else if (emphasis[p] != 0)
+					order[linked++] = p;
+				else
+					order[background++] = p;
+		} else
+			for (int p = 0; p < numPoints; p++)
+				order[p] = p;
+
+		if (fadedPalette == null || fadedFrom != palette || transparency != emphasisTransparency) {
+			Color[] fadedPalette = new Color[palette.length];
+			for (int k = 0; k < palette.length; k++)
+				fadedPalette[k] = new Color(palette[k].getRed(), palette[k].getGreen(), palette[k].getBlue(),
+						transparency);
+			this.fadedPalette = fadedPalette;
+			fadedFrom = palette;
+			fadedWhite = new Color(255, 255, 255, transparency);
+			fadedBlack = new Color(0, 0, 0, transparency);
+		}
+		this.emphasis = emphasis;
+		this.order = order;
+		emphasisSelection = spModel.getSelectionEpoch();
+		emphasisHover = spModel.getHoverPoints().getEpoch();
+		emphasisNeighbours = neighbours;
+		emphasisShowGraph = showGraph;
+		emphasisTransparency = transparency;
+	}
+
+	/** Draw the points of a frame, with the emphasised ones on top */
+	public void drawPoints(Graphics2D g2, AffineTransform transform, RenderInput input) {
+		drawPoints(g2, transform, input, false);
+	}
+
+	/**
+	 * If there are more points in the view than the density threshold then
+	 * draw their density, with the selected, hovered and highlighted points on
+	 * top, otherwise do nothing.
+	 *
+	 * @param width
+	 *            the width of the view in pixels
+	 * @param height
+	 *            the height of the view in pixels
+	 * @return whether the density was drawn
+	 */
+	public boolean drawDensity(Graphics2D g2, AffineTransform transform, RenderInput input, int width, int height) {
+		if (input.numPoints <= input.densityThreshold)
+			return false;
+		if (density.bin(input.x, input.y, input.argb, input.numPoints, transform, width, height,
+				input.styleVersion) <= input.densityThreshold)
+			return false;
+		density.draw(g2, input.densityByColour, input.colours);
+		drawPoints(g2, transform, input, true);
+		return true;
+	}
+
+	private void drawPoints(Graphics2D g2, AffineTransform transform, RenderInput input, boolean emphasisedOnly) {
+		double[] x = input.x, y = input.y;
+		byte[] emphasis = input.emphasis;
+		Color[] palette = input.palette, fadedPalette = input.fadedPalette, brighterPalette = input.brighterPalette;
+		int[] colourIndex = input.colourIndex, fill = input.fill;
+		double defaultArea = input.scaledMarkerSize;
+		double scale = transform.getScaleX();
+		boolean showGraph = input.showGraph;
+		boolean arePointsSelected = input.arePointsSelected;
+		boolean graphLoaded = input.graphLoaded;
+		Color background = input.colours.getBackgroundColor();
+		Color outline, colour;
+		Shape marker;
+		double area, size, px, py;
+		int p;
+		byte e;
+		boolean emphasised;
+		for (int i = 0; i < input.numPoints; i++) {
+			p = input.order[i];
+			e = emphasis[p];
+			if (emphasisedOnly && e == 0)
+				continue;
+			px = x[p];
+			py = y[p];
+
+			// if the graph isn't shown or no points are selected or the point
+			// is selected, next to a selected node or hovered over then use
+			// its colour, otherwise make it transparent
+			emphasised = !showGraph || !arePointsSelected || e != 0;
+			colour = (emphasised ? palette[colourIndex[p]] : fadedPalette[colourIndex[p]]);
+			g2.setColor(colour);
+
+			// shape/fill of the marker depends on respective attributes
+			area = input.markerArea(p, defaultArea);
+			size = Math.sqrt((area / scale) / Math.PI);
+			marker = markers.build(input.shape[p], px, py, size);
+
+			if ((e & RenderInput.SELECTED) != 0) {
+				line.setLine(px - size, py, px + size, py);
+				g2.draw(line);
+				line.setLine(px, py - size, px, py + size);
+				g2.draw(line);
+				if (graphLoaded) {
+					g2.fill(marker);
+					if (background == Color.BLACK)
+						g2.setColor(Color.WHITE);
+					if (background == Color.WHITE)
+						g2.setColor(Color.BLACK);
+					g2.draw(marker);
+				}
+			} else if (fill[p] == RenderInput.NO_FILL) {
+				g2.fill(marker);
+				outline = null;
+				if (background == Color.BLACK)
+					outline = (!showGraph || !arePointsSelected ? Color.WHITE : (e != 0 ? brighterPalette[colourIndex[p]]
+							: input.fadedWhite));
+				else if (background == Color.WHITE)
+					outline = (!showGraph || !arePointsSelected ? Color.BLACK : (e != 0 ? brighterPalette[colourIndex[p]]
+							: input.fadedBlack));
+				if (outline != null)
+					g2.setColor(outline);
+				g2.draw(marker);
+			} else if (fill[p] == 0)
+				g2.fill(marker);
+			else
+				// TODO add more textures for filling points (shaded lines etc)
+				g2.draw(marker);
+		}
+	}
+
+	/** Draw the labels of the points of a frame that pass the label filter */
+	public void drawLabels(Graphics2D g2, AffineTransform transform, RenderInput input) {
+		updateLabelLayouts(transform, input.labelText);
+		Color foreground = input.colours.getForegroundColor();
+		boolean nodeLabelColor = input.nodeLabelColour;
+		boolean showGraph = input.showGraph;
+		boolean highlighted = input.highlightedLabels;
+		boolean hover = input.hoverLabels;
+		boolean selected = input.selectedLabels;
+		int[] filterDegree = input.labelFilterDegree;
+		int lower = input.lowerLabelFilterDegree;
+		int upper = input.upperLabelFilterDegree;
+		double[] labelSize = input.labelSize;
+		AffineTransform saveXform = g2.getTransform();
+		TextLayout layout;
+		double width, height;
+		int p;
+		byte e;
+		for (int i = 0; i < input.numPoints; i++) {
+			p = input.order[i];
+			e = input.emphasis[p];
+			if (filterDegree != null && (filterDegree[p] < lower || filterDegree[p] > upper))
+				continue;
+
+			// in a graph only label the points picked out by the label
+			// options (if there are any)
+			if (showGraph
+					&& (highlighted || hover || selected)
+					&& !((highlighted && (e & (RenderInput.SELECTED | RenderInput.NEIGHBOUR)) != 0)
+							|| (hover && (e & RenderInput.HOVERED) != 0) || (selected && (e & RenderInput.SELECTED) != 0)))
+				continue;
+
+			layout = labelLayouts[p];
+			width = labelWidth[p];
+			height = labelHeight[p];
+			labelTransform.setTransform(transform);
+			labelTransform.scale(labelSize[p], labelSize[p]);
+			g2.setTransform(labelTransform);
+			g2.setColor(nodeLabelColor ? input.palette[input.colourIndex[p]] : foreground);
+			layout.draw(g2, (float) (input.x[p] / labelSize[p] - width / 2), (float) (input.y[p] / labelSize[p] + height / 2));
+		}
+		g2.setTransform(saveXform);
+	}
+
+	/**
+	 * Lay out the labels again if they or the scale of the transform have
+	 * changed. Translation does not affect the layout, so panning does not.
+	 */
+	private void updateLabelLayouts(AffineTransform transform, String[] labelText) {
+		if (labelText == layoutText && transform.getScaleX() == labelScaleX && transform.getScaleY() == labelScaleY
+				&& transform.getShearX() == labelShearX && transform.getShearY() == labelShearY)
+			return;
+		labelScaleX = transform.getScaleX();
+		labelScaleY = transform.getScaleY();
+		labelShearX = transform.getShearX();
+		labelShearY = transform.getShearY();
+		layoutText = labelText;
+		FontRenderContext context = new FontRenderContext(new AffineTransform(labelScaleX, labelShearY,
+				labelShearX, labelScaleY, 0, 0), false, false);
+		int n = labelText.length;
+		labelLayouts = new TextLayout[n];
+		labelWidth = new double[n];
+		labelHeight = new double[n];
+		Rectangle2D bounds;
+		for (int p = 0; p < n; p++) {
+			labelLayouts[p] = new TextLayout(labelText[p], labelFont, context);
+			bounds = labelLayouts[p].getBounds();
+			labelWidth[p] = bounds.getWidth();
+			labelHeight[p] = bounds.getHeight();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package tpp;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A set of points (eg those that are selected, or being hovered over) held as
+ * a bitset packed into words. The number of points in the set is kept up to
+ * date as points are added and removed, so finding it, or whether the set is
+ * empty, takes constant time. Each change to the set increments its epoch, so
+ * anything derived from the set can tell when it is out of date.
+ */
+public class PointSet implements Serializable {
+
+	private static final long serialVersionUID = -3360873463113593416L;
+
+	private static final int ADDRESS_BITS_PER_WORD = 6;
+
+	private static final long WORD_MASK = 0xffffffffffffffffL;
+
+	private final long[] words;
+
+	/** The number of points that could be in the set */
+	private final int size;
+
+	/** The number of points that are in the set */
+	private int cardinality;
+
+	private volatile int epoch;
+
+	/**
+	 * @param size
+	 *            the number of points that could be in the set, which is
+	 *            initially empty
+	 */
+	public PointSet(int size) {
+		this.size = size;
+		words = new long[wordIndex(size - 1) + 1];
+	}
+
+	private static int wordIndex(int p) {
+		return p >> ADDRESS_BITS_PER_WORD;
+	}
+
+	/** Is the point in the set? Returns false if p is out of range */
+	public boolean contains(int p) {
+		if (p < 0 || p >= size)
+			return false;
+		return (words[wordIndex(p)] & (1L << p)) != 0;
+	}
+
+	/**
+	 * Add the point to the set
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if p is out of range
+	 */
+	public void add(int p) {
+		checkIndex(p);
+		int w = wordIndex(p);
+		long bit = 1L << p;
+		if ((words[w] & bit) == 0) {
+			words[w] |= bit;
+			cardinality++;
+			epoch++;
+		}
+	}
+
+	/**
+	 * Remove the point from the set
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if p is out of range
+	 */
+	public void remove(int p) {
+		checkIndex(p);
+		int w = wordIndex(p);
+		long bit = 1L << p;
+		if ((words[w] & bit) != 0) {
+			words[w] &= ~bit;
+			cardinality--;
+			epoch++;
+		}
+	}
+
+	/**
+	 * The last word has bits beyond the last point, which must never be set,
+	 * or the cardinality would count points that contains does not
+	 */
+	private void checkIndex(int p) {
+		if (p < 0 || p >= size)
+			throw new IndexOutOfBoundsException("point " + p + " in " + size);
+	}
+
+	/** Add the point to, or remove it from, the set */
+	public void set(int p, boolean in) {
+		if (in)
+			add(p);
+		else
+			remove(p);
+	}
+
+	/** Add the points from..to-1 to the set */
+	public void addRange(int from, int to) {
+		setRange(from, to, true);
+	}
+
+	/** Remove the points from..to-1 from the set */
+	public void removeRange(int from, int to) {
+		setRange(from, to, false);
+	}
+
+	private void setRange(int from, int to, boolean in) {
+		if (from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("from " + from + " to " + to + " in " + size);
+		if (from == to)
+			return;
+		int first = wordIndex(from), last = wordIndex(to - 1);
+		long firstMask = WORD_MASK << from, lastMask = WORD_MASK >>> -to;
+		long mask, old;
+		for (int w = first; w <= last; w++) {
+			mask = WORD_MASK;
+			if (w == first)
+				mask &= firstMask;
+			if (w == last)
+				mask &= lastMask;
+			old = words[w];
+			words[w] = in ? (old | mask) : (old & ~mask);
+			cardinality += Long.bitCount(words[w]) - Long.bitCount(old);
+		}
+		epoch++;
+	}
+
+	/** Add every point to the set */
+	public void addAll() {
+		setRange(0, size, true);
+	}
+
+	/** Remove every point from the set */
+	public void clear() {
+		if (cardinality > 0) {
+			Arrays.fill(words, 0);
+			cardinality = 0;
+			epoch++;
+		}
+	}
+
+	/** The number of points in the set */
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	/** The number of points that could be in the set */
+	public int size() {
+		return size;
+	}
+
+	/** A count that changes whenever the set changes */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * The first point in the set at or after p, or -1 if there is none. To
+	 * visit every point in the set use
+	 * <code>for (int p = set.nextPoint(0); p >= 0; p = set.nextPoint(p + 1))</code>
+	 */
+	public int nextPoint(int p) {
+		if (p >= size)
+			return -1;
+		int w = wordIndex(p);
+		long word = words[w] & (WORD_MASK << p);
+		while (true) {
+			if (word != 0)
+				return (w << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+			if (++w == words.length)
+				return -1;
+			word = words[w];
+		}
+	}
+
+	/** The points in the set, in order */
+	public int[] toArray() {
+		int[] points = new int[cardinality];
+		int i = 0;
+		for (int p = nextPoint(0); p >= 0; p = nextPoint(p + 1))
+			points[i++] = p;
+		return points;
+	}
+
+	/**
+	 * Copy the set into an array that indicates whether each point is in the
+	 * set. The given array is used if it is the right size.
+	 */
+	public boolean[] toBooleanArray(boolean[] in) {
+		if (in == null || in.length != size)
+			in = new boolean[size];
+		else
+			Arrays.fill(in, false);
+		for (int p = nextPoint(0); p >= 0; p = nextPoint(p + 1))
+			in[p] = true;
+		return in;
+	}
+}
@@ -72,10 +72,9 @@ public class ProjectionTableModel extends AbstractTableModel {
 	public void setValueAt(Object value, int row, int col) {
 		Double d = Double.valueOf(value.toString());
 		if (col == X_COL)
-			tpp.getProjection().set(row, 0, d.doubleValue());
+			tpp.setProjectionValue(row, 0, d.doubleValue());
 		if (col == Y_COL)
-			tpp.getProjection().set(row, 1, d.doubleValue());
-		tpp.project();
+			tpp.setProjectionValue(row, 1, d.doubleValue());
 		fireTableCellUpdated(row, col); //added
 	}
 
@@ -0,0 +1,117 @@
+package tpp;
+
+import java.io.Serializable;
+
+/**
+ * Decides how fast a {@link PerturbationPursuitThread} runs. Each iteration of
+ * the pursuit is timed and the thread is then paused for long enough to keep
+ * to a target frame rate and/or to a maximum share of one CPU. An unthrottled
+ * scheduler never pauses, which is what is wanted when there is no view to
+ * watch the pursuit (eg in attribute selection).
+ */
+public class PursuitScheduler implements Serializable {
+
+	private static final long serialVersionUID = 7162455398211340377L;
+
+	/** The default frame rate for pursuits that are being watched */
+	public static final double DEFAULT_FRAMES_PER_SECOND = 30;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	/** The target number of iterations per second, or 0 if there is none */
+	private double framesPerSecond;
+
+	/** The largest share of one CPU that the pursuit may use, in (0,1] */
+	private double maxCpuShare;
+
+	/** When the current iteration started */
+	private transient long iterationStart;
+
+	/**
+	 * @param framesPerSecond
+	 *            the target number of iterations per second, or 0 to run as
+	 *            fast as the CPU share allows
+	 * @param maxCpuShare
+	 *            the largest share of one CPU that the pursuit may use, in
+	 *            (0,1]
+	 */
+	public PursuitScheduler(double framesPerSecond, double maxCpuShare) {
+		setFramesPerSecond(framesPerSecond);
+		setMaxCpuShare(maxCpuShare);
+	}
+
+	/** A scheduler that keeps to the given frame rate */
+	public static PursuitScheduler atFrameRate(double framesPerSecond) {
+		return new PursuitScheduler(framesPerSecond, 1);
+	}
+
+	/** A scheduler that uses no more than the given share of one CPU */
+	public static PursuitScheduler withCpuShare(double maxCpuShare) {
+		return new PursuitScheduler(0, maxCpuShare);
+	}
+
+	/** A scheduler that never pauses, for headless or batch use */
+	public static PursuitScheduler unthrottled() {
+		return new PursuitScheduler(0, 1);
+	}
+
+	public double getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	public void setFramesPerSecond(double framesPerSecond) {
+		if (framesPerSecond < 0)
+			throw new IllegalArgumentException("Frame rate must not be negative: " + framesPerSecond);
+		this.framesPerSecond = framesPerSecond;
+	}
+
+	public double getMaxCpuShare() {
+		return maxCpuShare;
+	}
+
+	public void setMaxCpuShare(double maxCpuShare) {
+		if (maxCpuShare <= 0 || maxCpuShare > 1)
+			throw new IllegalArgumentException("CPU share must be in (0,1]: " + maxCpuShare);
+		this.maxCpuShare = maxCpuShare;
+	}
+
+	/** Does this scheduler ever pause? */
+	public boolean isThrottled() {
+		return framesPerSecond > 0 || maxCpuShare < 1;
+	}
+
+	/** Call at the start of each iteration of the pursuit */
+	public void beginIteration() {
+		iterationStart = System.nanoTime();
+	}
+
+	/**
+	 * Call at the end of each iteration of the pursuit. Pauses the calling
+	 * thread for as long as is needed to keep to the frame rate and CPU share.
+	 *
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while paused
+	 */
+	public void endIteration() throws InterruptedException {
+		if (!isThrottled())
+			return;
+		long worked = System.nanoTime() - iterationStart;
+		long pause = 0;
+		if (framesPerSecond > 0)
+			pause = (long) (NANOS_PER_SECOND / framesPerSecond) - worked;
+		if (maxCpuShare < 1)
+			pause = Math.max(pause, (long) (worked * (1 - maxCpuShare) / maxCpuShare));
+		if (pause > 0)
+			Thread.sleep(pause / NANOS_PER_MILLI, (int) (pause % NANOS_PER_MILLI));
+	}
+
+	public String toString() {
+		if (!isThrottled())
+			return "unthrottled";
+		return (framesPerSecond > 0 ? framesPerSecond + " fps" : "")
+				+ (framesPerSecond > 0 && maxCpuShare < 1 ? ", " : "")
+				+ (maxCpuShare < 1 ? Math.round(maxCpuShare * 100) + "% cpu" : "");
+	}
+}
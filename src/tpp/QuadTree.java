@@ -0,0 +1,200 @@
+package tpp;
+
+import java.util.Arrays;
+
+/**
+ * A quadtree over a set of points in the plane, for Barnes-Hut style
+ * approximation of sums over all the points: the points in a cell that is far
+ * enough away can be treated as a single point at the cell's centre of mass.
+ * Each cell holds a range of the points (which are sorted so that those in a
+ * cell are adjacent) and the children of a cell are adjacent to each other,
+ * so the tree is held in flat arrays and can be walked without recursion.
+ * Building the tree is O(N log N).
+ *
+ * The arrays are package visible so that the inner loops of the force
+ * calculations that use them can read them directly.
+ */
+public class QuadTree {
+
+	/** Cells with no more than this many points are not divided */
+	private static final int LEAF_SIZE = 8;
+
+	/** Cells are not divided beyond this depth (eg if points coincide) */
+	static final int MAX_DEPTH = 40;
+
+	/** The size of stack needed to walk the tree depth first */
+	static final int STACK_SIZE = 3 * MAX_DEPTH + 4;
+
+	/** The root of the tree */
+	static final int ROOT = 0;
+
+	// the points
+	final double[] x, y;
+
+	/** The points, ordered so that those in each cell are adjacent */
+	final int[] order;
+
+	int numCells;
+
+	/** The range of the cell's points in order, and the cell's children */
+	int[] start, end, firstChild, numChildren;
+
+	/** The width of the cell */
+	double[] width;
+
+	/**
+	 * Build a quadtree over the given points. The arrays are not copied and
+	 * should not be changed while the tree is in use.
+	 */
+	public QuadTree(double[] x, double[] y) {
+		this.x = x;
+		this.y = y;
+		int n = x.length;
+		order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+
+		int capacity = Math.max(16, n / 2);
+		start = new int[capacity];
+		end = new int[capacity];
+		firstChild = new int[capacity];
+		numChildren = new int[capacity];
+		width = new double[capacity];
+		if (n == 0)
+			return;
+
+		double minX = x[0], maxX = x[0], minY = y[0], maxY = y[0];
+		for (int i = 1; i < n; i++) {
+			if (x[i] < minX)
+				minX = x[i];
+			if (x[i] > maxX)
+				maxX = x[i];
+			if (y[i] < minY)
+				minY = y[i];
+			if (y[i] > maxY)
+				maxY = y[i];
+		}
+		numCells = 1;
+		build(ROOT, 0, n, minX, minY, Math.max(maxX - minX, maxY - minY), 0, new int[n],
+				new int[n]);
+	}
+
+	/** Build the X and Y coordinates of the rows of a 2D view into a tree */
+	public static QuadTree fromView(double[][] view) {
+		double[] x = new double[view.length], y = new double[view.length];
+		for (int i = 0; i < view.length; i++) {
+			x[i] = view[i][0];
+			y[i] = view[i][1];
+		}
+		return new QuadTree(x, y);
+	}
+
+	public int getNumPoints() {
+		return x.length;
+	}
+
+	/**
+	 * Find the total weight of the points in each cell, and their centre of
+	 * mass. If a cell's points have no weight, its centre is left at zero.
+	 *
+	 * @param weights
+	 *            the weight of each point (which should not be negative), or
+	 *            null to give each point unit weight
+	 * @return three arrays, indexed by cell: the total weight, and the X and Y
+	 *         of the centre of mass
+	 */
+	public double[][] centresOfMass(double[] weights) {
+		double[] mass = new double[numCells], cx = new double[numCells], cy = new double[numCells];
+		if (numCells > 0)
+			centreOfMass(ROOT, weights, mass, cx, cy);
+		return new double[][] { mass, cx, cy };
+	}
+
+	private void centreOfMass(int cell, double[] weights, double[] mass, double[] cx,
+			double[] cy) {
+		double m = 0, sx = 0, sy = 0, w;
+		int p;
+		if (numChildren[cell] == 0) {
+			for (int k = start[cell]; k < end[cell]; k++) {
+				p = order[k];
+				w = (weights == null ? 1 : weights[p]);
+				m += w;
+				sx += w * x[p];
+				sy += w * y[p];
+			}
+		} else {
+			// build the cell from its children
+			int child;
+			for (int c = 0; c < numChildren[cell]; c++) {
+				child = firstChild[cell] + c;
+				centreOfMass(child, weights, mass, cx, cy);
+				m += mass[child];
+				sx += mass[child] * cx[child];
+				sy += mass[child] * cy[child];
+			}
+		}
+		mass[cell] = m;
+		if (m > 0) {
+			cx[cell] = sx / m;
+			cy[cell] = sy / m;
+		}
+	}
+
+	private void build(int cell, int from, int to, double x0, double y0, double size,
+			int depth, int[] quadrant, int[] scratch) {
+		start[cell] = from;
+		end[cell] = to;
+		width[cell] = size;
+		numChildren[cell] = 0;
+		if (to - from <= LEAF_SIZE || depth >= MAX_DEPTH || size <= 0)
+			return;
+
+		// count the points in each quadrant, then sort them into order
+		double half = size / 2, midX = x0 + half, midY = y0 + half;
+		int[] counts = new int[4];
+		int k, p, q;
+		for (k = from; k < to; k++) {
+			p = order[k];
+			q = (x[p] < midX ? 0 : 1) + (y[p] < midY ? 0 : 2);
+			quadrant[k] = q;
+			counts[q]++;
+		}
+		int[] next = new int[4];
+		next[0] = from;
+		for (q = 1; q < 4; q++)
+			next[q] = next[q - 1] + counts[q - 1];
+		for (k = from; k < to; k++)
+			scratch[next[quadrant[k]]++] = order[k];
+		System.arraycopy(scratch, from, order, from, to - from);
+
+		// then create a child for each quadrant that has any points
+		int children = 0;
+		for (q = 0; q < 4; q++)
+			if (counts[q] > 0)
+				children++;
+		ensureCapacity(numCells + children);
+		firstChild[cell] = numCells;
+		numChildren[cell] = children;
+		int child = numCells;
+		numCells += children;
+		int childFrom = from;
+		for (q = 0; q < 4; q++) {
+			if (counts[q] > 0) {
+				build(child++, childFrom, childFrom + counts[q], (q & 1) == 0 ? x0 : midX,
+						(q & 2) == 0 ? y0 : midY, half, depth + 1, quadrant, scratch);
+				childFrom += counts[q];
+			}
+		}
+	}
+
+	private void ensureCapacity(int size) {
+		if (size <= start.length)
+			return;
+		int capacity = Math.max(size, start.length * 2);
+		start = Arrays.copyOf(start, capacity);
+		end = Arrays.copyOf(end, capacity);
+		firstChild = Arrays.copyOf(firstChild, capacity);
+		numChildren = Arrays.copyOf(numChildren, capacity);
+		width = Arrays.copyOf(width, capacity);
+	}
+}
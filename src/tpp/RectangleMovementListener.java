@@ -38,8 +38,11 @@ public class RectangleMovementListener {
 		this.model=model;
 		this.rectangle=model.rectangle;
 
-		// create a new target view
-		model.setTarget((Matrix) model.getView().clone());
+		// create a new target view, starting from a snapshot of the current
+		// one (which is already a copy, and can't be half way through a
+		// pursuit)
+		ViewSnapshot snapshot = model.getViewSnapshot();
+		model.setTarget(snapshot.getView());
 
 		// These are the translations to the target view that would be the
 		// result of moving the selection by a single pixel x and y in the device space
@@ -47,8 +50,9 @@ public class RectangleMovementListener {
 		// movement in the target (dyTarget<0))
 		dTarget = new Matrix(model.getNumDataPoints(), 2);
 		double dx=1,dy=1;
-		for (int p = 0; p < model.getNumDataPoints(); p++) {
-			if (model.isPointSelected(p) && !model.isPointInTestingSet(p)) {
+		PointSet selected = model.getSelectedPoints();
+		for (int p = selected.nextPoint(0); p >= 0; p = selected.nextPoint(p + 1)) {
+			if (!model.isPointInTestingSet(p)) {
 				dTarget.set(p, 0, dx);
 				dTarget.set(p, 1, dy);
 			}
@@ -68,10 +72,10 @@ public class RectangleMovementListener {
 
 		// the position of the point under consideration
 		double x, y;
-		for (int p = 0; p < model.getNumDataPoints(); p++) {
-			if (model.isPointSelected(p) && !model.isPointInTestingSet(p)) {
-				x = model.getView().get(p, 0);
-				y = model.getView().get(p, 1);
+		for (int p = selected.nextPoint(0); p >= 0; p = selected.nextPoint(p + 1)) {
+			if (!model.isPointInTestingSet(p)) {
+				x = snapshot.get(p, 0);
+				y = snapshot.get(p, 1);
 				// (recall that a mouse movement down (dy>0) corresponds to a
 				// negative movement in the target (zTarget.y<0));
 				zTarget.set(p, 0, (x - cx) / width);
@@ -83,53 +87,45 @@ public class RectangleMovementListener {
 		// the effect of 'elasticity'
 		// in which movements to selected points drag connected points with them
 		if (model.showSeries() && model.getSeries() != null)
-			for (int p = 0; p < model.getNumDataPoints(); p++)
-				if (model.isPointSelected(p) && !model.isPointInTestingSet(p)) {
+			for (int p = selected.nextPoint(0); p >= 0; p = selected.nextPoint(p + 1))
+				if (!model.isPointInTestingSet(p)) {
 					dragPrevious(p);
 					dragNext(p);
 				}
 
 	}
 
-	/** Drag the point previous to the current one. */
+	/**
+	 * Drag the points before the current one, each by a proportion of the
+	 * movement of the point after it, until the start of the series or another
+	 * selected point is reached.
+	 */
 	private void dragPrevious(int p) {
-
-		// find previous point
-		int previous = -1;
-		previous = model.getSeries().previous(p);
-
-		// if we haven't reached the end of the series, or another selected
-		// point
-		if (previous != -1 && !model.isPointSelected(previous)) {
-			// then add a proportion of the movement of the selected point to
-			// the connected one
+		Series series = model.getSeries();
+		int previous = series.previous(p);
+		while (previous != -1 && !model.isPointSelected(previous)) {
+			// add a proportion of the movement of the point to the
+			// connected one
 			dTarget.set(previous, 0, dTarget.get(previous, 0) + (dTarget.get(p, 0) * ELASTICITY));
 			dTarget.set(previous, 1, dTarget.get(previous, 1) + (dTarget.get(p, 1) * ELASTICITY));
-
-			// and drag any point previous connected to it
-			dragPrevious(previous);
+			p = previous;
+			previous = series.previous(p);
 		}
 	}
 
-	/** Drag the point next to the current one.
-	 * @param model
-	 * @param panel */
+	/**
+	 * Drag the points after the current one, each by a proportion of the
+	 * movement of the point before it, until the end of the series or another
+	 * selected point is reached.
+	 */
 	private void dragNext(int p) {
-
-		// find next point
-		int next = -1;
-		next = model.getSeries().next(p);
-
-		// if we haven't reached the end of the series, or another selected
-		// point
-		if (next != -1 && !model.isPointSelected(next)) {
-			// then add a proportion of the movement of the selected point to
-			// the connected one
+		Series series = model.getSeries();
+		int next = series.next(p);
+		while (next != -1 && !model.isPointSelected(next)) {
 			dTarget.set(next, 0, dTarget.get(next, 0) + (dTarget.get(p, 0) * ELASTICITY));
 			dTarget.set(next, 1, dTarget.get(next, 1) + (dTarget.get(p, 1) * ELASTICITY));
-
-			// and drag any point next connected to it
-			dragNext(next);
+			p = next;
+			next = series.next(p);
 		}
 	}
 
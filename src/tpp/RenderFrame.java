@@ -0,0 +1,182 @@
+package tpp;
+
+import java.awt.geom.AffineTransform;
+
+/**
+ * One frame of the view being drawn in the background by {@link ViewLayers}:
+ * what is to be drawn (and what it is drawn from), whether it has been
+ * cancelled by a newer frame, and how long each stage of drawing it took.
+ *
+ * A frame is drawn in stages so that something can be shown quickly: first
+ * the axes, decorations and nodes, then a sample of the edges, then every
+ * edge and the labels. A draft frame, drawn while the view is being dragged
+ * or pursued, is drawn without antialiasing or curved edges and stops after
+ * the sample of the edges.
+ */
+public class RenderFrame {
+
+	public static final int NODES_STAGE = 0;
+	public static final int SAMPLE_STAGE = 1;
+	public static final int FULL_STAGE = 2;
+	public static final int NUM_STAGES = 3;
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	/** What the frame is drawn from, read from the model when it was asked for */
+	private final RenderInput input;
+
+	/** The transform from data space to the pixels of the images */
+	private final AffineTransform pixelView;
+
+	private final int imageWidth, imageHeight;
+
+	/** The layers to draw, as a mask of bits */
+	private final int layers;
+
+	private final boolean draft;
+
+	private volatile boolean cancelled;
+
+	/** Whether the frame has got past the stages that are always finished */
+	private volatile boolean stoppable;
+
+	/** Draw one in this many edges in the sample stage */
+	private int edgeStride = 1;
+
+	/** The edge stride of the sample stage, or 1 if there was none */
+	private int sampleStride = 1;
+
+	// when the frame was asked for, started and finished, and when each stage
+	// finished (or 0 if it was not reached)
+	private final long requestTime;
+	private long startTime, endTime;
+	private final long[] stageTime = new long[NUM_STAGES];
+
+	RenderFrame(RenderInput input, AffineTransform pixelView, int imageWidth, int imageHeight, int layers,
+			boolean draft) {
+		this.input = input;
+		this.pixelView = pixelView;
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.layers = layers;
+		this.draft = draft;
+		requestTime = System.nanoTime();
+	}
+
+	public RenderInput getInput() {
+		return input;
+	}
+
+	public ViewSnapshot getSnapshot() {
+		return input.getSnapshot();
+	}
+
+	/** The epoch of the view being drawn */
+	public long getEpoch() {
+		return input.getSnapshot().getEpoch();
+	}
+
+	AffineTransform getPixelView() {
+		return pixelView;
+	}
+
+	int getImageWidth() {
+		return imageWidth;
+	}
+
+	int getImageHeight() {
+		return imageHeight;
+	}
+
+	/** The layers being drawn, with bit 1 << layer set for each */
+	public int getLayers() {
+		return layers;
+	}
+
+	public boolean hasLayer(int layer) {
+		return (layers & (1 << layer)) != 0;
+	}
+
+	/** Is this a quick, lower quality frame drawn while the view is moving? */
+	public boolean isDraft() {
+		return draft;
+	}
+
+	/** Stop drawing this frame as soon as possible */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Whether to stop drawing, ie the frame has been cancelled and has got
+	 * past the stages that are always finished
+	 */
+	public boolean shouldStop() {
+		return cancelled && stoppable;
+	}
+
+	void setStoppable() {
+		stoppable = true;
+	}
+
+	/**
+	 * The number of edges for each edge drawn in the current stage: more than
+	 * one in the sample stage of a large graph, otherwise one
+	 */
+	public int getEdgeStride() {
+		return edgeStride;
+	}
+
+	void setEdgeStride(int edgeStride) {
+		this.edgeStride = edgeStride;
+		if (edgeStride > 1)
+			sampleStride = edgeStride;
+	}
+
+	void started() {
+		startTime = System.nanoTime();
+	}
+
+	void stageFinished(int stage) {
+		stageTime[stage] = System.nanoTime();
+	}
+
+	void finished() {
+		endTime = System.nanoTime();
+	}
+
+	/** How long (in ms) the frame waited before it started to be drawn */
+	public double getWaitTime() {
+		return (startTime - requestTime) / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * How long (in ms) after the frame started the stage was finished, or NaN
+	 * if it was not reached
+	 */
+	public double getStageTime(int stage) {
+		return (stageTime[stage] == 0 ? Double.NaN : (stageTime[stage] - startTime) / NANOS_PER_MILLI);
+	}
+
+	/** How long (in ms) the frame took to draw, or to be cancelled */
+	public double getTotalTime() {
+		return (endTime - startTime) / NANOS_PER_MILLI;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder("epoch " + getEpoch() + (draft ? " draft" : "")
+				+ (cancelled ? " cancelled" : "") + String.format(": waited %.1f ms", getWaitTime()));
+		String[] names = { "nodes", "sample", "full" };
+		for (int stage = 0; stage < NUM_STAGES; stage++)
+			if (stageTime[stage] != 0)
+				s.append(String.format(", %s %.1f ms", names[stage], getStageTime(stage)));
+		if (sampleStride > 1)
+			s.append(", 1 in ").append(sampleStride).append(" edges sampled");
+		s.append(String.format(", total %.1f ms", getTotalTime()));
+		return s.toString();
+	}
+}
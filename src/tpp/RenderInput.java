@@ -0,0 +1,251 @@
+package tpp;
+
+import java.awt.Color;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.matrix.Matrix;
+
+/**
+ * Everything needed to draw one frame of the view, read from the model on the
+ * event thread when the frame is asked for. The renderer draws the frame from
+ * this alone, so it never reads the live model, which the event thread (and
+ * the pursuit thread) go on changing while it draws.
+ *
+ * Nothing here is changed once it has been made. The arrays of the points are
+ * shared with the {@link PointRenderState} that built them, which makes new
+ * arrays rather than changing these when the model changes.
+ */
+public class RenderInput {
+
+	/** Flags giving the emphasis of each point */
+	static final byte SELECTED = 1;
+	static final byte NEIGHBOUR = 2;
+	static final byte HOVERED = 4;
+
+	/** The point is not filled, ie there is no fill attribute */
+	static final int NO_FILL = -1;
+
+	final ViewSnapshot snapshot;
+
+	final int numPoints;
+
+	// the position of each point in the view, including any noise
+	final double[] x, y;
+
+	// the colour of each point, as ARGB and as an index into the palettes
+	final int[] argb;
+	final int[] colourIndex;
+
+	// the size of each point, as a fraction of the range of marker sizes, or
+	// NaN if it has the default size
+	final double[] sizeFraction;
+
+	final int[] shape;
+
+	// the value of the fill attribute, or NO_FILL
+	final int[] fill;
+
+	final double[] labelSize;
+	final String[] labelText;
+
+	/** Changes whenever the colours of the points do */
+	final int styleVersion;
+
+	final byte[] emphasis;
+
+	/** The order in which to draw the points, so that emphasised ones are on top */
+	final int[] order;
+
+	// the distinct colours of the points, and those colours made transparent
+	// or brighter; and transparent versions of the outline colours
+	final Color[] palette, fadedPalette, brighterPalette;
+	final Color fadedWhite, fadedBlack;
+
+	final ColourScheme colours;
+	final int transparency;
+
+	// what is shown
+	final boolean showAxes, showGraph, showLabels, showClustering, showSeries, showTarget;
+	final boolean arePointsSelected, graphLoaded;
+
+	// the sizes of the markers, and the scale of the model's transform
+	final double markerRadius, scaledMarkerSize, minMarkerSize, markerRange;
+	final double scale;
+
+	final int densityThreshold;
+	final boolean densityByColour;
+
+	// which labels are drawn, and how
+	final boolean nodeLabelColour, highlightedLabels, hoverLabels, selectedLabels;
+	final int[] labelFilterDegree;
+	final int lowerLabelFilterDegree, upperLabelFilterDegree;
+
+	// whether each axis is selected, and the relative means of the selected
+	// points along each axis, or null if none are selected
+	final boolean[] axisSelected;
+	final double[] axisMeans;
+
+	// the decorations, if they are drawn
+	final Dendrogram dendrogram;
+	final Series series;
+	final double[][] target;
+
+	// the edges leaving each node, if the edges are drawn
+	final int numGraphNodes, numEdges;
+	final int[] outOffsets, outTargets;
+	final float[] outWeights;
+
+	/** A copy of the edge model, with its bundles worked out */
+	final EdgeModel edgeModel;
+
+	/**
+	 * The value of the separation attribute of each point, if the edges are
+	 * drawn in bundles or fans
+	 */
+	final int[] separationClass;
+
+	/**
+	 * Read what is needed to draw the given layers from the model, which must
+	 * only be done on the event thread
+	 *
+	 * @param points
+	 *            the arrays of the points, already brought up to date with
+	 *            the model and the snapshot
+	 * @param layers
+	 *            the layers to be drawn, with bit 1 << layer set for each
+	 */
+	RenderInput(ScatterPlotModel spModel, ViewSnapshot snapshot, PointRenderState points, int layers) {
+		this.snapshot = snapshot;
+		numPoints = points.numPoints;
+		x = points.x;
+		y = points.y;
+		argb = points.argb;
+		colourIndex = points.colourIndex;
+		sizeFraction = points.sizeFraction;
+		shape = points.shape;
+		fill = points.fill;
+		labelSize = points.labelSize;
+		labelText = points.labelText;
+		styleVersion = points.styleVersion;
+		emphasis = points.emphasis;
+		order = points.order;
+		palette = points.palette;
+		fadedPalette = points.fadedPalette;
+		brighterPalette = points.brighterPalette;
+		fadedWhite = points.fadedWhite;
+		fadedBlack = points.fadedBlack;
+
+		colours = spModel.getColours();
+		transparency = spModel.getTransparency();
+		PointModel pointModel = spModel.getPointModel();
+		GraphModel graphModel = spModel.getGraphModel();
+		showAxes = spModel.showAxes();
+		showGraph = spModel.showGraph();
+		showLabels = showGraph && pointModel.labels();
+		showClustering = spModel.showHierarchicalClustering();
+		showSeries = spModel.showSeries() && spModel.getSeries() != null;
+		showTarget = spModel.showTarget();
+		arePointsSelected = spModel.arePointsSelected();
+		graphLoaded = spModel.graphLoaded();
+
+		markerRadius = pointModel.getMarkerRadius();
+		scaledMarkerSize = pointModel.getScaledMarkerSize();
+		minMarkerSize = pointModel.getMinMarkerSize();
+		markerRange = pointModel.getMarkerRange();
+		scale = spModel.getTransform().getScaleX();
+		densityThreshold = pointModel.getDensityThreshold();
+		densityByColour = pointModel.densityByColour();
+
+		nodeLabelColour = pointModel.nodeLabelColor();
+		highlightedLabels = pointModel.highlightedLabels();
+		hoverLabels = pointModel.hoverLabels();
+		selectedLabels = pointModel.selectedLabels();
+		labelFilterDegree = (pointModel.filterLabels() && graphModel != null ? graphModel.getLabelFilterDegree()
+				: null);
+		lowerLabelFilterDegree = pointModel.getLowerLabelFilterDegreeBound();
+		upperLabelFilterDegree = pointModel.getUpperLabelFilterDegreeBound();
+
+		if ((layers & (1 << ViewLayers.AXES)) != 0 && showAxes) {
+			axisSelected = new boolean[snapshot.getNumAxes()];
+			for (int i = 0; i < axisSelected.length; i++)
+				axisSelected[i] = spModel.isAxisSelected(i);
+			axisMeans = (spModel.numPointsSelected() > 0 ? spModel.getAttributeMeans() : null);
+		} else {
+			axisSelected = null;
+			axisMeans = null;
+		}
+
+		boolean decorations = (layers & (1 << ViewLayers.DECORATIONS)) != 0;
+		dendrogram = (decorations && showClustering ? spModel.getHierarchicalCluster() : null);
+		series = (decorations && showSeries ? spModel.getSeries() : null);
+		Matrix targetMatrix = spModel.getTarget();
+		target = (decorations && showTarget && targetMatrix != null ? targetMatrix.getArrayCopy() : null);
+
+		Graph graph = spModel.getGraph();
+		if ((layers & (1 << ViewLayers.EDGES)) != 0 && showGraph && graph != null) {
+			numGraphNodes = Math.min(graph.getNumNodes(), numPoints);
+			numEdges = graph.getNumEdges();
+			outOffsets = graph.getOutOffsets();
+			outTargets = graph.getOutTargets();
+			outWeights = graph.getOutWeights();
+			EdgeModel edges = spModel.getEdgeModel();
+			edges.initialise();
+			edgeModel = edges.copy();
+			separationClass = separationClasses(spModel, edgeModel);
+		} else {
+			numGraphNodes = 0;
+			numEdges = 0;
+			outOffsets = null;
+			outTargets = null;
+			outWeights = null;
+			edgeModel = null;
+			separationClass = null;
+		}
+	}
+
+	/** The class of each point, if the edges are drawn by class, otherwise null */
+	private int[] separationClasses(ScatterPlotModel spModel, EdgeModel edgeModel) {
+		Attribute separation = spModel.getSeparationAttribute();
+		if (separation == null
+				|| !(edgeModel.bundledEdges() || edgeModel.fannedEdges() || edgeModel.intelligentEdges()))
+			return null;
+		Instances instances = spModel.getInstances();
+		int[] classes = new int[numPoints];
+		for (int p = 0; p < numPoints; p++)
+			classes[p] = (int) instances.instance(p).value(separation);
+		return classes;
+	}
+
+	/** Whether the layer has anything to draw */
+	public boolean hasLayer(int layer) {
+		switch (layer) {
+		case ViewLayers.EDGES:
+			return showGraph;
+		case ViewLayers.DECORATIONS:
+			return showClustering || showSeries || showTarget;
+		case ViewLayers.LABELS:
+			return showLabels;
+		default:
+			return true;
+		}
+	}
+
+	public ViewSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public boolean isPointSelected(int p) {
+		return (emphasis[p] & SELECTED) != 0;
+	}
+
+	/**
+	 * The area of the marker of a point, in the units of the marker sizes
+	 *
+	 * @param defaultArea
+	 *            the area of a point that has the default size
+	 */
+	double markerArea(int p, double defaultArea) {
+		return (Double.isNaN(sizeFraction[p]) ? defaultArea : minMarkerSize + markerRange * sizeFraction[p]);
+	}
+}
@@ -128,13 +128,18 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	 */
 	public void selectPointsByClassValue(String value,
 			boolean addToExistingSelection) {
-		if (!addToExistingSelection)
-			unselectPoints();
-		for (int i = 0; i < getNumDataPoints(); i++)
-			if (getInstances().instance(i).stringValue(pointModel.getSelectAttribute())
-					.equals(value))
-				selectPoint(i);
-		fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
+		beginBatch();
+		try {
+			if (!addToExistingSelection)
+				unselectPoints();
+			for (int i = 0; i < getNumDataPoints(); i++)
+				if (getInstances().instance(i).stringValue(pointModel.getSelectAttribute())
+						.equals(value))
+					selectPoint(i);
+			fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
+		} finally {
+			commitBatch();
+		}
 	}
 
 	/**
@@ -143,13 +148,18 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	 */
 	public void selectPointsByNumericRange(double min, double max,
 			boolean addToExistingSelection) {
-		if (!addToExistingSelection)
-			unselectPoints();
-		for (int i = 0; i < getNumDataPoints(); i++)
-			if (getInstances().instance(i).value(pointModel.getSelectAttribute()) >= min
-					&& getInstances().instance(i).value(pointModel.getSelectAttribute()) <= max)
-				selectPoint(i);
-		fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
+		beginBatch();
+		try {
+			if (!addToExistingSelection)
+				unselectPoints();
+			for (int i = 0; i < getNumDataPoints(); i++)
+				if (getInstances().instance(i).value(pointModel.getSelectAttribute()) >= min
+						&& getInstances().instance(i).value(pointModel.getSelectAttribute()) <= max)
+					selectPoint(i);
+			fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
+		} finally {
+			commitBatch();
+		}
 	}
 	
 	
@@ -193,13 +203,21 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 
 	/** Move the selected axes by the (dx,dy) */
 	public void moveSelectedAxes(double dx, double dy) {
+		int numSelected = 0;
+		for (int a = 0; a < getNumDataDimensions(); a++)
+			if (isAxisSelected(a))
+				numSelected++;
+		int[] axes = new int[numSelected];
+		double[][] changes = new double[numSelected][];
+		double[] change = new double[] { dx, dy };
+		numSelected = 0;
 		for (int a = 0; a < getNumDataDimensions(); a++) {
 			if (isAxisSelected(a)) {
-				getProjection().set(a, 0, getProjection().get(a, 0) + dx);
-				getProjection().set(a, 1, getProjection().get(a, 1) + dy);
+				axes[numSelected] = a;
+				changes[numSelected++] = change;
 			}
 		}
-		project();
+		moveAxes(axes, changes);
 	}
 
 	// == COLOR SCHEME ===============================
@@ -352,13 +370,18 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 			// projection
 			// NB we have to do this since the Remove filter messes up
 			// references to color attributes etc
-			double[][] oldProjectionValues = getProjection().copy().getArray();
-			initialise(instances, false);
-			// copy back the values of the projection (except those from the
-			// removed attributes)
-			((LinearProjection) getProjection()).setValues(MatrixUtils
-					.removeRows(oldProjectionValues, atx));
-			project();
+			lockView();
+			try {
+				double[][] oldProjectionValues = getProjection().copy().getArray();
+				initialise(instances, false);
+				// copy back the values of the projection (except those from
+				// the removed attributes)
+				((LinearProjection) getProjection()).setValues(MatrixUtils
+						.removeRows(oldProjectionValues, atx));
+				project();
+			} finally {
+				unlockView();
+			}
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -387,18 +410,17 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	public void drawRectangleAroundSelectedPoints() {
 		double xMin = 0, xMax = 0, yMin = 0, yMax = 0;
 		boolean firstSelectedPoint = true;
-		for (int i = 0; i < getNumDataPoints(); i++) {
-			if (isPointSelected(i)) {
-				if (xMin > getView().get(i, 0) || firstSelectedPoint)
-					xMin = getView().get(i, 0);
-				if (xMax < getView().get(i, 0) || firstSelectedPoint)
-					xMax = getView().get(i, 0);
-				if (yMin > getView().get(i, 1) || firstSelectedPoint)
-					yMin = getView().get(i, 1);
-				if (yMax < getView().get(i, 1) || firstSelectedPoint)
-					yMax = getView().get(i, 1);
-				firstSelectedPoint = false;
-			}
+		ViewSnapshot snapshot = getViewSnapshot();
+		for (int i = selectedPoints.nextPoint(0); i >= 0; i = selectedPoints.nextPoint(i + 1)) {
+			if (xMin > snapshot.get(i, 0) || firstSelectedPoint)
+				xMin = snapshot.get(i, 0);
+			if (xMax < snapshot.get(i, 0) || firstSelectedPoint)
+				xMax = snapshot.get(i, 0);
+			if (yMin > snapshot.get(i, 1) || firstSelectedPoint)
+				yMin = snapshot.get(i, 1);
+			if (yMax < snapshot.get(i, 1) || firstSelectedPoint)
+				yMax = snapshot.get(i, 1);
+			firstSelectedPoint = false;
 		}
 		// recall that minY is the top of the rectangle and maxY is the bottom
 		// margin is a percentage of the maximum dimension
@@ -412,16 +434,17 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	public void drawRectangleAroundSelectedAxes() {
 		double xMin = 0, xMax = 0, yMin = 0, yMax = 0;
 		boolean firstSelectedAxis = true;
-		for (int i = 0; i < getNumDataDimensions(); i++) {
+		ViewSnapshot snapshot = getViewSnapshot();
+		for (int i = 0; i < snapshot.getNumAxes(); i++) {
 			if (isAxisSelected(i)) {
-				if (xMin > getProjection().get(i, 0) || firstSelectedAxis)
-					xMin = getProjection().get(i, 0);
-				if (xMax < getProjection().get(i, 0) || firstSelectedAxis)
-					xMax = getProjection().get(i, 0);
-				if (yMin > getProjection().get(i, 1) || firstSelectedAxis)
-					yMin = getProjection().get(i, 1);
-				if (yMax < getProjection().get(i, 1) || firstSelectedAxis)
-					yMax = getProjection().get(i, 1);
+				if (xMin > snapshot.getAxis(i, 0) || firstSelectedAxis)
+					xMin = snapshot.getAxis(i, 0);
+				if (xMax < snapshot.getAxis(i, 0) || firstSelectedAxis)
+					xMax = snapshot.getAxis(i, 0);
+				if (yMin > snapshot.getAxis(i, 1) || firstSelectedAxis)
+					yMin = snapshot.getAxis(i, 1);
+				if (yMax < snapshot.getAxis(i, 1) || firstSelectedAxis)
+					yMax = snapshot.getAxis(i, 1);
 				firstSelectedAxis = false;
 			}
 		}
@@ -435,9 +458,9 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	/** Select any points within the rectangle */
 	public void selectPointsByRectangle() {
 		if (rectangle != null) {
-			for (int i = 0; i < getNumDataPoints(); i++)
-				selectedPoints[i] = rectangle.contains(getView().get(i, 0),
-						getView().get(i, 1));
+			ViewSnapshot snapshot = getViewSnapshot();
+			for (int i = 0; i < snapshot.getNumPoints(); i++)
+				selectedPoints.set(i, rectangle.contains(snapshot.get(i, 0), snapshot.get(i, 1)));
 			setAttributeMeans();
 			fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
 		}
@@ -446,9 +469,9 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	/** Select any axes within the rectangle */
 	public void selectAxesByRectangle() {
 		if (rectangle != null) {
-			for (int a = 0; a < getNumDataDimensions(); a++)
-				isAxisSelected[a] = rectangle.contains(getProjection()
-						.get(a, 0), getProjection().get(a, 1));
+			ViewSnapshot snapshot = getViewSnapshot();
+			for (int a = 0; a < snapshot.getNumAxes(); a++)
+				isAxisSelected[a] = rectangle.contains(snapshot.getAxis(a, 0), snapshot.getAxis(a, 1));
 			fireModelChanged(TPPModelEvent.AXIS_SELECTION_CHANGED);
 		}
 	}
@@ -617,31 +640,37 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 	public AffineTransform getTransform(double width, double height) {
 		AffineTransform transform = null;
 
-		// only rescale if the panel is not zero
-		if (width > 0 && height > 0) {
-
-			// first scale the projection so that it fits into the current
-			// window
-			transform = fitPointsToWindowAtCurrentProjection(width, height);
-			// NB this can produce large/small scaling factors which can
-			// cause problems, so adjust the scale so that it is within
-			// reasonable limits
-			// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6294396
-			// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4982427
+		// the rescaling may change the projection several times, but the
+		// listeners need only hear about it once; and the view it is fitted to
+		// must not change in between
+		lockView();
+		try {
+			// only rescale if the panel is not zero
+			if (width > 0 && height > 0) {
 
-			while (transform.getScaleX() > 100) {
-				projection.timesEquals(2);
-				project();
-				transform = fitPointsToWindowAtCurrentProjection(width, height);
-			}
-			while (transform.getScaleX() < 1) {
-				projection.timesEquals(0.5);
-				project();
+				// first scale the projection so that it fits into the current
+				// window
 				transform = fitPointsToWindowAtCurrentProjection(width, height);
+				// NB this can produce large/small scaling factors which can
+				// cause problems, so adjust the scale so that it is within
+				// reasonable limits
+				// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6294396
+				// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4982427
+
+				while (transform.getScaleX() > 100) {
+					scaleProjection(2);
+					transform = fitPointsToWindowAtCurrentProjection(width, height);
+				}
+				while (transform.getScaleX() < 1) {
+					scaleProjection(0.5);
+					transform = fitPointsToWindowAtCurrentProjection(width, height);
+				}
 			}
+			// System.out.println("transform changed");
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
 		}
-		// System.out.println("transform changed");
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
 		return transform;
 	}
 
@@ -662,7 +691,12 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		clone.projection = new LinearProjection(projection);
+		lockView();
+		try {
+			clone.projection = new LinearProjection(projection);
+		} finally {
+			unlockView();
+		}
 		clone.project();
 		return clone;
 	}
@@ -684,8 +718,13 @@ public class ScatterPlotModel extends TPPModel implements Cloneable {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
-			projection = previous.projection;
-			project();
+			lockView();
+			try {
+				projection = previous.projection;
+				project();
+			} finally {
+				unlockView();
+			}
 			fireModelChanged(TPPModelEvent.DATA_STRUCTURE_CHANGED);
 		}
 	}
@@ -25,15 +25,11 @@ import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
-import java.awt.geom.Line2D.Double;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
-import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.Iterator;
 import java.util.Random;
-import java.util.TreeSet;
 import java.util.Vector;
 
 import javax.swing.JComponent;
@@ -42,7 +38,6 @@ import javax.swing.JToolTip;
 import javax.swing.SwingUtilities;
 
 import weka.core.Attribute;
-import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.matrix.Matrix;
 
@@ -70,6 +65,15 @@ public class ScatterPlotViewPanel extends JPanel implements
 
 	/** whether to add noise to the view */
 	private boolean showNoise = false;
+
+	/** What is needed to draw each point, kept up to date with the model */
+	private PointRenderState pointRenderState;
+
+	/** The cached layers of the view drawn on the canvas */
+	private ViewLayers layers;
+
+	/** Held while drawing a layer of the view */
+	private final Object renderLock = new Object();
 	
 	ScatterPlotViewPanelCanvas canvas;
 
@@ -101,9 +105,15 @@ public class ScatterPlotViewPanel extends JPanel implements
 	 */
 	public void setModel(ScatterPlotModel spModel) {
 		this.spModel = spModel;
+		if (layers != null) {
+			layers.dispose();
+			layers = null;
+		}
 		if (spModel == null)
 			removeAll();
 		else {
+			pointRenderState = new PointRenderState(spModel);
+			layers = new ViewLayers(spModel, canvas, canvas);
 			spModel.addListener(this);
 			spModel.setColours(ColourScheme.LIGHT);
 			spModel.setNoise();
@@ -113,7 +123,7 @@ public class ScatterPlotViewPanel extends JPanel implements
 
 	}
 
-	class ScatterPlotViewPanelCanvas extends JComponent {
+	class ScatterPlotViewPanelCanvas extends JComponent implements ViewLayers.Painter {
 
 		double translateX;
 		double translateY;
@@ -124,6 +134,9 @@ public class ScatterPlotViewPanel extends JPanel implements
 
 		private AffineTransform at;
 		private AffineTransform saveTransform;
+
+		/** The transform from data space to the component */
+		private AffineTransform view;
 		private AffineTransform currentZPTransform;
 
 		ScatterPlotViewPanelCanvas() {
@@ -139,7 +152,22 @@ public class ScatterPlotViewPanel extends JPanel implements
 			Graphics2D g2 = (Graphics2D) g;
 			g2 = setZPTransform(g2);
 
-			paintView(g2, at, getHeight(), getWidth());
+			if (spModel != null && spModel.getData() != null) {
+				prepareView(at, getHeight());
+
+				// composite the cached layers, then draw the rectangle on top
+				g2.setTransform(saveTransform);
+				layers.paint(g2, view, getWidth(), getHeight(), showNoise);
+				g2.setTransform(at);
+				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_ON);
+				g2.setStroke(new BasicStroke((float) (LINE_WIDTH * 2 / at.getScaleX())));
+				if (spModel.rectangle != null)
+					spModel.rectangle.draw(g2);
+
+				if (showNoise)
+					spModel.updateNoise();
+			}
 
 			// make sure you restore the original transform or else the drawing
 			// of borders and other components might be messed up
@@ -154,26 +182,28 @@ public class ScatterPlotViewPanel extends JPanel implements
 			g2.setColor(spModel.getColours().getBackgroundColor());
 			g2.fillRect(0, 0, getWidth(), getHeight());
 
-
-			// We need to add new transforms to the existing
-			// transform, rather than creating a new transform from scratch.
-			// If we create a transform from scratch, we will
-			// will start from the upper left of a JFrame,
-			// rather than from the upper left of our component
-			at = new AffineTransform(saveTransform);
+			view = new AffineTransform();
 
 			// The zooming transformation. Notice that it will be performed
 			// after the panning transformation, zooming the panned scene,
 			// rather than the original scene
-			at.translate(mouseX, mouseY);
-			at.scale(scale, scale);
-			at.translate(-mouseX, -mouseY);
+			view.translate(mouseX, mouseY);
+			view.scale(scale, scale);
+			view.translate(-mouseX, -mouseY);
 
 			// The panning transformation
-			at.translate(translateX, translateY);
+			view.translate(translateX, translateY);
 
 			if (spModel != null)
-				at.concatenate(spModel.getTransform());
+				view.concatenate(spModel.getTransform());
+
+			// We need to add new transforms to the existing
+			// transform, rather than creating a new transform from scratch.
+			// If we create a transform from scratch, we will
+			// will start from the upper left of a JFrame,
+			// rather than from the upper left of our component
+			at = new AffineTransform(saveTransform);
+			at.concatenate(view);
 
 			g2.setTransform(at);
 
@@ -198,9 +228,10 @@ public class ScatterPlotViewPanel extends JPanel implements
 					/ spModel.getTransform().getScaleX();
 			double distance;
 			Vector<Integer> points = new Vector<Integer>();
-			for (int i = 0; i < spModel.getNumDataPoints(); i++) {
-				distance = pt.distance(new Point2D.Double(spModel.getView()
-						.get(i, 0), spModel.getView().get(i, 1)));
+			ViewSnapshot snapshot = spModel.getViewSnapshot();
+			for (int i = 0; i < snapshot.getNumPoints(); i++) {
+				distance = pt.distance(new Point2D.Double(snapshot.get(i, 0),
+						snapshot.get(i, 1)));
 				if (distance < margin)
 					points.add(new Integer(i));
 			}
@@ -220,10 +251,10 @@ public class ScatterPlotViewPanel extends JPanel implements
 					/ spModel.getTransform().getScaleX();
 			double distance;
 			Vector<Integer> axes = new Vector<Integer>();
-			for (int i = 0; i < spModel.getNumDataDimensions(); i++) {
-				distance = pt.distance(new Point2D.Double(spModel
-						.getProjection().get(i, 0), spModel.getProjection()
-						.get(i, 1)));
+			ViewSnapshot snapshot = spModel.getViewSnapshot();
+			for (int i = 0; i < snapshot.getNumAxes(); i++) {
+				distance = pt.distance(new Point2D.Double(snapshot.getAxis(i, 0),
+						snapshot.getAxis(i, 1)));
 				if (distance < margin)
 					axes.add(new Integer(i));
 			}
@@ -242,15 +273,6 @@ public class ScatterPlotViewPanel extends JPanel implements
 		public void paintView(Graphics2D g2, AffineTransform transform,
 				int width, int height) {
 			
-			PointModel pointModel = spModel.getPointModel();
-			GraphModel graphModel = spModel.getGraphModel();
-			pointModel.setScaledMarkerSize(width);
-			pointModel.setMinMarkerSize();
-			pointModel.setMarkerRange();
-			pointModel.setMarkerRadius(transform);
-			
-			double origin = pointModel.getScaledMarkerSize();
-
 			if (spModel != null && spModel.getData() != null) {
 
 				// if a transform is specified then use it, saving the original
@@ -261,119 +283,17 @@ public class ScatterPlotViewPanel extends JPanel implements
 				} else {
 					transform = g2.getTransform();
 				}
-				BasicStroke strokeWidth = new BasicStroke(
-						(float) (LINE_WIDTH / transform.getScaleX()));
-				g2.setStroke(strokeWidth);
+				prepareView(transform, width);
 				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 						RenderingHints.VALUE_ANTIALIAS_ON);
 
-				// set the transparency level for when the graph is shown
-				int transparency;
-				if (spModel.arePointsSelected())
-					transparency = spModel.getTransparencyLevel();
-				else
-					transparency = 255;
-				
-				spModel.setTransparency(transparency);
-
-				// If the axes are shown and there are points currently selected
-				// then calculate mean attribute values for those selected
-				// points,
-				// compared to the overall attribute means
-				// This is then used to color the axes
-				//
-				// relativeMeanForSelected = L( ats-at / at )
-				// where ats = mean of this attribute for the selected points
-				// and at = mean of this attribute for all points
-				// L = logistic squashing function
-
-				int numPointsSelected = spModel.numPointsSelected();
-				double[] relativeMeanForSelected = null;
-
-
-				if (spModel.showAxes() && (numPointsSelected > 0))
-					relativeMeanForSelected = spModel.getAttributeMeans();
-				
-				// plot the axes or just the origin
-				if (spModel.showAxes())
-					drawAxes(g2, spModel.getPointModel().getMarkerRadius(), numPointsSelected,
-							relativeMeanForSelected);
-				else {
-					double originSize = origin / transform.getScaleX();
-					g2.setColor(spModel.getColours().getAxesColor());
-					g2.draw(new Line2D.Double(-originSize, 0, originSize, 0));
-					g2.draw(new Line2D.Double(0, -originSize, 0, originSize));
-				}
-
-				if (spModel.showGraph()) {
-					ArrayList<Connection> allConnections = spModel.getGraph().getAllConnections();
-					EdgeModel edgeModel = spModel.getEdgeModel();
-					edgeModel.initialise();
-					
-					for (int i = 0; i < allConnections.size(); i++) {
-						Connection cnxn = allConnections.get(i);
-						Edge edge = new Edge(cnxn, edgeModel, spModel);
-						edge.drawEdge(g2, strokeWidth.getLineWidth());
-					}
-					
-//					double[][] clusters = edgeModel.getClusterEdgesDrawn();
-//					if(clusters != null) {
-//						for (int i = 0; i < clusters.length; i++) {
-//							for (int j = 0; j < clusters.length; j++) {
-//								System.out.print(clusters[i][j] + ", ");
-//							}
-//							System.out.print("\n");
-//						}
-//					}
-						
-				}
-					
-				
-				// draw clustering
-				if (spModel.showHierarchicalClustering())
-					drawClustering(g2);
-				
-				// draw series lines;
-				if (spModel.showSeries() && (spModel.getSeries() != null)) {
-					drawSeries(g2, pointModel.getMarkerRadius());
-				}
-
-				// draw the target
-				if (spModel.showTarget())
-					drawTarget(g2, pointModel.getMarkerRadius());
-
-				g2.setStroke(new BasicStroke((float) (LINE_WIDTH * 2 / transform.getScaleX())));
-
-				// draw the points/nodes
-				if (spModel.showGraph()) {
-					
-					ArrayList<Integer> allPoints = orderPoints(graphModel);
-					Point[] newPoints = new Point[allPoints.size()];
-					
-					for (int p : allPoints) {
-						Point point = new Point(spModel, pointModel, p);
-						newPoints[p] = point;
-						point.drawPoint(g2, transform);
-					}
-					
-					if (pointModel.labels()) {
-						for (int p : allPoints) {
-							Point point = newPoints[p];
-							// add labels to the points on the graph
-							if(pointModel.filterLabels()){
-								if ((graphModel.getLabelFilterDegree()[p] >= pointModel.getLowerLabelFilterDegreeBound())
-										&& (graphModel.getLabelFilterDegree()[p] <= pointModel.getUpperLabelFilterDegreeBound()))
-										point.drawLabel(g2, transform);
-							} else
-								point.drawLabel(g2, transform);
-						}
-					}
-				} else {
-					for (int p = 0; p < spModel.getNumDataPoints(); p++) {
-						Point point = new Point(spModel, pointModel, p);
-						point.drawPoint(g2, transform);
-					}
-				}
+				// read the view once, so the whole frame is drawn from the
+				// same view even if the pursuit thread changes it meanwhile
+				int all = (1 << ViewLayers.NUM_LAYERS) - 1;
+				RenderInput input = capture(spModel.getViewSnapshot(), all);
+				for (int layer = 0; layer < ViewLayers.NUM_LAYERS; layer++)
+					if (input.hasLayer(layer))
+						paintLayer(layer, g2, transform, input, null);
 
 				// draw the rectangle?
 				if (spModel.rectangle != null)
@@ -387,43 +307,107 @@ public class ScatterPlotViewPanel extends JPanel implements
 					spModel.updateNoise();
 			}
 		}
-	}
 
 		/**
-		 * Orders the points so that those nodes that are selected and those nodes connected to
-		 * those that are selected in the graph are drawn first. 
-		 * @return  list of all points
+		 * Set the sizes of the markers for the given transform and size of
+		 * view, and the transparency of the points
 		 */
-	private ArrayList<Integer> orderPoints(GraphModel graphModel) {
-			ArrayList<Integer> selectedPoints = new ArrayList<Integer>();
-			ArrayList<Integer> linkedPoints = new ArrayList<Integer>();
-			ArrayList<Integer> backgroundPoints = new ArrayList<Integer>();
-			for (int i = 0; i < spModel.getNumDataPoints(); i++) {
-				if (spModel.isPointSelected(i))
-					selectedPoints.add(i);
-				else if (graphModel.neighbourSelected(i)
-						|| spModel.isPointHovered(i))
-					linkedPoints.add(i);
-				else
-					backgroundPoints.add(i);
+		private void prepareView(AffineTransform transform, int width) {
+			PointModel pointModel = spModel.getPointModel();
+			pointModel.setScaledMarkerSize(width);
+			pointModel.setMinMarkerSize();
+			pointModel.setMarkerRange();
+			pointModel.setMarkerRadius(transform);
+
+			// set the transparency level for when the graph is shown
+			if (spModel.arePointsSelected())
+				spModel.setTransparency(spModel.getTransparencyLevel());
+			else
+				spModel.setTransparency(255);
+		}
+
+		public RenderInput capture(ViewSnapshot snapshot, int layers) {
+			pointRenderState.update(snapshot, showNoise);
+			return new RenderInput(spModel, snapshot, pointRenderState, layers);
+		}
+
+		/**
+		 * Draw one layer of the view from what was read from the model when
+		 * it was asked for. Layers may be drawn by the renderer thread at the
+		 * same time as the view is exported, so only one layer is drawn at a
+		 * time.
+		 */
+		public void paintLayer(int layer, Graphics2D g2,
+				AffineTransform transform, RenderInput input,
+				RenderFrame frame) {
+			synchronized (renderLock) {
+				BasicStroke strokeWidth = new BasicStroke(
+						(float) (LINE_WIDTH / transform.getScaleX()));
+				g2.setStroke(strokeWidth);
+
+				switch (layer) {
+				case ViewLayers.AXES:
+					// plot the axes or just the origin
+					if (input.showAxes)
+						drawAxes(g2, input);
+					else {
+						double originSize = input.scaledMarkerSize / transform.getScaleX();
+						g2.setColor(input.colours.getAxesColor());
+						g2.draw(new Line2D.Double(-originSize, 0, originSize, 0));
+						g2.draw(new Line2D.Double(0, -originSize, 0, originSize));
+					}
+					break;
+
+				case ViewLayers.EDGES:
+					Edge edge = new Edge(input);
+					edge.drawEdges(g2, strokeWidth.getLineWidth(), frame);
+					break;
+
+				case ViewLayers.DECORATIONS:
+					// draw clustering
+					if (input.dendrogram != null)
+						drawClustering(g2, input);
+
+					// draw series lines;
+					if (input.series != null)
+						drawSeries(g2, input);
+
+					// draw the target
+					if (input.target != null)
+						drawTarget(g2, input);
+					break;
+
+				case ViewLayers.NODES:
+					g2.setStroke(new BasicStroke((float) (LINE_WIDTH * 2 / transform.getScaleX())));
+
+					// draw the density of the points if there are too many
+					// in the view to draw them one by one (but always draw
+					// them all when exporting the view)
+					if (frame == null
+							|| !pointRenderState.drawDensity(g2, transform, input, frame.getImageWidth(),
+									frame.getImageHeight()))
+						pointRenderState.drawPoints(g2, transform, input);
+					break;
+
+				case ViewLayers.LABELS:
+					pointRenderState.drawLabels(g2, transform, input);
+					break;
+				}
 			}
-			ArrayList<Integer> allPoints = new ArrayList<Integer>();
-			allPoints.addAll(backgroundPoints);
-			allPoints.addAll(linkedPoints);
-			allPoints.addAll(selectedPoints);
-			return allPoints;
 		}
-	
-	private void drawTarget(Graphics2D g2, double markerRadius) {
+	}
+
+	private void drawTarget(Graphics2D g2, RenderInput input) {
 		double x;
 		double y;
+		double markerRadius = input.markerRadius;
 		Shape circle;
 		int i;
 		{
-			g2.setColor(spModel.getColours().getAxesColor());
-			for (i = 0; i < spModel.getNumDataPoints(); i++) {
-				x = spModel.getTarget().get(i, 0);
-				y = spModel.getTarget().get(i, 1);
+			g2.setColor(input.colours.getAxesColor());
+			for (i = 0; i < Math.min(input.numPoints, input.target.length); i++) {
+				x = input.target[i][0];
+				y = input.target[i][1];
 				circle = new Ellipse2D.Double(x - markerRadius, y
 						- markerRadius, markerRadius * 2, markerRadius * 2);
 				g2.draw(circle);
@@ -431,34 +415,53 @@ public class ScatterPlotViewPanel extends JPanel implements
 		}
 	}
 	
-	private void drawAxes(Graphics2D g2, double markerRadius,
-			int numPointsSelected, double[] relativeMeanForSelected) {
+	/**
+	 * Draw the axes. If there are points selected then each axis is coloured
+	 * by the mean value of its attribute for those points, compared to the
+	 * overall mean of the attribute
+	 *
+	 * relativeMeanForSelected = L( ats-at / at )
+	 * where ats = mean of this attribute for the selected points
+	 * and at = mean of this attribute for all points
+	 * L = logistic squashing function
+	 */
+	private void drawAxes(Graphics2D g2, RenderInput input) {
+		ViewSnapshot snapshot = input.snapshot;
+		double markerRadius = input.markerRadius;
+		double[] relativeMeanForSelected = input.axisMeans;
+		ColourScheme colours = input.colours;
 		int i;
 		{
-			for (i = 0; i < spModel.getNumDataDimensions(); i++) {
+			for (i = 0; i < snapshot.getNumAxes(); i++) {
 
 				// If there are any point(s) selected then color the axes by
 				// their (average) weight with the selected point(s)
-				if (numPointsSelected > 0)
-					g2.setColor(spModel.getColours().getColorFromSpectrum(
+				if (relativeMeanForSelected != null)
+					g2.setColor(colours.getColorFromSpectrum(
 							relativeMeanForSelected[i], 0, 1));
 				// otherwise highlight the axis if it is selected
 				else
-					g2.setColor((spModel.isAxisSelected(i) ? spModel
-							.getColours().getForegroundColor() : spModel
-							.getColours().getAxesColor()));
-				g2.draw(new Line2D.Double(0, 0, spModel.getProjection().get(i,
-						0), spModel.getProjection().get(i, 1)));
-				if (spModel.isAxisSelected(i)) {
-					g2.fill(new Ellipse2D.Double(spModel.getProjection().get(i,
-							0)
-							- markerRadius, spModel.getProjection().get(i, 1)
+					g2.setColor((input.axisSelected[i] ? colours
+							.getForegroundColor() : colours.getAxesColor()));
+				g2.draw(new Line2D.Double(0, 0, snapshot.getAxis(i, 0), snapshot
+						.getAxis(i, 1)));
+				if (input.axisSelected[i]) {
+					g2.fill(new Ellipse2D.Double(snapshot.getAxis(i, 0)
+							- markerRadius, snapshot.getAxis(i, 1)
 							- markerRadius, markerRadius * 2, markerRadius * 2));
 				}
 			}
 		}
 	}
 	
+	/**
+	 * The cached layers of the view, which give the timing of the frames
+	 * drawn in the background
+	 */
+	public ViewLayers getViewLayers() {
+		return layers;
+	}
+
 	/** Whether to add noise to the current view */
 	public void addNoise(boolean showNoise) {
 		this.showNoise = showNoise;
@@ -467,9 +470,15 @@ public class ScatterPlotViewPanel extends JPanel implements
 		} else
 			// reset noise to null
 			spModel.setNoise();
+		if (layers != null)
+			layers.invalidateAll();
 	}
 
 	public void modelChanged(TPPModelEvent e) {
+		if (pointRenderState != null)
+			pointRenderState.modelChanged(e.getType());
+		if (layers != null)
+			layers.modelChanged(e.getType());
 		repaint();
 	}
 
@@ -597,82 +606,45 @@ public class ScatterPlotViewPanel extends JPanel implements
 
 	}
 
-	private void drawClustering(Graphics2D g2) {
-		// recursively draw lines between the centroids of each cluster
-		// nb this assumes the this is a binary HC -- ie that each
-		// cluster contains two members
-		g2.setColor(spModel.getColours().getAxesColor());
-		HierarchicalCluster cluster = spModel.getHierarchicalCluster();
-		drawClusterArc(cluster, g2);
+	private void drawClustering(Graphics2D g2, RenderInput input) {
+		// draw a line between the centroids of the two clusters joined by
+		// each merge
+		g2.setColor(input.colours.getAxesColor());
+		Dendrogram dendrogram = input.dendrogram;
+		double[][] centroids = dendrogram.getViewCentroids(input.snapshot);
+		if (centroids == null)
+			return;
+		double[] p0, p1;
+		for (int k = 0; k < dendrogram.getNumMerges(); k++) {
+			p0 = centroids[dendrogram.getLeft(k)];
+			p1 = centroids[dendrogram.getRight(k)];
+			g2.draw(new Line2D.Double(p0[0], p0[1], p1[0], p1[1]));
+		}
 	}
 
-	private void drawSeries(Graphics2D g2, double markerRadius) {
+	private void drawSeries(Graphics2D g2, RenderInput input) {
 		double x1;
 		double y1;
 		double x2;
 		double y2;
 		Line2D.Double line;
-		int i;
-		g2.setColor(spModel.getColours().getAxesColor());
-		Iterator<TreeSet<Instance>> allSeries = spModel.getSeries()
-				.getAllSeries().values().iterator();
-		Iterator<Instance> nextSeries;
-		Matrix noise = spModel.getNoise();
-		// for all the series
-		while (allSeries.hasNext()) {
-			nextSeries = allSeries.next().iterator();
-			if (nextSeries.hasNext()) {
-
-				// find the start point
-				i = spModel.indexOf(nextSeries.next());
-				x1 = spModel.getView().get(i, 0) + noise.get(i, 0);
-				y1 = spModel.getView().get(i, 1) + noise.get(i, 1);
-				while (nextSeries.hasNext()) {
-
-					// and draw a line and arrow head to the next point
-					i = spModel.indexOf(nextSeries.next());
-					x2 = spModel.getView().get(i, 0) + noise.get(i, 0);
-					y2 = spModel.getView().get(i, 1) + noise.get(i, 1);
-					line = new Line2D.Double(x1, y1, x2, y2);
-					g2.draw(line);
-					g2.fill(MarkerFactory.buildArrowHead(line, markerRadius,
-							true));
-					x1 = x2;
-					y1 = y2;
-				}
+		int next;
+		g2.setColor(input.colours.getAxesColor());
+		Series series = input.series;
+		// draw a line and arrow head from each point to the next in its series
+		for (int i = 0; i < input.numPoints; i++) {
+			next = series.next(i);
+			if (next != -1) {
+				x1 = input.x[i];
+				y1 = input.y[i];
+				x2 = input.x[next];
+				y2 = input.y[next];
+				line = new Line2D.Double(x1, y1, x2, y2);
+				g2.draw(line);
+				g2.fill(MarkerFactory.buildArrowHead(line, input.markerRadius,
+						true));
 			}
 		}
 	}
 
-	/**
-	 * Recursively draw an arc between the centroids of the members of this
-	 * (binary) cluster
-	 * 
-	 * @param g2
-	 */
-	private void drawClusterArc(HierarchicalCluster cluster, Graphics2D g2) {
-		
-		// if this cluster just contains another cluster then draw that
-		if (cluster.size() == 1
-				&& cluster.get(0) instanceof HierarchicalCluster)
-			drawClusterArc((HierarchicalCluster) cluster.get(0), g2);
-
-		// if this cluster contains two subclusters then draw arc between their
-		// centroids
-		if (cluster.size() == 2) {
-			HierarchicalCluster c0, c1;
-			Matrix p0, p1;
-			c0 = (HierarchicalCluster) cluster.get(0);
-			c1 = (HierarchicalCluster) cluster.get(1);
-			p0 = spModel.projection.project(c0.getCentroid());
-			p1 = spModel.projection.project(c1.getCentroid());
-			Double line = new Line2D.Double(p0.get(0, 0), p0.get(0, 1), p1.get(
-					0, 0), p1.get(0, 1));
-			g2.draw(line);
-			drawClusterArc(c0, g2);
-			drawClusterArc(c1, g2);
-		}
-
-	}
-
-}
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package tpp;
 
 import weka.core.Attribute;
+import weka.core.Instances;
 import weka.core.matrix.Matrix;
 
 /**
@@ -20,10 +21,38 @@ public class SeparatePoints implements PerturbationPursuit {
 
 	protected TPPModel model;
 
+	/** Finds the movements for unsupervised separation */
+	private AttractionRepulsion forces = new AttractionRepulsion();
+
+	/** Finds the movements for separation by a numeric attribute */
+	private NumericSeparation numericForces = new NumericSeparation();
+
+	// the values of the numeric separation attribute, what they were taken
+	// from, and the quantities derived from them
+	private Attribute numericAttribute;
+	private Instances numericInstances;
+	private int numericDataEpoch;
+	private double[] numericValues, numericMeanDifferences;
+	private double velocity;
+
 	public SeparatePoints(TPPModel model) {
 		this.model = model;
 	};
 
+	/**
+	 * Set how closely the forces between points are approximated when there
+	 * is no separation attribute, or it is numeric (see AttractionRepulsion and
+	 * NumericSeparation). Zero compares every pair of points exactly.
+	 */
+	public void setTheta(double theta) {
+		forces = new AttractionRepulsion(theta);
+		numericForces = new NumericSeparation(theta);
+	}
+
+	public double getTheta() {
+		return forces.getTheta();
+	}
+
 	/**
 	 * Find a view that better separates the points
 	 */
@@ -42,6 +71,14 @@ public class SeparatePoints implements PerturbationPursuit {
 
 	}
 
+	public double getError() {
+		return model.getPursuitError();
+	}
+
+	public double getDisplacement() {
+		return model.getPursuitDisplacement();
+	}
+
 	/**
 	 * Perform unsupervised feature selection of the data using an
 	 * attraction-repulsion model
@@ -53,31 +90,7 @@ public class SeparatePoints implements PerturbationPursuit {
 		if (model.getNumViewDimensions() != 2)
 			throw new TPPException("this method is only implented for 2-dimensional output spaces");
 
-		int n = model.getNumDataPoints();
-		double[][] aView = model.getView().getArray();
-		double[][] movement = new double[model.getNumDataPoints()][2];
-		double d;
-
-		// find the mean distance between points
-		double total = 0;
-		for (int i = 0; i < n; i++)
-			for (int j = 0; j < i; j++)
-				total += Math.sqrt(Math.pow(aView[i][X] - aView[j][X], 2) + Math.pow(aView[i][Y] - aView[j][Y], 2));
-
-		double mean = total / (0.5 * n * (n - 1));
-		double force;
-
-		// attract/repulse each point from each other
-		for (int i = 0; i < n; i++) {
-			for (int j = 0; j < n; j++) {
-				if (i != j) {
-					d = Math.sqrt(Math.pow(aView[i][X] - aView[j][X], 2) + Math.pow(aView[i][Y] - aView[j][Y], 2));
-					force = (mean - d) / mean;
-					movement[i][X] += (aView[j][X] - aView[i][X]) * force;
-					movement[i][Y] += (aView[j][Y] - aView[i][Y]) * force;
-				}
-			}
-		}
+		double[][] movement = forces.movement(model.getView().getArray());
 		model.setTarget(model.getView().plus(new Matrix(movement)));
 		model.pursueTarget();
 	}
@@ -86,94 +99,59 @@ public class SeparatePoints implements PerturbationPursuit {
 		if (model.getNumViewDimensions() != 2)
 			throw new TPPException("this method is only implented for 2-dimensional output spaces");
 
-		Matrix perturbation = new Matrix(model.getNumDataPoints(), 2);
+		if (separationAttribute != numericAttribute || model.instances != numericInstances
+				|| model.getDataEpoch() != numericDataEpoch)
+			cacheNumericValues();
+
+		double[][] movement = numericForces.movement(model.getView().getArray(), numericValues,
+				numericMeanDifferences);
+
+		// And normalise the movement to get the perturbation of the target
+		for (int i = 0; i < movement.length; i++) {
+			movement[i][X] /= velocity;
+			movement[i][Y] /= velocity;
+		}
+		model.getTarget().plusEquals(new Matrix(movement));
+		model.pursueTarget();
 
-		double dValue, dValueMean;
+	}
+
+	/**
+	 * Copy the values of the separation attribute out of the instances, and
+	 * find the mean difference in value between each point and all others
+	 * (mean|f_i-f_j|), which don't change while the view is pursued
+	 */
+	private void cacheNumericValues() {
 		int n = model.getNumDataPoints();
-		System.out.println("Variance of separation attribute = " + model.instances.variance(separationAttribute));
+		numericValues = new double[n];
+		for (int i = 0; i < n; i++)
+			numericValues[i] = model.instances.instance(i).value(separationAttribute);
+		numericMeanDifferences = NumericSeparation.meanAbsoluteDifferences(numericValues);
 
 		/**
 		 * fairly arbitrary number for reducing the size of teh perturbation.
 		 * Adjust at will.
 		 */
-		double velocity = model.instances.variance(separationAttribute);
-
-		double dX, dY, dXY;
-		double dXNorm, dYNorm;
-		double[] dTarget = new double[2];
-
-		// For each point (x_i)
-		for (int i = 0; i < n; i++) {
-
-			// Find the mean difference in value between this point and all
-			// others (mean|f_i-f_j|)
-			dValue = 0;
-			for (int j = 0; j < n; j++)
-				dValue += abs(model.instances.instance(i).value(separationAttribute)
-						- model.instances.instance(j).value(separationAttribute));
-			dValueMean = dValue / n;
-
-			// For every other point (x_j)
-			dTarget[X] = 0;
-			dTarget[Y] = 0;
-			for (int j = 0; j < n; j++) {
-				if (i != j) {
-					// find the unit vector pointing away from that other point
-					// (x_i-x_j)/|x_i-x_j|
-					dX = model.getView().get(i, X) - model.getView().get(j, X);
-					dY = model.getView().get(i, Y) - model.getView().get(j, Y);
-					dXY = Math.sqrt((dX * dX) + (dY * dY));
-					dXNorm = dX / dXY;
-					dYNorm = dY / dXY;
-
-					// and move the point away or towards it, depending on the
-					// difference in value: the bigger the difference in value,
-					// the greater the movement away form the other objects
-					dValue = model.instances.instance(i).value(separationAttribute)
-							- model.instances.instance(j).value(separationAttribute);
-					dTarget[X] += dXNorm * (dValue - dValueMean);
-					dTarget[Y] += dYNorm * (dValue - dValueMean);
-				}
-			}
-
-			// And normalise the movement to get the perturbation of the target
-			perturbation.set(i, X, dTarget[X] / velocity);
-			perturbation.set(i, Y, dTarget[Y] / velocity);
-
-		}
-
-		model.getTarget().plusEquals(perturbation);
-		model.pursueTarget();
+		velocity = model.instances.variance(separationAttribute);
 
+		numericAttribute = separationAttribute;
+		numericInstances = model.instances;
+		numericDataEpoch = model.getDataEpoch();
 	}
 
 	private void separateByClassification() throws TPPException {
 
 		Matrix perturbation = new Matrix(model.getNumDataPoints(), model.getNumViewDimensions());
 
-		// 1. Find the centroids of the classes:
-		// TODO we don't need to calculate the centroids in the view each time.
-		// just calculate the centroids in the data and then project
-		double[][] centroids = new double[separationAttribute.numValues()][model.getNumViewDimensions()];
-		// first total up the positions for each class
-		double[] numPoints = new double[separationAttribute.numValues()];
+		// 1. Find the centroids of the classes, by projecting their centroids
+		// in the data rather than averaging the points in the view
+		ClassCentroids classCentroids = model.getClassCentroids();
+		double[][] centroids = classCentroids.getCentroids(separationAttribute);
+		int[] numPoints = classCentroids.getCounts(separationAttribute);
+		int[] labels = classCentroids.getLabels(separationAttribute);
 		int c, p, od;
 		final int numOutputDimensions = model.getNumViewDimensions();
 		final int numDataPoints = model.getNumDataPoints();
-		for (p = 0; p < numDataPoints; p++) {
-			c = (int) model.getInstances().instance(p).value(separationAttribute);
-			for (od = 0; od < numOutputDimensions; od++)
-				centroids[c][od] += model.getView().get(p, od);
-			numPoints[c]++;
-		}
-		// then divide by the number of points in each class (if this class
-		// is not empty)
-		for (c = 0; c < separationAttribute.numValues(); c++) {
-			if (numPoints[c] > 0) {
-				for (od = 0; od < numOutputDimensions; od++)
-					centroids[c][od] /= numPoints[c];
-			}
-		}
 
 		// 2. Move centroids away from other classes (with velocity
 		// inversely proportional to distance)
@@ -203,18 +181,16 @@ public class SeparatePoints implements PerturbationPursuit {
 		}
 
 		// 3. Move points towards their newly separated centroids
+		double[][] view = model.getView().getArray();
 		for (p = 0; p < numDataPoints; p++) {
-			c = (int) model.getInstances().instance(p).value(separationAttribute);
-			for (od = 0; od < numOutputDimensions; od++)
-				perturbation.set(p, od, (centroids[c][od] - model.getView().get(p, od)));
+			c = labels[p];
+			if (c >= 0)
+				for (od = 0; od < numOutputDimensions; od++)
+					perturbation.set(p, od, (centroids[c][od] - view[p][od]));
 		}
 
 		model.setTarget(model.getView().plus(perturbation));
 		model.pursueTarget();
 
 	}
-
-	private double abs(double d) {
-		return (d < 0 ? -d : d);
-	}
 }
@@ -1,8 +1,10 @@
 package tpp;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.TreeSet;
 
@@ -17,6 +19,9 @@ import weka.core.Instances;
  * may be real or nominal or date). The id attribute may be null, in which case
  * it is assumed that the data comprises a single series ordered by the index
  * attribute.
+ *
+ * The index of the previous and next instance of every instance is found once,
+ * when the series are built, so moving along a series takes constant time.
  */
 public class Series {
 
@@ -28,6 +33,15 @@ public class Series {
 
 	private HashMap<String, TreeSet<Instance>> allSeries;
 
+	/**
+	 * The index of the previous and next instance in each instance's series,
+	 * or -1 at the ends of the series (or if the instance is in none)
+	 */
+	private int[] previous, next;
+
+	/** The index of each instance within the instances */
+	private IdentityHashMap<Instance, Integer> rows;
+
 	/**
 	 * The series themselves. Each entry in the hashmap is a set of instances,
 	 * ordered by the index attribute. The hashmap is keyed by the values of the
@@ -84,6 +98,28 @@ public class Series {
 			else
 				allSeries.get("").add(instances.instance(i));
 		}
+
+		// Link each instance to its neighbours by walking the sorted sets
+		int n = instances.numInstances();
+		rows = new IdentityHashMap<Instance, Integer>(n);
+		for (int i = 0; i < n; i++)
+			rows.put(instances.instance(i), i);
+		previous = new int[n];
+		next = new int[n];
+		Arrays.fill(previous, -1);
+		Arrays.fill(next, -1);
+		int last, row;
+		for (TreeSet<Instance> set : allSeries.values()) {
+			last = -1;
+			for (Instance in : set) {
+				row = rows.get(in);
+				if (last != -1) {
+					previous[row] = last;
+					next[last] = row;
+				}
+				last = row;
+			}
+		}
 	}
 
 	public Attribute getIdAttribute() {
@@ -116,23 +152,8 @@ public class Series {
 	 * Returns null if it is the first member of its series
 	 */
 	public Instance previous(Instance in) {
-
-		// find the set that contains this instance
-		String key = (idAttribute == null ? "" : in.stringValue(idAttribute));
-		TreeSet<Instance> set = allSeries.get(key);
-
-		// iterate through until the next instance is this one
-		Iterator<Instance> it = set.iterator();
-		Instance prev = null;
-		Instance current = null;
-		while (it.hasNext()) {
-			current = it.next();
-			if (current.equals(in))
-				return prev;
-			prev = current;
-
-		}
-		return null;
+		int i = indexOfInstance(in);
+		return (i != -1 && previous[i] != -1 ? instances.instance(previous[i]) : null);
 	}
 
 	/**
@@ -140,44 +161,24 @@ public class Series {
 	 * Returns null if it is the last member of its series
 	 */
 	public Instance next(Instance in) {
-
-		// find the set that contains this instance
-		String key = (idAttribute == null ? "" : in.stringValue(idAttribute));
-		TreeSet<Instance> set = allSeries.get(key);
-
-		// iterate through until we find this one
-		Iterator<Instance> it = set.iterator();
-		Instance current = null;
-		while (it.hasNext()) {
-			current = it.next();
-			if (current.equals(in))
-				// and return the next (or null)
-				return (it.hasNext() ? it.next() : null);
-		}
-		return null;
-
+		int i = indexOfInstance(in);
+		return (i != -1 && next[i] != -1 ? instances.instance(next[i]) : null);
 	}
 
 	/**
 	 * Find the index of the previous instance, given the index of an instance.
 	 * Returns -1 if the instance was first in the series.
-	 *
-	 * @throws TPPException
 	 */
 	public int previous(int i) {
-		Instance previous = previous(instances.instance(i));
-		return (previous != null ? indexOfInstance(previous) : -1);
+		return previous[i];
 	}
 
 	/**
 	 * Find the index of the next instance, given the index of an instance.
 	 * Returns -1 if the instance was last in the series.
-	 *
-	 * @throws TPPException
 	 */
-	public int next(int i){
-		Instance next = next(instances.instance(i));
-		return (next != null ? indexOfInstance(next) : -1);
+	public int next(int i) {
+		return next[i];
 	}
 
 	/**
@@ -186,10 +187,8 @@ public class Series {
 	 * be found.
 	 */
 	private int indexOfInstance(Instance in) {
-		for (int i = 0; i < instances.numInstances(); i++)
-			if (instances.instance(i).equals(in))
-				return i;
-		return -1;
+		Integer i = rows.get(in);
+		return (i != null ? i : -1);
 	}
 
 	/** Compare two instances by the value of the attribute. */
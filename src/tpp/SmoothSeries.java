@@ -19,32 +19,35 @@ public class SmoothSeries implements PerturbationPursuit {
 	 */
 	public void pursuePerturbation() throws TPPException {
 		if (model.getNumViewDimensions() == 2) {
-			Matrix newTarget = new Matrix(model.getNumDataPoints(), 2);
+			int n = model.getNumDataPoints();
+			Series series = model.getSeries();
+			double[][] view = model.getView().getArray();
+			double[][] target = new double[n][2];
 			int previous, next, numPoints = 0;
 			double totaly, totalx;
-			// Set teh target fr each position to be the mean of the current,
-			// the
-			// next, and the previous points
-			for (int p = 0; p < model.getNumDataPoints(); p++) {
+			// Set the target for each position to be the mean of the current,
+			// the next, and the previous points
+			for (int p = 0; p < n; p++) {
 				// find the next and prev points
-				previous = model.getSeries().previous(p);
-				next = model.getSeries().next(p);
+				previous = series.previous(p);
+				next = series.next(p);
 				numPoints = 1;
-				totalx = model.getView().get(p, 0);
-				totaly = model.getView().get(p, 1);
+				totalx = view[p][0];
+				totaly = view[p][1];
 				if (previous != -1) {
-					totalx += model.getView().get(previous, 0);
-					totaly += model.getView().get(previous, 1);
+					totalx += view[previous][0];
+					totaly += view[previous][1];
 					numPoints++;
 				}
 				if (next != -1) {
-					totalx += model.getView().get(next, 0);
-					totaly += model.getView().get(next, 1);
+					totalx += view[next][0];
+					totaly += view[next][1];
 					numPoints++;
 				}
-				newTarget.set(p, 0, totalx / numPoints);
-				newTarget.set(p, 1, totaly / numPoints);
+				target[p][0] = totalx / numPoints;
+				target[p][1] = totaly / numPoints;
 			}
+			Matrix newTarget = new Matrix(target, n, 2);
 			model.setTarget(newTarget);
 			model.pursueTarget();
 
@@ -53,6 +56,14 @@ public class SmoothSeries implements PerturbationPursuit {
 
 	}
 
+	public double getError() {
+		return model.getPursuitError();
+	}
+
+	public double getDisplacement() {
+		return model.getPursuitDisplacement();
+	}
+
 	public void setModel(TPPModel model) {
 		this.model = (ScatterPlotModel) model;
 	}
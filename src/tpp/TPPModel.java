@@ -5,26 +5,27 @@ package tpp;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Random;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.w3c.dom.Attr;
 
 import weka.classifiers.Classifier;
 import weka.clusterers.EM;
-import weka.clusterers.SimpleKMeans;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.FastVector;
 import weka.core.Instances;
 import weka.core.matrix.Matrix;
 import weka.filters.Filter;
-import weka.filters.supervised.attribute.AddClassification;
 import weka.filters.unsupervised.attribute.Remove;
 import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 
@@ -55,12 +56,44 @@ public class TPPModel implements Serializable, Cloneable {
 	 */
 	public static final String CLASS_UNKNOWN = "UNKNOWN";
 
+	/**
+	 * Data sets with more points than this are clustered using mini-batches
+	 * of this size
+	 */
+	private static final int MINI_BATCH_THRESHOLD = 100000;
+
+	private static final int MINI_BATCH_SIZE = 4096;
+
 	/** The current view of the data */
 	protected Matrix view;
 
+	/**
+	 * The number of times that the view has been updated incrementally since
+	 * the data was last projected in full
+	 */
+	private int incrementalUpdates;
+
+	/** Project in full after this many incremental updates of the view */
+	private static final int MAX_INCREMENTAL_UPDATES = 1000;
+
 	/** The current target view of the data */
 	protected Matrix target;
 
+	/**
+	 * The latest published copy of the projection and view, for readers on
+	 * other threads (see ViewSnapshot)
+	 */
+	private final AtomicReference<ViewSnapshot> snapshot = new AtomicReference<ViewSnapshot>();
+
+	private final AtomicLong snapshotEpochs = new AtomicLong();
+
+	/**
+	 * Held while the projection or the view is changed, and while a snapshot
+	 * is taken of them, so that a snapshot is never of a change half made
+	 * (see lockView)
+	 */
+	private final ReentrantLock viewLock = new ReentrantLock();
+
 	/** The underlying data. */
 	protected Instances instances;
 	
@@ -73,6 +106,19 @@ public class TPPModel implements Serializable, Cloneable {
 	/** The projection from the higher dimensional data to the view. */
 	protected LinearProjection projection;
 
+	/** Whether to train the projection using all the available processors */
+	private boolean parallelPursuit = true;
+
+	/** Whether to solve for the projection directly rather than train it */
+	private boolean leastSquaresPursuit;
+
+	/** Solves for the projection, keeping the factorisation of the data */
+	private transient LeastSquaresSolver leastSquares;
+
+	// the error of the last projection pursued, and how much it changed
+	private double pursuitError = Double.NaN;
+	private double pursuitDisplacement = Double.NaN;
+
 	protected Matrix distances;
 
 	/** The attribute that indicates which instances are in the test set, if any */
@@ -84,26 +130,45 @@ public class TPPModel implements Serializable, Cloneable {
 	protected Attribute separationAttribute;
 
 	/** A hierarchical clustering of the instances */
-	private HierarchicalCluster hierarchicalClustering;
+	private Dendrogram hierarchicalClustering;
+
+	/** The points that have been selected */
+	protected PointSet selectedPoints;
+
+	/** The points that are being hovered over */
+	protected PointSet hoverPoints;
 
 	/**
-	 * A boolean array that indicates which points have been selected
+	 * Which points are in the training set, or null if there is no test set.
+	 * Built when first asked for after the data has changed.
 	 */
-	protected boolean[] selectedPoints;
+	private boolean[] pointsInTrainingSet;
+	private boolean pointsInTrainingSetKnown;
 
 	/** The number of view dimensions */
 	protected int numViewDimensions = -1;
 
-	/**
-	 * The centroids of the classes, keyed by the attribute that defines the
-	 * classes that those centroids were defined over
-	 */
-	private HashMap<Attribute, Matrix> allCentroids;
+	/** The centroids of the classes defined by each nominal attribute */
+	private ClassCentroids classCentroids = new ClassCentroids(this);
 
 	protected Graph graph;
 
 	private Vector<TPPModelEventListener> listeners;
 
+	/** The batch of changes open on each thread, if any (see beginBatch) */
+	private transient ThreadLocal<Batch> batches;
+
+	// counts of the events fired and delivered, by type
+	private long[] eventsFired = new long[TPPModelEvent.NUM_TYPES];
+	private long[] eventsDelivered = new long[TPPModelEvent.NUM_TYPES];
+	private long batchesCommitted;
+
+	/**
+	 * Incremented whenever the points themselves may have changed, so that
+	 * anything derived from the selection knows when to recalculate
+	 */
+	private volatile int structureEpoch;
+
 	/* The numeric attributes -- doesn't include date attributes */
 	private Vector<Attribute> numericAttributes;
 
@@ -117,7 +182,8 @@ public class TPPModel implements Serializable, Cloneable {
 	}
 
 	/**
-	 * Initialise a projection projecting onto an n-dimensional space
+	 * Initialise a projection projecting onto an n-dimensional space, and
+	 * project the data with it
 	 * 
 	 * @throws Exception
 	 *             if number of dimensions is not set
@@ -125,7 +191,13 @@ public class TPPModel implements Serializable, Cloneable {
 	protected void initialiseProjection() throws Exception {
 		if (numViewDimensions <= 0)
 			throw new Exception("number of output dimensions not set");
-		projection = new LinearProjection(data.getColumnDimension(), numViewDimensions);
+		lockView();
+		try {
+			projection = new LinearProjection(data.getColumnDimension(), numViewDimensions);
+			project();
+		} finally {
+			unlockView();
+		}
 	}
 
 	/** Construct a new TPP model with the given output dimension */
@@ -177,10 +249,10 @@ public class TPPModel implements Serializable, Cloneable {
 		normalizeDataBipolarHomogenous();
 
 		// Initially all points are unselected
-		selectedPoints = new boolean[instances.numInstances()];
+		selectedPoints = new PointSet(instances.numInstances());
 		
 		// Initally no points are hovered
-		hoverPoints = new boolean[instances.numInstances()];
+		hoverPoints = new PointSet(instances.numInstances());
 		
 		if (filtered){
 			
@@ -233,36 +305,44 @@ public class TPPModel implements Serializable, Cloneable {
 					filteredIndices[i] = currentAttributes.indexOf(curAtt);
 					i++;
 				}
-				projection = new LinearProjection(projection.getMatrix(filteredIndices, cols));
-				project();
+				lockView();
+				try {
+					projection = new LinearProjection(projection.getMatrix(filteredIndices, cols));
+					project();
+				} finally {
+					unlockView();
+				}
 			} else if (CollectionUtils.containsAny(currentAttributeNames, filteredAttributeNames)){
 				double[][] newProjection = new double[filteredAttributes.size()][2];
-				int i = 0;
-				for(Attribute at: filteredAttributes){
-					if (currentAttributeNames.contains(at.name())) {
-						Attribute curAtt = currentInstances.attribute(at.name());
-						int index = currentAttributes.indexOf(curAtt);
-						newProjection[i][0] = projection.get(index, 0);
-						newProjection[i][1] = projection.get(index, 1);
-					} else {
-						newProjection[i][0] = 0.0;
-						newProjection[i][1] = 0.0;
+				lockView();
+				try {
+					int i = 0;
+					for(Attribute at: filteredAttributes){
+						if (currentAttributeNames.contains(at.name())) {
+							Attribute curAtt = currentInstances.attribute(at.name());
+							int index = currentAttributes.indexOf(curAtt);
+							newProjection[i][0] = projection.get(index, 0);
+							newProjection[i][1] = projection.get(index, 1);
+						} else {
+							newProjection[i][0] = 0.0;
+							newProjection[i][1] = 0.0;
+						}
+						i++;
 					}
-					i++;
-				}
 					Matrix projectionMatrix = new Matrix(newProjection);
 					projection = new LinearProjection(projectionMatrix);
 					project();
+				} finally {
+					unlockView();
+				}
 					
 			} else if (CollectionUtils.intersection(currentAttributeNames, filteredAttributeNames).isEmpty()) {
 				initialiseProjection();
-				project();
 				PCA();
 			}
 		} else {
 			// Create a new projection and view
 			initialiseProjection();
-			project();
 
 			// if its a huge data set don't bother trying to find PCA
 			if (getNumDataDimensions() * getNumDataPoints() < 1E6)
@@ -274,10 +354,8 @@ public class TPPModel implements Serializable, Cloneable {
 		}
 
 		
-
-		// initialise centroids
-		allCentroids = new HashMap<Attribute, Matrix>();
-		
+		// the data has been replaced, so forget any centroids
+		classCentroids.invalidate();
 	}
 		
 	public void setDeepInstances(Instances data) {
@@ -295,7 +373,11 @@ public class TPPModel implements Serializable, Cloneable {
 	 * scaling factor
 	 */
 	protected void normalizeDataBipolarHomogenous() {
-		data.timesEquals(1 / MatrixUtils.maxAbsValue(data));
+		double factor = 1 / MatrixUtils.maxAbsValue(data);
+		data.timesEquals(factor);
+		classCentroids.scale(factor);
+		if (leastSquares != null)
+			leastSquares.invalidate();
 	}
 
 	/**
@@ -489,6 +571,7 @@ public class TPPModel implements Serializable, Cloneable {
 					itNextSeries.next().setValue(test, TRAIN);
 			}
 		}
+		classCentroids.invalidate(test);
 		fireModelChanged(TPPModelEvent.DATA_STRUCTURE_CHANGED);
 		return test;
 	}
@@ -511,12 +594,20 @@ public class TPPModel implements Serializable, Cloneable {
 	 * defined.
 	 */
 	public boolean[] getPointsInTrainingSet() {
-		if (test == null)
-			return null;
-		boolean[] isTrain = new boolean[instances.numInstances()];
-		for (int p = 0; p < instances.numInstances(); p++)
-			isTrain[p] = instances.instance(p).value(test) == TRAIN;
-		return isTrain;
+		// this is asked for on every step of a pursuit, so it is only worked
+		// out again when the data changes. Callers must not modify it.
+		if (!pointsInTrainingSetKnown) {
+			if (test == null)
+				pointsInTrainingSet = null;
+			else {
+				boolean[] isTrain = new boolean[instances.numInstances()];
+				for (int p = 0; p < instances.numInstances(); p++)
+					isTrain[p] = instances.instance(p).value(test) == TRAIN;
+				pointsInTrainingSet = isTrain;
+			}
+			pointsInTrainingSetKnown = true;
+		}
+		return pointsInTrainingSet;
 	}
 
 	/**
@@ -563,11 +654,16 @@ public class TPPModel implements Serializable, Cloneable {
 	 * @see tpp.TPPModelInterface#normalizeProjection()
 	 */
 	public void normalizeProjection() {
-		projection.normalise();
-		project();
-		target = view;
-		//System.out.println("Projection normalized");
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			projection.normalise();
+			project();
+			target = view;
+			//System.out.println("Projection normalized");
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	/*
@@ -576,10 +672,15 @@ public class TPPModel implements Serializable, Cloneable {
 	 * @see tpp.TPPModelInterface#randomProjection()
 	 */
 	public void randomProjection() {
-		projection.randomize();
-		normalizeProjection();
-		project();
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			projection.randomize();
+			normalizeProjection();
+			project();
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	/*
@@ -588,10 +689,15 @@ public class TPPModel implements Serializable, Cloneable {
 	 * @see tpp.TPPModelInterface#PCA()
 	 */
 	public void PCA() {
-		projection.PCA(data);
-		normalizeProjection();
-		project();
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			projection.PCA(data);
+			normalizeProjection();
+			project();
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	protected double abs(double d) {
@@ -621,29 +727,35 @@ public class TPPModel implements Serializable, Cloneable {
 		return target;
 	}
 
-	/** The current projection */
+	/**
+	 * The current projection. This is the live matrix, which the pursuit
+	 * thread may be changing: change it only between lockView and unlockView,
+	 * and read it from other threads through getViewSnapshot
+	 */
 	public Matrix getProjection() {
 		return projection;
 	}
 
-	/** The view of the data */
+	/** The view of the data, which is live in the same way as the projection */
 	public Matrix getView() {
 		return view;
 	}
 
 	public String getViewAsString() {
-		String s = "";
+		StringBuilder s = new StringBuilder();
 		Attribute classAttribute = instances.classAttribute();
-		for (int r = 0; r < view.getRowDimension(); r++) {
-			if (getStringAttributes().size() > 0)
-				s += instances.instance(r).stringValue(getStringAttributes().get(0)) + ",";
+		Vector<Attribute> stringAttributes = getStringAttributes();
+		ViewSnapshot snapshot = getViewSnapshot();
+		for (int r = 0; r < snapshot.getNumPoints(); r++) {
+			if (stringAttributes.size() > 0)
+				s.append(instances.instance(r).stringValue(stringAttributes.get(0))).append(",");
 			if (classAttribute != null)
-				s += instances.instance(r).stringValue(classAttribute) + ",";
-			for (int c = 0; c < view.getColumnDimension(); c++)
-				s += view.get(r, c) + ",";
-			s += "\n";
+				s.append(instances.instance(r).stringValue(classAttribute)).append(",");
+			for (int c = 0; c < snapshot.getNumDimensions(); c++)
+				s.append(snapshot.get(r, c)).append(",");
+			s.append("\n");
 		}
-		return s;
+		return s.toString();
 	}
 
 	/** The normalised numeric data */
@@ -719,8 +831,98 @@ public class TPPModel implements Serializable, Cloneable {
 
 	/** Project the data to produce a new view. */
 	public void project() {
-		view = data.times(projection);
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			view = data.times(projection);
+			incrementalUpdates = 0;
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
+	}
+
+	/** Set one value of the projection, and project the data again */
+	public void setProjectionValue(int axis, int dimension, double value) {
+		lockView();
+		try {
+			projection.set(axis, dimension, value);
+			project();
+		} finally {
+			unlockView();
+		}
+	}
+
+	/**
+	 * Change the given axes (ie rows of the projection) by the given amounts,
+	 * and update the view to match. Since the view changes by X.dW, and dW is
+	 * zero except in these rows, this costs O(N.k) for k axes (plus copying
+	 * the view) rather than the O(N.D) of projecting all the data again.
+	 * 
+	 * @param axes
+	 *            the indices of the axes to change
+	 * @param changes
+	 *            the change to each of the axes, one row per axis
+	 */
+	public void moveAxes(int[] axes, double[][] changes) {
+		int a, c, p;
+		lockView();
+		try {
+			// the changes are made in new arrays, which are then put in place,
+			// since the pursuit thread reads the projection and the view
+			// without the lock
+			int numAxes = axes.length, cols = projection.getColumnDimension();
+			double[][] aProjection = projection.getArrayCopy();
+			for (a = 0; a < numAxes; a++)
+				for (c = 0; c < cols; c++)
+					aProjection[axes[a]][c] += changes[a][c];
+			projection = new LinearProjection(new Matrix(aProjection));
+
+			// rounding errors build up in the view, so every so often start again
+			if (view == null || ++incrementalUpdates > MAX_INCREMENTAL_UPDATES) {
+				project();
+				return;
+			}
+
+			double[][] aView = view.getArray(), aData = data.getArray();
+			double[][] moved = new double[aView.length][];
+			double[] x, v;
+			double xa;
+			for (p = 0; p < aView.length; p++) {
+				x = aData[p];
+				v = aView[p].clone();
+				for (a = 0; a < numAxes; a++) {
+					xa = x[axes[a]];
+					if (xa != 0)
+						for (c = 0; c < cols; c++)
+							v[c] += xa * changes[a][c];
+				}
+				moved[p] = v;
+			}
+			view = new Matrix(moved, aView.length, cols);
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
+	}
+
+	/**
+	 * Multiply the projection by the given factor, and the view with it, which
+	 * needs no projection of the data
+	 */
+	public void scaleProjection(double factor) {
+		lockView();
+		try {
+			// scaled into new matrices, as in moveAxes
+			projection = new LinearProjection(projection.times(factor));
+			if (view == null) {
+				project();
+				return;
+			}
+			view = view.times(factor);
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	/**
@@ -730,11 +932,17 @@ public class TPPModel implements Serializable, Cloneable {
 	 * @throws TPPException
 	 */
 	public void pursueTarget() throws TPPException {
-		double error = projection.pursueTarget(data, target, getPointsInTrainingSet());
+		Pursuit pursuit = startPursuit();
+		double error;
+		if (leastSquaresPursuit) {
+			if (leastSquares == null)
+				leastSquares = new LeastSquaresSolver();
+			error = leastSquares.solve(pursuit.projection, pursuit.data, pursuit.target, pursuit.training);
+		} else
+			error = pursuit.projection.pursueTarget(pursuit.data, pursuit.target, pursuit.training);
 		if (getProjectionConstraint() != null)
-			projection = (LinearProjection) getProjectionConstraint().findNearestValid(projection);
-		view = projection.project(data);
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+			pursuit.projection = (LinearProjection) getProjectionConstraint().findNearestValid(pursuit.projection);
+		finishPursuit(pursuit, error);
 	}
 
 	/**
@@ -744,9 +952,125 @@ public class TPPModel implements Serializable, Cloneable {
 	 * @throws TPPException
 	 */
 	public void pursueTargetSingleShot() throws TPPException {
-		double error = projection.pursueTargetSingleShot(data, target, getPointsInTrainingSet());
-		view = projection.project(data);
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		Pursuit pursuit = startPursuit();
+		double error = pursuit.projection.pursueTargetSingleShot(pursuit.data, pursuit.target, pursuit.training);
+		finishPursuit(pursuit, error);
+	}
+
+	/** A copy of the projection being pursued, and what it is pursued with */
+	private static class Pursuit {
+
+		private LinearProjection projection;
+
+		/** The projection as it was before it was pursued */
+		private double[][] previous;
+
+		private Matrix data, target;
+		private boolean[] training;
+	}
+
+	/**
+	 * Take a copy of the projection to pursue the target with. The copy is
+	 * trained without holding the view lock, so that the event thread never
+	 * waits for a step of the pursuit (to resize the view, say, or to publish
+	 * a snapshot), and the lock is only taken again to put the result in
+	 * place (see finishPursuit).
+	 */
+	private Pursuit startPursuit() {
+		Pursuit pursuit = new Pursuit();
+		lockView();
+		try {
+			pursuit.previous = projection.getArrayCopy();
+			pursuit.projection = new LinearProjection(projection.copy());
+			pursuit.data = data;
+			pursuit.target = target;
+			pursuit.training = getPointsInTrainingSet();
+		} finally {
+			unlockView();
+		}
+		pursuit.projection.setParallelTraining(parallelPursuit);
+		return pursuit;
+	}
+
+	/**
+	 * Put the pursued projection in place, with the view that it gives. It
+	 * replaces any change made to the projection while it was pursued, unless
+	 * the data itself has been replaced meanwhile, when it is dropped.
+	 */
+	private void finishPursuit(Pursuit pursuit, double error) {
+		Matrix pursuedView = pursuit.projection.project(pursuit.data);
+		lockView();
+		try {
+			if (data != pursuit.data)
+				return;
+			projection = pursuit.projection;
+			recordPursuit(error, pursuit.previous);
+			view = pursuedView;
+			incrementalUpdates = 0;
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
+	}
+
+	/**
+	 * Record the error of the projection just pursued, and how far it moved
+	 * from the previous projection: |W-W'|/|W'| (Frobenius norms)
+	 */
+	private void recordPursuit(double error, double[][] previous) {
+		double[][] current = projection.getArray();
+		double change = 0, size = 0, d;
+		for (int i = 0; i < previous.length; i++)
+			for (int j = 0; j < previous[i].length; j++) {
+				d = current[i][j] - previous[i][j];
+				change += d * d;
+				size += previous[i][j] * previous[i][j];
+			}
+		pursuitError = error;
+		pursuitDisplacement = Math.sqrt(change / Math.max(size, MIN_VALUE));
+	}
+
+	/**
+	 * The error of the projection found by the last call to pursueTarget (or
+	 * pursueTargetSingleShot), or NaN if the target has not been pursued
+	 */
+	public double getPursuitError() {
+		return pursuitError;
+	}
+
+	/**
+	 * How much the last call to pursueTarget (or pursueTargetSingleShot)
+	 * changed the projection, relative to its size, or NaN if the target has
+	 * not been pursued. Rescaling the projection (eg to fit the view) is not
+	 * counted.
+	 */
+	public double getPursuitDisplacement() {
+		return pursuitDisplacement;
+	}
+
+	/**
+	 * Should projection pursuit use all the available processors? Small data
+	 * sets are always pursued on one thread.
+	 */
+	public void setParallelPursuit(boolean parallelPursuit) {
+		this.parallelPursuit = parallelPursuit;
+	}
+
+	public boolean isParallelPursuit() {
+		return parallelPursuit;
+	}
+
+	/**
+	 * Should pursueTarget solve directly for the projection that best fits the
+	 * target (as a least squares problem), rather than training it as a
+	 * perceptron? The direct solution reaches the target in a single step.
+	 */
+	public void setLeastSquaresPursuit(boolean leastSquaresPursuit) {
+		this.leastSquaresPursuit = leastSquaresPursuit;
+	}
+
+	public boolean isLeastSquaresPursuit() {
+		return leastSquaresPursuit;
 	}
 
 	/**
@@ -764,44 +1088,41 @@ public class TPPModel implements Serializable, Cloneable {
 	 */
 	public void setProjectionConstraint(ProjectionConstraint constraint) {
 		this.constraint = constraint;
-		if (this.constraint != null)
-			constraint.findNearestValid(projection);
-		project();
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			if (this.constraint != null)
+				constraint.findNearestValid(projection);
+			project();
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	/**
-	 * Create a new attribute that clusters the original data. KMeans is used by
-	 * default. returns the new attribute
+	 * Create a new attribute that clusters the original data, using k-means
+	 * over the columns of the (normalised) data that hold the numeric
+	 * attributes of the given instances. Mini-batches are used for large data
+	 * sets. returns the new attribute
 	 */
 	public Attribute cluster(int numClusters, Instances in, String attributesUsed) {
 		try {
-			Instances numericInstances;
-
-			// ignore any non-numeric attributes before clustering
-			Remove removeClassification = new Remove();
-			String indices = "";
-			if (getNominalAttributes(in).size() > 0) {
-				for (int a = 0; a < in.numAttributes(); a++)
-					if (!in.attribute(a).isNumeric())
-						indices = indices + (a + 1) + ",";
-				indices = indices.substring(0, indices.length() - 1);
-			}
-			removeClassification.setAttributeIndices(indices);
-			removeClassification.setInputFormat(in);
-			numericInstances = Filter.useFilter(in, removeClassification);
-
-			// build a clusterer
-			SimpleKMeans clusterer = new SimpleKMeans();
-			
-			clusterer.setNumClusters(numClusters);
-			clusterer.buildClusterer(numericInstances);
+			// find the columns of the data to cluster on, ignoring any
+			// non-numeric attributes
+			int[] columns = new int[in.numAttributes()];
+			int numColumns = 0, column;
+			for (int a = 0; a < in.numAttributes(); a++)
+				if (in.attribute(a).isNumeric()) {
+					column = indexOfNumericAttribute(in.attribute(a).name());
+					if (column >= 0)
+						columns[numColumns++] = column;
+				}
+			columns = Arrays.copyOf(columns, numColumns);
 
-			// use the clustering of the unclassified instances to add an
-			// attribute to the filtered instances
-			// It would be nice to use the AddCluster filter to do this, but we
-			// are going to use the clustering of one set of instances to
-			// classify another
+			KMeans kMeans = new KMeans(numClusters);
+			if (getNumDataPoints() > MINI_BATCH_THRESHOLD)
+				kMeans.setBatchSize(MINI_BATCH_SIZE);
+			int[] clusters = kMeans.cluster(data.getArray(), columns);
 
 			// first check there is no attribute with this name
 			String atName = attributesUsed+ ": Cluster " + numClusters;
@@ -813,10 +1134,9 @@ public class TPPModel implements Serializable, Cloneable {
 				values.addElement("cluster " + (v + 1) + "/" + numClusters);
 			Attribute clustering = addAttribute(new Attribute(atName, values), null);
 
-			int c;
 			for (int i = 0; i < instances.numInstances(); i++) {
-				c = clusterer.clusterInstance(numericInstances.instance(i));
-				instances.instance(i).setValue(clustering, (String) values.elementAt(c));
+				instances.instance(i).setValue(clustering, clusters[i]);
+				classCentroids.setClass(clustering, i, clusters[i]);
 			}
 
 			// make this clustering the current classification
@@ -832,6 +1152,14 @@ public class TPPModel implements Serializable, Cloneable {
 		}
 	}
 
+	/** The column of the data that holds the named attribute, or -1 */
+	private int indexOfNumericAttribute(String name) {
+		for (int c = 0; c < numericAttributes.size(); c++)
+			if (numericAttributes.get(c).name().equals(name))
+				return c;
+		return -1;
+	}
+
 	public String toString(int point) {
 		if (getStringAttributes().size() > 0)
 			return instances.instance(point).stringValue(getStringAttributes().get(0));
@@ -844,11 +1172,16 @@ public class TPPModel implements Serializable, Cloneable {
 	 * temporarily from teh projection
 	 */
 	public void zeroProjectionAttributes(int[] ats) {
-		if (ats != null)
-			for (int r = 0; r < ats.length; r++)
-				for (int c = 0; c < projection.getColumnDimension(); c++)
-					projection.set(ats[r], c, 0);
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			if (ats != null)
+				for (int r = 0; r < ats.length; r++)
+					for (int c = 0; c < projection.getColumnDimension(); c++)
+						projection.set(ats[r], c, 0);
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 
 	}
 
@@ -868,50 +1201,51 @@ public class TPPModel implements Serializable, Cloneable {
 		this.hierarchicalClustering = hac.singleLinkage(this);
 	}
 
-	public HierarchicalCluster getHierarchicalCluster() {
+	public Dendrogram getHierarchicalCluster() {
 		return hierarchicalClustering;
 	}
 
+	/** Is the point selected? Returns false if there is no such point */
 	public boolean isPointSelected(int p) {
-		try {
-			return selectedPoints[p];
-		}
-		catch (ArrayIndexOutOfBoundsException e){
-			return false;
-		} //stupid hack so doesn't fail when importing non existent edges
+		return selectedPoints.contains(p);
 	}
 
 	/** Are any points selected? */
 	public boolean arePointsSelected() {
-		for (int p = 0; p < getNumDataPoints(); p++)
-			if (isPointSelected(p))
-				return true;
-		return false;
+		return !selectedPoints.isEmpty();
+	}
+
+	/**
+	 * The points that are selected. This should not be changed directly, but
+	 * through the model, so that listeners hear about it.
+	 */
+	public PointSet getSelectedPoints() {
+		return selectedPoints;
 	}
 
 	public void unselectPoints() {
-		for (int p = 0; p < getNumDataPoints(); p++)
-			selectedPoints[p] = false;
+		selectedPoints.clear();
 		fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
 	}
 
 	public void selectPoint(int p) {
-		selectedPoints[p] = true;
+		selectedPoints.add(p);
 		fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
 	}
 
 	public void selectPoints(int[] p) {
-		for (int i : p)
-			selectPoint(i);
+		beginBatch();
+		try {
+			for (int i : p)
+				selectPoint(i);
+		} finally {
+			commitBatch();
+		}
 	}
 
 	/** How many points are currently selected */
 	public int numPointsSelected() {
-		int total = 0;
-		for (int p = 0; p < getNumDataPoints(); p++)
-			if (isPointSelected(p))
-				total++;
-		return total;
+		return selectedPoints.cardinality();
 	}
 
 	/**
@@ -921,55 +1255,58 @@ public class TPPModel implements Serializable, Cloneable {
 	 * @param cls
 	 */
 	public Attribute[] createCrossValidation(Attribute at, Classifier cls) {
-
-		int folds = 10;
-		long seed = System.currentTimeMillis();
-		Instances train, test;
-
 		try {
-			instances.setClass(at);
-
-			// perform cross-validation and add predictions
-			Instances predictedData = null;
-			for (int n = 0; n < folds; n++) {
-				train = instances.trainCV(folds, n);
-				test = instances.testCV(folds, n);
-
-				// add predictions
-				AddClassification filter = new AddClassification();
-				filter.setClassifier(cls);
-				filter.setOutputClassification(true);
-				filter.setOutputDistribution(false);
-				filter.setOutputErrorFlag(true);
-				filter.setInputFormat(train);
-				Filter.useFilter(train, filter);
-				Instances predictions = Filter.useFilter(test, filter);
-				if (predictedData == null)
-					predictedData = new Instances(predictions, 0);
-				for (int j = 0; j < predictions.numInstances(); j++)
-					predictedData.add(predictions.instance(j));
-			}
-
-			instances = predictedData;
-
-			// change the names of the classification and error attributes
-			Attribute errorAttribute = instances.attribute(instances.numAttributes() - 1);
-			Attribute classificationAttribute = instances.attribute(instances.numAttributes() - 2);
-			errorAttribute = renameAttribute(errorAttribute, cls.getClass().getSimpleName() + " error");
-			classificationAttribute = renameAttribute(classificationAttribute, cls.getClass().getSimpleName()
-					+ " classification");
-			// instances.setClass(classificationAttribute);
-
-			fireModelChanged(TPPModelEvent.DATA_STRUCTURE_CHANGED);
-			return new Attribute[] { instances.attribute(instances.numAttributes() - 1),
-					instances.attribute(instances.numAttributes() - 2) };
-
+			CrossValidation crossValidation = newCrossValidation(at, cls);
+			crossValidation.run();
+			return addCrossValidation(crossValidation);
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 		return null;
+	}
 
+	/**
+	 * Set up a 10-fold cross validation of the classifier for the given
+	 * attribute, which is made the class, for the caller to run (eg on another
+	 * thread) and then pass to addCrossValidation
+	 */
+	public CrossValidation newCrossValidation(Attribute at, Classifier cls) {
+		instances.setClass(at);
+		return new CrossValidation(instances, cls);
+	}
+
+	/**
+	 * Add the results of a cross validation (of these instances) as two new
+	 * attributes, the classification and the error. Returns the new
+	 * attributes, or null if the cross validation did not finish, or was of
+	 * other instances or of a different number of them (eg if the data has
+	 * been replaced or filtered since it was set up).
+	 */
+	public Attribute[] addCrossValidation(CrossValidation crossValidation) {
+		if (!crossValidation.isFinished() || !crossValidation.isOf(instances))
+			return null;
+		Attribute at = crossValidation.getClassAttribute();
+		String name = crossValidation.getClassifier().getClass().getSimpleName();
+		Attribute classification, error;
+		if (at.isNominal()) {
+			classification = at.copy(name + " classification");
+			FastVector values = new FastVector(2);
+			values.addElement("no");
+			values.addElement("yes");
+			error = new Attribute(name + " error", values);
+		} else {
+			classification = new Attribute(name + " classification");
+			error = new Attribute(name + " error");
+		}
+		beginBatch();
+		try {
+			error = addAttribute(error, crossValidation.getErrors());
+			classification = addAttribute(classification, crossValidation.getClassifications());
+		} finally {
+			commitBatch();
+		}
+		return new Attribute[] { classification, error };
 	}
 
 	/**
@@ -1030,11 +1367,16 @@ public class TPPModel implements Serializable, Cloneable {
 	public void selectSingleAttribute(Attribute at) throws Exception {
 		if (getNumViewDimensions() != 1)
 			throw new Exception("Method only applies to 1D projections");
-		projection = new LinearProjection(data.getColumnDimension(), 1);
-		projection.set(getNumericAttributes().indexOf(at), 0, 1);
-		project();
-		target = view;
-		fireModelChanged(TPPModelEvent.AXIS_SELECTION_CHANGED);
+		lockView();
+		try {
+			projection = new LinearProjection(data.getColumnDimension(), 1);
+			projection.set(getNumericAttributes().indexOf(at), 0, 1);
+			project();
+			target = view;
+			fireModelChanged(TPPModelEvent.AXIS_SELECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	/**
@@ -1045,17 +1387,22 @@ public class TPPModel implements Serializable, Cloneable {
 	public void uniformProjection() throws Exception {
 		if (getNumViewDimensions() != 1)
 			throw new Exception("Method only applies to 1D projections");
-		projection = new LinearProjection(data.getColumnDimension(), 1);
-		for (int i = 0; i < projection.getRowDimension(); i++)
-			projection.set(i, 0, 1);
-		project();
-		target = view;
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			projection = new LinearProjection(data.getColumnDimension(), 1);
+			for (int i = 0; i < projection.getRowDimension(); i++)
+				projection.set(i, 0, 1);
+			project();
+			target = view;
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 	}
 
 	/**
-	 * Get the centroids of the data points for the classes defined by the given
-	 * attribute
+	 * Get the centroids in the view of the points in each of the classes
+	 * defined by the given attribute
 	 * 
 	 * @throws Exception
 	 */
@@ -1064,35 +1411,26 @@ public class TPPModel implements Serializable, Cloneable {
 		if (!classification.isNominal())
 			throw new Exception("Can only find centroids over nominal attributes");
 
-		if (allCentroids.get(classification) == null) {
-			// first total up the positions for each class
-			double[][] centroids = new double[classification.numValues()][getNumViewDimensions()];
-			double[] numPoints = new double[classification.numValues()];
-			int c, p, od;
-			for (p = 0; p < getNumDataPoints(); p++) {
-				c = (int) getInstances().instance(p).value(classification);
-				for (od = 0; od < getNumViewDimensions(); od++)
-					centroids[c][od] += getData().get(p, od);
-				numPoints[c]++;
-			}
-			// then divide by the number of points in each class (if this class
-			// is not empty)
-			for (c = 0; c < classification.numValues(); c++) {
-				if (numPoints[c] > 0) {
-					for (od = 0; od < getNumViewDimensions(); od++)
-						centroids[c][od] /= numPoints[c];
-				}
-			}
-			allCentroids.put(classification, new Matrix(centroids));
+		return new Matrix(classCentroids.getCentroids(classification));
+	}
 
-		}
-		return allCentroids.get(classification);
+	/**
+	 * The centroids of the classes defined by the nominal attributes, which
+	 * are kept in the data space and projected when needed
+	 */
+	public ClassCentroids getClassCentroids() {
+		return classCentroids;
 	}
 
 	public void setProjectionValues(double[][] values) {
-		((LinearProjection) this.projection).setValues(values);
-		view = projection.project(data);
-		fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		lockView();
+		try {
+			((LinearProjection) this.projection).setValues(values);
+			view = projection.project(data);
+			fireModelChanged(TPPModelEvent.PROJECTION_CHANGED);
+		} finally {
+			unlockView();
+		}
 
 	}
 
@@ -1155,7 +1493,105 @@ public class TPPModel implements Serializable, Cloneable {
 		l.modelChanged(new TPPModelEvent(this, TPPModelEvent.DATA_SET_CHANGED));
 	}
 
+	/**
+	 * A count that changes whenever the selection of points may have changed,
+	 * either because the selection itself has or because the points have
+	 */
+	public long getSelectionEpoch() {
+		return ((long) structureEpoch << 32) | (selectedPoints.getEpoch() & 0xffffffffL);
+	}
+
+	/**
+	 * A count that changes whenever the data set, its structure or its values
+	 * may have changed, so that anything derived from the data knows when to
+	 * recalculate
+	 */
+	public int getDataEpoch() {
+		return structureEpoch;
+	}
+
 	protected void fireModelChanged(int type) {
+		if (type == TPPModelEvent.DATA_SET_CHANGED || type == TPPModelEvent.DATA_STRUCTURE_CHANGED
+				|| type == TPPModelEvent.DATA_VALUE_CHANGED) {
+			structureEpoch++;
+			pointsInTrainingSetKnown = false;
+		}
+		synchronized (this) {
+			eventsFired[type]++;
+		}
+		Batch batch = getBatch();
+		if (batch.depth > 0) {
+			batch.pendingEvents[type] = true;
+			return;
+		}
+		if (changesView(type))
+			publishSnapshot();
+		deliver(type);
+	}
+
+	/** Whether an event of this type may mean the view has changed */
+	private static boolean changesView(int type) {
+		return type == TPPModelEvent.DATA_SET_CHANGED || type == TPPModelEvent.DATA_STRUCTURE_CHANGED
+				|| type == TPPModelEvent.DATA_VALUE_CHANGED || type == TPPModelEvent.PROJECTION_CHANGED;
+	}
+
+	/**
+	 * Publish a snapshot of the current projection and view, before the
+	 * listeners are told of a change to them. Any thread may do this, since
+	 * the copy is made holding the view lock, which every change to the
+	 * projection and view holds too; so the snapshot is always of a whole
+	 * change, and the snapshots are published in the order they were taken.
+	 */
+	protected void publishSnapshot() {
+		viewLock.lock();
+		try {
+			if (projection == null || view == null)
+				return;
+			snapshot.set(new ViewSnapshot(projection, view, snapshotEpochs.incrementAndGet()));
+		} finally {
+			viewLock.unlock();
+		}
+	}
+
+	/**
+	 * Take the view lock, before changing the projection or the view, or
+	 * before reading them where another thread (eg the pursuit thread) may be
+	 * changing them. The lock is reentrant. The changes are made in a batch, so the listeners only hear
+	 * of them once the lock has been released, and are never called while it
+	 * is held. Every call must be matched by a call to unlockView in a finally
+	 * block.
+	 */
+	protected void lockView() {
+		beginBatch();
+		viewLock.lock();
+	}
+
+	/** Release the view lock, and deliver the events fired while it was held */
+	protected void unlockView() {
+		viewLock.unlock();
+		commitBatch();
+	}
+
+	/**
+	 * The latest snapshot of the projection and view. Something that reads the
+	 * view from another thread (eg to paint it) should take one snapshot and
+	 * use it throughout, rather than reading the model's matrices, which the
+	 * pursuit thread may be changing. Returns null if there is no view yet.
+	 */
+	public ViewSnapshot getViewSnapshot() {
+		ViewSnapshot s = snapshot.get();
+		if (s == null) {
+			publishSnapshot();
+			s = snapshot.get();
+		}
+		return s;
+	}
+
+	/** Tell the listeners about a change */
+	private void deliver(int type) {
+		synchronized (this) {
+			eventsDelivered[type]++;
+		}
 		TPPModelEvent e = new TPPModelEvent(this, type);
 		// System.out.println(e);
 		Iterator<TPPModelEventListener> it = getListeners().iterator();
@@ -1163,6 +1599,104 @@ public class TPPModel implements Serializable, Cloneable {
 			it.next().modelChanged(e);
 	}
 
+	/**
+	 * Start a batch of changes. Until the matching call to commitBatch, events
+	 * are not passed on to the listeners; instead each type of event that is
+	 * fired is remembered and delivered once when the batch is committed.
+	 * Batches may be nested, in which case the events are delivered when the
+	 * outermost batch is committed.
+	 * 
+	 * A batch belongs to the thread that began it: only the events fired on
+	 * that thread are held back, and they are delivered on that thread. Events
+	 * fired on other threads (eg by the pursuit thread while the event thread
+	 * has a batch open) are delivered as usual, on the thread that fired them.
+	 */
+	public void beginBatch() {
+		getBatch().depth++;
+	}
+
+	/** Finish a batch of changes, delivering any events fired during it */
+	public void commitBatch() {
+		Batch batch = getBatch();
+		if (batch.depth == 0)
+			throw new IllegalStateException("No batch of changes to commit");
+		if (--batch.depth > 0)
+			return;
+		boolean[] pending = batch.pendingEvents.clone();
+		Arrays.fill(batch.pendingEvents, false);
+		synchronized (this) {
+			batchesCommitted++;
+		}
+		for (int type = 0; type < pending.length; type++)
+			if (pending[type] && changesView(type)) {
+				publishSnapshot();
+				break;
+			}
+		// deliver the events in the order of their types, so that (eg) a
+		// change to the data set is heard of before a change to the projection
+		for (int type = 0; type < pending.length; type++)
+			if (pending[type])
+				deliver(type);
+	}
+
+	/** The batch of changes of the current thread */
+	private Batch getBatch() {
+		synchronized (this) {
+			// the thread local is not serialized, so may need making again
+			if (batches == null)
+				batches = new ThreadLocal<Batch>() {
+					protected Batch initialValue() {
+						return new Batch();
+					}
+				};
+		}
+		return batches.get();
+	}
+
+	/** The state of the batch of changes open on one thread */
+	private static class Batch {
+
+		/** How many batches are open, ie nested */
+		private int depth;
+
+		/** Which types of event have been fired during the batch */
+		private final boolean[] pendingEvents = new boolean[TPPModelEvent.NUM_TYPES];
+	}
+
+	/** Make the changes in the given runnable as a single batch */
+	public void runBatched(Runnable changes) {
+		beginBatch();
+		try {
+			changes.run();
+		} finally {
+			commitBatch();
+		}
+	}
+
+	/** The number of events of the given type that have been fired */
+	public synchronized long getEventsFired(int type) {
+		return eventsFired[type];
+	}
+
+	/**
+	 * The number of events of the given type that have been passed on to the
+	 * listeners, after any batching
+	 */
+	public synchronized long getEventsDelivered(int type) {
+		return eventsDelivered[type];
+	}
+
+	/** The number of batches of changes that have been committed */
+	public synchronized long getBatchesCommitted() {
+		return batchesCommitted;
+	}
+
+	public synchronized void resetEventCounts() {
+		Arrays.fill(eventsFired, 0);
+		Arrays.fill(eventsDelivered, 0);
+		batchesCommitted = 0;
+	}
+
 	public TPPModel clone() {
 		TPPModel clone = new TPPModel(numViewDimensions);
 		Instances cloneInstances = new Instances(instances);
@@ -1172,7 +1706,12 @@ public class TPPModel implements Serializable, Cloneable {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		clone.projection = new LinearProjection(projection);
+		lockView();
+		try {
+			clone.projection = new LinearProjection(projection);
+		} finally {
+			unlockView();
+		}
 		clone.project();
 		return clone;
 	}
@@ -1224,35 +1763,39 @@ public class TPPModel implements Serializable, Cloneable {
 		return occurenceTotal;
 	}
 	
-	public boolean[] hoverPoints;
-
 	protected int edgeAttIndex;
 
 	private String edgeAttString = "NodeId";
 
 	public void setHoverPoints(int[] hover) {
-		removeHoverPoints();
-		for (int i = 0; i < hover.length; i++) {
-			hoverPoints[hover[i]] = true;
+		beginBatch();
+		try {
+			removeHoverPoints();
+			for (int i = 0; i < hover.length; i++) {
+				hoverPoints.add(hover[i]);
+			}
+			fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
+		} finally {
+			commitBatch();
 		}
-		fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
 	}
 	
 	public boolean isPointHovered(int p) {
-		return hoverPoints[p];
+		return hoverPoints.contains(p);
 	}
 
-	/** Are any points selected? */
+	/** Are any points being hovered over? */
 	public boolean arePointsHovered() {
-		for (int p = 0; p < getNumDataPoints(); p++)
-			if (isPointHovered(p))
-				return true;
-		return false;
+		return !hoverPoints.isEmpty();
+	}
+
+	/** The points that are being hovered over */
+	public PointSet getHoverPoints() {
+		return hoverPoints;
 	}
 
 	public void removeHoverPoints() {
-		for (int p = 0; p < getNumDataPoints(); p++)
-			hoverPoints[p] = false;
+		hoverPoints.clear();
 		fireModelChanged(TPPModelEvent.POINT_SELECTION_CHANGED);
 	}
 	
@@ -56,6 +56,9 @@ public class TPPModelEvent {
 			"color scheme changed", "retinal attribute changed", "rectangle changed", "decoration changed",
 			"control panel update"};
 
+	/** The number of different types of event */
+	public static final int NUM_TYPES = TYPE_DESCRIPTIONS.length;
+
 	public TPPModelEvent(TPPModel model, int type) {
 		this.model = model;
 		this.type = type;
@@ -0,0 +1,477 @@
+package tpp;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import weka.core.matrix.Matrix;
+
+/**
+ * The view drawn as a stack of layers (axes, edges, decorations, nodes and
+ * labels), each cached in an offscreen image. A layer is only drawn again when
+ * the model changes something it shows: each type of model event invalidates
+ * a fixed set of layers, so that (for example) dragging the selection
+ * rectangle or hovering over a point just composites the cached images, and
+ * selecting an axis only redraws the axes. Layers are also drawn again when a
+ * new view is published, when the noise changes or when the canvas is
+ * resized.
+ *
+ * The layers are drawn by a background thread, so that drawing a large graph
+ * never holds up the event thread, which just composites the latest images.
+ * The thread never reads the model: the event thread reads what each frame
+ * needs when it asks for the frame (see {@link Painter#capture}).
+ * Each frame is drawn progressively (see {@link RenderFrame}), and is
+ * cancelled as soon as a newer view or a change to the model makes it out of
+ * date, once it has shown the nodes and a sample of the edges. While the
+ * view is being dragged, pursued, panned or zoomed the frames are drafts, of
+ * lower quality, and the layers are drawn properly once the view has stopped
+ * moving. While panning or zooming the images are just composited with the
+ * change in transform since they were drawn.
+ */
+public class ViewLayers {
+
+	public static final int AXES = 0;
+	public static final int EDGES = 1;
+	public static final int DECORATIONS = 2;
+	public static final int NODES = 3;
+	public static final int LABELS = 4;
+	public static final int NUM_LAYERS = 5;
+
+	private static final int ALL_LAYERS = (1 << NUM_LAYERS) - 1;
+
+	/** The layers drawn in the first stage of a frame */
+	private static final int FIRST_LAYERS = (1 << AXES) | (1 << DECORATIONS) | (1 << NODES);
+
+	/**
+	 * How long (in ms) the view must stay still before it is no longer
+	 * counted as moving
+	 */
+	private static final int SETTLE_DELAY = 150;
+
+	/** The default time (in ms) to spend on a sample of the edges */
+	public static final double DEFAULT_FRAME_BUDGET = 30;
+
+	/** The time to draw each edge assumed before any have been timed */
+	private static final double DEFAULT_EDGE_NANOS = 2000;
+
+	/** The layers invalidated by each type of event */
+	private static final int[] INVALIDATED_BY = new int[TPPModelEvent.NUM_TYPES];
+	static {
+		for (int type = 0; type < TPPModelEvent.NUM_TYPES; type++)
+			INVALIDATED_BY[type] = ALL_LAYERS;
+		INVALIDATED_BY[TPPModelEvent.AXIS_SELECTION_CHANGED] = 1 << AXES;
+		INVALIDATED_BY[TPPModelEvent.POINT_SELECTION_CHANGED] = ALL_LAYERS & ~(1 << DECORATIONS);
+		INVALIDATED_BY[TPPModelEvent.RETINAL_ATTRIBUTE_CHANGED] = ALL_LAYERS & ~(1 << DECORATIONS);
+		INVALIDATED_BY[TPPModelEvent.RECTANGLE_CHANGED] = 0;
+	}
+
+	/** Draws the contents of each layer */
+	public interface Painter {
+
+		/**
+		 * Read everything needed to draw the given layers from the model.
+		 * Called on the event thread when a frame is asked for, so that the
+		 * frame can then be drawn without reading the model.
+		 *
+		 * @param layers
+		 *            the layers to be drawn, with bit 1 << layer set for each
+		 */
+		RenderInput capture(ViewSnapshot snapshot, int layers);
+
+		/**
+		 * Draw the layer from the given input. The graphics already has the
+		 * transform from data space to the image.
+		 *
+		 * @param frame
+		 *            the frame being drawn in the background, or null if the
+		 *            layer is being drawn directly
+		 */
+		void paintLayer(int layer, Graphics2D g2, AffineTransform transform, RenderInput input, RenderFrame frame);
+	}
+
+	private final ScatterPlotModel spModel;
+
+	private final Painter painter;
+
+	private final JComponent component;
+
+	private final Timer settleTimer;
+
+	private final Renderer renderer;
+
+	/** The time to spend on a sample of the edges, in ms */
+	private volatile double frameBudget = DEFAULT_FRAME_BUDGET;
+
+	// the images shown, with the transform each was drawn with and whether
+	// it had anything to draw (guarded by this)
+	private final BufferedImage[] front = new BufferedImage[NUM_LAYERS];
+	private final AffineTransform[] frontPixelView = new AffineTransform[NUM_LAYERS];
+	private final boolean[] frontShown = new boolean[NUM_LAYERS];
+	private final long[] frontEpoch = new long[NUM_LAYERS];
+
+	// the images being drawn by the renderer (used only by the renderer)
+	private final BufferedImage[] back = new BufferedImage[NUM_LAYERS];
+	private final boolean[] backShown = new boolean[NUM_LAYERS];
+
+	// what each layer was last asked to be drawn from (used only by the
+	// event thread); a null view means it must be drawn again
+	private final AffineTransform[] requestedView = new AffineTransform[NUM_LAYERS];
+	private final long[] requestedEpoch = new long[NUM_LAYERS];
+	private final Matrix[] requestedNoise = new Matrix[NUM_LAYERS];
+	private final boolean[] requestedDraft = new boolean[NUM_LAYERS];
+
+	/** The layers invalidated by events since the last frame */
+	private int invalid = ALL_LAYERS;
+
+	/** The selection when the last point selection event arrived */
+	private long selectionEpoch = -1;
+
+	// the latest frame asked for, and the layers it has not yet shown; and
+	// the frame waiting for the renderer, if any
+	private RenderFrame current, pending;
+	private int currentRemaining;
+
+	/** The last frame that the renderer finished or gave up on */
+	private volatile RenderFrame lastFrame;
+
+	/** Whether a frame has been shown since the last paint */
+	private boolean published;
+
+	private boolean disposed;
+
+	// the view and size of the last paint, when the view last changed, and
+	// whether it is being moved
+	private AffineTransform lastView;
+	private long lastEpoch = -1;
+	private long lastChange;
+	private boolean moving;
+	private int imageWidth, imageHeight;
+	private double deviceScaleX, deviceScaleY;
+	private volatile GraphicsConfiguration configuration;
+
+	/** The measured time to draw each edge, in ns */
+	private double edgeNanos = DEFAULT_EDGE_NANOS;
+
+	/**
+	 * @param component
+	 *            the component the layers are painted on, which is repainted
+	 *            whenever new images are ready
+	 */
+	public ViewLayers(ScatterPlotModel spModel, Painter painter, JComponent component) {
+		this.spModel = spModel;
+		this.painter = painter;
+		this.component = component;
+		settleTimer = new Timer(SETTLE_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				moving = false;
+				ViewLayers.this.component.repaint();
+			}
+		});
+		settleTimer.setRepeats(false);
+		renderer = new Renderer();
+		renderer.start();
+	}
+
+	/** The time (in ms) to spend drawing a sample of the edges */
+	public double getFrameBudget() {
+		return frameBudget;
+	}
+
+	public void setFrameBudget(double frameBudget) {
+		if (frameBudget <= 0)
+			throw new IllegalArgumentException("Frame budget must be positive: " + frameBudget);
+		this.frameBudget = frameBudget;
+	}
+
+	/**
+	 * The last frame drawn (or cancelled) by the background thread, with its
+	 * timings, or null if there has not been one
+	 */
+	public RenderFrame getLastFrame() {
+		return lastFrame;
+	}
+
+	/**
+	 * Invalidate the layers that depend on what the event changed, and cancel
+	 * the frame being drawn if it draws any of them
+	 */
+	public synchronized void modelChanged(int type) {
+		int layers = ALL_LAYERS;
+		if (type >= 0 && type < TPPModelEvent.NUM_TYPES)
+			layers = INVALIDATED_BY[type];
+		if (type == TPPModelEvent.POINT_SELECTION_CHANGED) {
+			// if only the points hovered over have changed then only the
+			// nodes and labels of a graph show it
+			long epoch = spModel.getSelectionEpoch();
+			if (epoch == selectionEpoch)
+				layers = (spModel.showGraph() ? (1 << NODES) | (1 << LABELS) : 0);
+			selectionEpoch = epoch;
+		}
+		invalid |= layers;
+		if (current != null && (current.getLayers() & layers) != 0)
+			current.cancel();
+	}
+
+	/** Draw every layer again in the next frame */
+	public synchronized void invalidateAll() {
+		invalid = ALL_LAYERS;
+	}
+
+	/** Stop the background thread. The layers cannot be painted afterwards. */
+	public synchronized void dispose() {
+		disposed = true;
+		if (current != null)
+			current.cancel();
+		settleTimer.stop();
+		notifyAll();
+	}
+
+	/**
+	 * Paint the latest images of the layers, and ask for any that are out of
+	 * date to be drawn again. Must be called on the event thread.
+	 *
+	 * @param g2
+	 *            the graphics of the component, with its original transform
+	 * @param view
+	 *            the transform from data space to component space
+	 * @param noisy
+	 *            whether the noise changes every frame
+	 */
+	public void paint(Graphics2D g2, AffineTransform view, int width, int height, boolean noisy) {
+		ViewSnapshot snapshot = spModel.getViewSnapshot();
+		configuration = g2.getDeviceConfiguration();
+
+		// the view counts as moving if it keeps changing, eg while it is
+		// dragged, pursued, panned or zoomed
+		boolean panned = lastView != null && !view.equals(lastView);
+		if (panned || snapshot.getEpoch() != lastEpoch) {
+			long now = System.nanoTime();
+			moving = lastView != null && now - lastChange < SETTLE_DELAY * 1000000L;
+			lastChange = now;
+			settleTimer.restart();
+		}
+		lastView = new AffineTransform(view);
+		lastEpoch = snapshot.getEpoch();
+
+		AffineTransform device = g2.getTransform();
+		synchronized (this) {
+			request(snapshot, view, device.getScaleX(), device.getScaleY(), width, height, noisy && !published,
+					panned);
+			published = false;
+			AffineTransform blit;
+			for (int layer = 0; layer < NUM_LAYERS; layer++) {
+				if (!frontShown[layer])
+					continue;
+				blit = new AffineTransform(view);
+				try {
+					blit.concatenate(frontPixelView[layer].createInverse());
+				} catch (NoninvertibleTransformException e) {
+					continue;
+				}
+				g2.drawImage(front[layer], blit, null);
+			}
+		}
+	}
+
+	/** Ask for the layers that are out of date to be drawn */
+	private void request(ViewSnapshot snapshot, AffineTransform view, double scaleX, double scaleY, int width,
+			int height, boolean noisy, boolean panned) {
+		int w = Math.max(1, (int) Math.ceil(width * scaleX));
+		int h = Math.max(1, (int) Math.ceil(height * scaleY));
+		if (w != imageWidth || h != imageHeight || scaleX != deviceScaleX || scaleY != deviceScaleY) {
+			imageWidth = w;
+			imageHeight = h;
+			deviceScaleX = scaleX;
+			deviceScaleY = scaleY;
+			invalid = ALL_LAYERS;
+		}
+
+		// while panning or zooming keep the images drawn with the old view
+		Matrix noise = spModel.getNoise();
+		int layers = invalid;
+		invalid = 0;
+		for (int layer = 0; layer < NUM_LAYERS; layer++)
+			if (requestedView[layer] == null || requestedEpoch[layer] != snapshot.getEpoch()
+					|| requestedNoise[layer] != noise || (noisy && layer != AXES)
+					|| (!panned && !view.equals(requestedView[layer])) || (requestedDraft[layer] && !moving))
+				layers |= 1 << layer;
+		if (layers == 0)
+			return;
+
+		// take over whatever the frame being drawn has not done yet
+		if (current != null) {
+			current.cancel();
+			layers |= currentRemaining;
+		}
+		AffineTransform pixelView = AffineTransform.getScaleInstance(scaleX, scaleY);
+		pixelView.concatenate(view);
+		current = new RenderFrame(painter.capture(snapshot, layers), pixelView, w, h, layers, moving);
+		currentRemaining = layers;
+		for (int layer = 0; layer < NUM_LAYERS; layer++)
+			if ((layers & (1 << layer)) != 0) {
+				requestedView[layer] = new AffineTransform(view);
+				requestedEpoch[layer] = snapshot.getEpoch();
+				requestedNoise[layer] = noise;
+				requestedDraft[layer] = moving;
+			}
+		pending = current;
+		notifyAll();
+	}
+
+	/**
+	 * Show the layers just drawn by the renderer, and hide any others whose
+	 * images are out of date
+	 */
+	private void publish(RenderFrame frame, int layers, int hide) {
+		BufferedImage image;
+		synchronized (this) {
+			for (int layer = 0; layer < NUM_LAYERS; layer++)
+				if ((layers & (1 << layer)) != 0) {
+					image = front[layer];
+					front[layer] = back[layer];
+					back[layer] = image;
+					frontShown[layer] = backShown[layer];
+					frontPixelView[layer] = frame.getPixelView();
+					frontEpoch[layer] = frame.getEpoch();
+				} else if ((hide & (1 << layer)) != 0 && frontEpoch[layer] != frame.getEpoch())
+					frontShown[layer] = false;
+			if (frame == current)
+				currentRemaining &= ~layers;
+			published = true;
+		}
+		component.repaint();
+	}
+
+	/**
+	 * Draw a frame in stages, showing each stage as it is finished. The nodes
+	 * and a sample of the edges are always finished, so that a view that
+	 * changes faster than it can be drawn is still shown, but a cancelled
+	 * frame stops there.
+	 */
+	private void draw(RenderFrame frame) {
+		frame.started();
+		try {
+			int done = 0;
+			for (int layer = 0; layer < NUM_LAYERS; layer++)
+				if ((FIRST_LAYERS & (1 << layer)) != 0 && frame.hasLayer(layer)) {
+					drawLayer(frame, layer);
+					done |= 1 << layer;
+				}
+			publish(frame, done, frame.getLayers() & ~FIRST_LAYERS);
+			frame.stageFinished(RenderFrame.NODES_STAGE);
+
+			// draw a sample of the edges that fits in the budget, and then
+			// (unless this is a draft) every edge and the labels
+			int numEdges = frame.getInput().numEdges;
+			int stride = (int) Math.max(1, Math.ceil(numEdges * edgeNanos / (frameBudget * 1000000)));
+			if (frame.hasLayer(EDGES) && stride > 1) {
+				frame.setEdgeStride(stride);
+				drawLayer(frame, EDGES);
+				publish(frame, 1 << EDGES, 0);
+				frame.stageFinished(RenderFrame.SAMPLE_STAGE);
+			}
+			frame.setStoppable();
+			if (frame.hasLayer(EDGES) && (stride == 1 || !frame.isDraft())) {
+				frame.setEdgeStride(1);
+				long start = System.nanoTime();
+				drawLayer(frame, EDGES);
+				if (frame.shouldStop())
+					return;
+				if (numEdges > 0)
+					edgeNanos = (double) (System.nanoTime() - start) / numEdges;
+				publish(frame, 1 << EDGES, 0);
+			}
+			if (frame.hasLayer(LABELS) && !frame.shouldStop()) {
+				drawLayer(frame, LABELS);
+				if (frame.shouldStop())
+					return;
+				publish(frame, 1 << LABELS, 0);
+			}
+			if (!frame.shouldStop())
+				frame.stageFinished(RenderFrame.FULL_STAGE);
+		} finally {
+			frame.finished();
+			synchronized (this) {
+				if (frame == current && !frame.isCancelled())
+					currentRemaining = 0;
+			}
+			lastFrame = frame;
+		}
+	}
+
+	/** Draw a layer into its back image */
+	private void drawLayer(RenderFrame frame, int layer) {
+		backShown[layer] = frame.getInput().hasLayer(layer);
+		if (!backShown[layer])
+			return;
+		BufferedImage image = back[layer];
+		if (image == null || image.getWidth() != frame.getImageWidth()
+				|| image.getHeight() != frame.getImageHeight()) {
+			GraphicsConfiguration configuration = this.configuration;
+			if (configuration != null)
+				image = configuration.createCompatibleImage(frame.getImageWidth(), frame.getImageHeight(),
+						Transparency.TRANSLUCENT);
+			else
+				image = new BufferedImage(frame.getImageWidth(), frame.getImageHeight(),
+						BufferedImage.TYPE_INT_ARGB_PRE);
+			back[layer] = image;
+		}
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.setComposite(AlphaComposite.Clear);
+			g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g2.setComposite(AlphaComposite.SrcOver);
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					frame.isDraft() ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setTransform(frame.getPixelView());
+			painter.paintLayer(layer, g2, frame.getPixelView(), frame.getInput(), frame);
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	/** The thread that draws the frames, one at a time */
+	private class Renderer extends Thread {
+
+		Renderer() {
+			super("View renderer");
+			setDaemon(true);
+		}
+
+		public void run() {
+			RenderFrame frame;
+			while (true) {
+				synchronized (ViewLayers.this) {
+					while (pending == null && !disposed)
+						try {
+							ViewLayers.this.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					if (disposed)
+						return;
+					frame = pending;
+					pending = null;
+				}
+
+				// a frame only reads its own input, so a failure is a bug:
+				// report it, but keep drawing the frames that follow
+				try {
+					draw(frame);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
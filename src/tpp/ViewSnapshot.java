@@ -0,0 +1,112 @@
+package tpp;
+
+import java.io.Serializable;
+
+import weka.core.matrix.Matrix;
+
+/**
+ * An immutable copy of the projection and the view of a model, as they were
+ * at one moment, together with the bounds of the points in the view. The
+ * model publishes a new snapshot each time it has finished changing the
+ * projection or the data, so something that reads the view on another thread
+ * (eg to paint it, or find the point under the mouse) can take one snapshot
+ * and use it throughout, without locking and without seeing the pursuit
+ * thread's changes half made.
+ */
+public final class ViewSnapshot implements Serializable {
+
+	private static final long serialVersionUID = -6180929366017357221L;
+
+	/** The projection, one row per axis */
+	private final double[][] projection;
+
+	/** The view, one row per point */
+	private final double[][] view;
+
+	/** The smallest and largest value of the points in each dimension */
+	private final double[] min, max;
+
+	private final long epoch;
+
+	/**
+	 * Copy the projection and the view. The caller must hold the model's view
+	 * lock, so that neither is changed while the copy is made.
+	 */
+	ViewSnapshot(Matrix projection, Matrix view, long epoch) {
+		this.projection = projection.getArrayCopy();
+		this.view = view.getArrayCopy();
+		this.epoch = epoch;
+		int dims = view.getColumnDimension();
+		min = new double[dims];
+		max = new double[dims];
+		for (int d = 0; d < dims; d++) {
+			min[d] = Double.POSITIVE_INFINITY;
+			max[d] = Double.NEGATIVE_INFINITY;
+		}
+		for (double[] point : this.view)
+			for (int d = 0; d < dims; d++) {
+				if (point[d] < min[d])
+					min[d] = point[d];
+				if (point[d] > max[d])
+					max[d] = point[d];
+			}
+	}
+
+	/** The position of the point in the given dimension of the view */
+	public double get(int point, int dimension) {
+		return view[point][dimension];
+	}
+
+	/** The position of the axis in the given dimension of the view */
+	public double getAxis(int axis, int dimension) {
+		return projection[axis][dimension];
+	}
+
+	/** Project a point in the data space into the given dimension of the view */
+	public double project(double[] x, int dimension) {
+		double v = 0;
+		for (int i = 0; i < projection.length; i++)
+			v += x[i] * projection[i][dimension];
+		return v;
+	}
+
+	public int getNumPoints() {
+		return view.length;
+	}
+
+	public int getNumAxes() {
+		return projection.length;
+	}
+
+	public int getNumDimensions() {
+		return min.length;
+	}
+
+	/** The smallest value of any point in the given dimension */
+	public double getMin(int dimension) {
+		return min[dimension];
+	}
+
+	/** The largest value of any point in the given dimension */
+	public double getMax(int dimension) {
+		return max[dimension];
+	}
+
+	/**
+	 * Snapshots published later by the same model have larger epochs, so this
+	 * tells whether anything derived from a snapshot is out of date
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/** A copy of the view, which may be changed */
+	public Matrix getView() {
+		return new Matrix(view).copy();
+	}
+
+	/** A copy of the projection, which may be changed */
+	public Matrix getProjection() {
+		return new Matrix(projection).copy();
+	}
+}
@@ -0,0 +1,24 @@
+package tpp;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The pool of threads that is shared by everything in TPP that splits its
+ * work across processors (projection pursuit, separation, clustering etc), so
+ * that they do not compete with each other for the processors.
+ */
+public class WorkerPool {
+
+	private static ForkJoinPool pool;
+
+	public static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool();
+		return pool;
+	}
+
+	/** Is there more than one thread in the pool? */
+	public static boolean isParallel() {
+		return getPool().getParallelism() > 1;
+	}
+}
@@ -12,12 +12,11 @@ import javax.swing.JOptionPane;
 
 import tpp.MatrixUtils;
 import tpp.PerturbationPursuitThread;
+import tpp.PursuitScheduler;
 import tpp.ScatterPlotModel;
 import tpp.ScatterPlotViewPanel;
 import tpp.SeparatePoints;
 import tpp.SeparatePointsInScatterPlot;
-import tpp.TPPModelEvent;
-import tpp.TPPModelEventListener;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.CapabilitiesHandler;
@@ -29,7 +28,6 @@ import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
-import weka.core.matrix.Matrix;
 import weka.filters.Filter;
 import weka.filters.supervised.attribute.AttributeSelection;
 
@@ -51,7 +49,7 @@ import weka.filters.supervised.attribute.AttributeSelection;
  */
 public class TPPAttributeSearch extends ASSearch implements WindowListener,
 		RankedOutputSearch, OptionHandler, TechnicalInformationHandler,
-		TPPModelEventListener, CapabilitiesHandler {
+		CapabilitiesHandler {
 
 	SeparatePoints separator;
 
@@ -104,13 +102,6 @@ public class TPPAttributeSearch extends ASSearch implements WindowListener,
 
 	private ScatterPlotModel model;
 
-	private Matrix currentProjection = null;
-
-	private Matrix previousProjection = null;
-
-	/** The number of times that the pursuit process has been tried. */
-	private int epochs = 0;
-
 	public TPPAttributeSearch() {
 		super();
 	}
@@ -154,7 +145,6 @@ public class TPPAttributeSearch extends ASSearch implements WindowListener,
 			return null;
 		}
 
-		epochs = 0;
 		Instances filteredData;
 
 		// preselect attributes
@@ -183,8 +173,6 @@ public class TPPAttributeSearch extends ASSearch implements WindowListener,
 		model.normalizeDataUnit();
 		model.randomProjection();
 		model.project();
-		currentProjection = null;
-		previousProjection = null;
 
 		if (showView && numOutputDimensions == 2) {
 			// display this in a scatter plot in a frame
@@ -195,7 +183,6 @@ public class TPPAttributeSearch extends ASSearch implements WindowListener,
 				panel = new ScatterPlotViewPanel();
 			panel.setModel(model);
 			model.addListener(panel);
-			model.addListener(this);
 			frame.add(panel);
 			frame.setSize(800, 600);
 			frame.setVisible(true);
@@ -208,11 +195,21 @@ public class TPPAttributeSearch extends ASSearch implements WindowListener,
 			separator = new SeparatePointsInScatterPlot(model);
 		else
 			separator = new SeparatePoints(model);
-		pursuit = new PerturbationPursuitThread(separator);
+		// Only pace the pursuit if someone is watching it
+		pursuit = new PerturbationPursuitThread(separator,
+				(showView && numOutputDimensions == 2) ? PursuitScheduler
+						.atFrameRate(PursuitScheduler.DEFAULT_FRAMES_PER_SECOND) : PursuitScheduler.unthrottled());
+		// which stops once the projection has converged
+		pursuit.setConvergenceThreshold(getConvergenceLimit());
+		pursuit.setMaxIterations(getEpochLimit());
 		pursuit.start();
 
 		// and wait for it to finish
 		pursuit.join();
+		if (showView && frame != null) {
+			frame.setVisible(false);
+			frame.dispose();
+		}
 
 		// get the size of each row in the projection
 		attributeScores = MatrixUtils.rowNorm2(model.getProjection());
@@ -253,42 +250,6 @@ public class TPPAttributeSearch extends ASSearch implements WindowListener,
 		return attributeIndices;
 	}
 
-	// == Observer methods ========================
-
-	@Override
-	public void modelChanged(TPPModelEvent e) {
-
-		if (e.getType() == TPPModelEvent.PROJECTION_CHANGED) {
-
-			// some projection pursuit has been done, so display the result
-			panel.repaint();
-
-			// and halt if the process has converged.
-			currentProjection = model.getProjection();
-			if (previousProjection != null && pursuit != null) {
-				double previous = previousProjection.normF();
-				double difference = previousProjection.minus(currentProjection)
-						.normF();
-				// the model may have been changed due to rescaling of the
-				// window or the projection, in which case the difference will
-				// be zero and we should ignore this change
-				if (difference > 0.0) {
-					epochs++;
-					if (difference / previous < getConvergenceLimit()
-							|| epochs > getEpochLimit()) {
-						pursuit.stopPerturbationPursuit();
-						if (showView) {
-							frame.setVisible(false);
-							frame.dispose();
-						}
-//						System.out.println("Stopping pursuit");
-					}
-				}
-			}
-			previousProjection = currentProjection.copy();
-		}
-	}
-
 	// == WindowListener methods ===========================
 	public void windowActivated(WindowEvent e) {
 	}